@@ -0,0 +1,84 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, BenchmarkGrids class. Builds the grids the benchmarks run on: a map size written as
+ * "colsxrows" (columns include the river) and a named land mix.
+ *
+ * Land mixes:
+ *   empty - every tile unused
+ *   sparse - one tile in ten is agriculture
+ *   mixed - a third agriculture, a third recreation, a third unused
+ *   dense - every tile developed, agriculture and recreation alternating
+ */
+
+final class BenchmarkGrids {
+    static final String[] LAND_TYPES = {"-A-", "-R-", "-U-"};
+
+    private BenchmarkGrids() {
+    }
+
+    /*
+     * Description: parses the number of map columns from a size such as "101x100"
+     * Parameters: size - the map size
+     * Returns: the number of map columns
+     */
+    static int cols(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    /*
+     * Description: parses the number of map rows from a size such as "101x100"
+     * Parameters: size - the map size
+     * Returns: the number of map rows
+     */
+    static int rows(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /*
+     * Description: creates a headless simulation of the given size with a land mix placed on it
+     * Parameters: size - the map size
+     *             mix - the land mix name
+     * Returns: the simulation
+     */
+    static RiverSim create(String size, String mix) {
+        RiverSim riverSim = new RiverSim(cols(size), rows(size));
+        place(riverSim, mix);
+        return riverSim;
+    }
+
+    /*
+     * Description: places a land mix on every tile of a simulation
+     * Parameters: riverSim - the simulation
+     *             mix - the land mix name
+     */
+    static void place(RiverSim riverSim, String mix) {
+        for (int i = 0; i < riverSim.getTileCount(); i++) {
+            String landType = landType(mix, i);
+            if (landType != null)
+                riverSim.placeLand(landType, i);
+        }
+    }
+
+    /*
+     * Description: gets the land type a mix puts on a tile
+     * Parameters: mix - the land mix name
+     *             index - the tile index
+     * Returns: the land type abbreviation, or null to leave the tile unused
+     */
+    private static String landType(String mix, int index) {
+        switch (mix) {
+            case "empty":
+                return null;
+            case "sparse":
+                return index % 10 == 0 ? "-A-" : null;
+            case "mixed":
+                return index % 3 == 2 ? null : LAND_TYPES[index % 3];
+            case "dense":
+                return LAND_TYPES[index % 2];
+            default:
+                throw new IllegalArgumentException("Unknown land mix: " + mix);
+        }
+    }
+}
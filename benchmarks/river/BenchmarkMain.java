@@ -0,0 +1,47 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, BenchmarkMain class. Runs the benchmarks with the GC profiler, so every result has an
+ * allocation rate (gc.alloc.rate.norm, bytes per operation) next to its throughput, and writes the results as JSON.
+ * A run saved as benchmarks/baseline.json is the baseline later runs are compared against. The committed baseline is
+ * a full run with OpenJDK 17.0.9 on a single CPU, so the concurrent benchmarks (ConcurrentPlacementBenchmark,
+ * LayoutOptimizerBenchmark) show no parallel speedup in it. It has no RiverSimViewBenchmark results: those start the
+ * JavaFX toolkit and need a display, which that machine didn't have. Run them on one with a display
+ * (benchmarks/run.sh RiverSimViewBenchmark) to get numbers for them.
+ *
+ * The benchmark sources live in benchmarks/river (same package as the simulator, so they can reach package-private
+ * state) and are built with the simulator, JavaFX and jmh-core, with jmh-generator-annprocess as the annotation
+ * processor. benchmarks/run.sh does the build and then runs this class with the same arguments.
+ *
+ * Usage: BenchmarkMain [include regex] [result file]
+ *        for example BenchmarkMain RiverSimBenchmark.nextMonth benchmarks/results.json
+ *        or JMH_LIB=<jar directory> benchmarks/run.sh RiverSimBenchmark.nextMonth benchmarks/results.json
+ */
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkMain {
+
+    /*
+     * Description: entry point for a benchmark run
+     * Parameters: args - an optional benchmark include regex, then an optional result file
+     */
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "johnson_noah\\.river\\..*Benchmark";
+        String result = args.length > 1 ? args[1] : "benchmarks/results.json";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,102 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, ConcurrentPlacementBenchmark class. Measures placements on one shared simulation from
+ * several threads at once, alone and while another thread steps the months, to show how the striped locking in
+ * RiverSim scales. Each placing thread walks the grid from its own starting point, so the threads mostly hit
+ * different stripes.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConcurrentPlacementBenchmark {
+
+    @Param({"1001x1000"})
+    public String size;
+
+    private RiverSim riverSim;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /*
+     * Description: one placing thread's position on the grid
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int position;
+
+        @Setup
+        public void setup(ConcurrentPlacementBenchmark benchmark) {
+            // spread the threads' starting points over the grid
+            position = benchmark.threads.getAndIncrement() * 7919 * 1024;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        riverSim = BenchmarkGrids.create(size, "mixed");
+        riverSim.nextMonths(26);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int placeLand1(Cursor cursor) {
+        return place(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int placeLand4(Cursor cursor) {
+        return place(cursor);
+    }
+
+    @Benchmark
+    @Group("withMonths")
+    @GroupThreads(3)
+    public int placeLandWithMonths(Cursor cursor) {
+        return place(cursor);
+    }
+
+    @Benchmark
+    @Group("withMonths")
+    @GroupThreads(1)
+    public int nextMonthWithPlacements() {
+        riverSim.nextMonth();
+        return riverSim.getCurrentMonth();
+    }
+
+    /*
+     * Description: places the next land type on the thread's next tile, cycling the land types so every call
+     * changes the tile
+     * Parameters: cursor - the thread's position
+     * Returns: the tile index
+     */
+    private int place(Cursor cursor) {
+        int index = Math.floorMod(cursor.position, riverSim.getTileCount());
+        riverSim.placeLand(BenchmarkGrids.LAND_TYPES[Math.floorMod(cursor.position, 3)], index);
+        cursor.position++;
+        return index;
+    }
+}
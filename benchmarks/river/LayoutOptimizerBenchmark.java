@@ -0,0 +1,58 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, LayoutOptimizerBenchmark class. Measures a whole optimization of a sparse grid, with the
+ * river bank floods (a couple of tile classes) and with seeded random floods (a class for nearly every year of the
+ * horizon), on a budget that runs out and on one that doesn't.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LayoutOptimizerBenchmark {
+
+    @Param({"101x100"})
+    public String size;
+
+    @Param({"banks", "random"})
+    public String floods;
+
+    @Param({"5000", "1000000"})
+    public long budget;
+
+    @Param({"50"})
+    public int years;
+
+    private LayoutOptimizer optimizer;
+
+    @Setup
+    public void setup() {
+        RiverSim riverSim = BenchmarkGrids.create(size, "sparse");
+        if (floods.equals("random"))
+            riverSim.setFloodModel(new StochasticFloodModel(1, 0.8, 0.5, 3));
+        optimizer = new LayoutOptimizer(riverSim);
+    }
+
+    @Benchmark
+    public long optimize() {
+        return optimizer.optimize(budget, years * RiverSim.MONTHS_PER_YEAR).getGain();
+    }
+}
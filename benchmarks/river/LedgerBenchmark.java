@@ -0,0 +1,61 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, LedgerBenchmark class. Measures range queries on the ledger of a long run: a thousand
+ * years with a placement every year (so no year repeats the one before), then a million years skipped by advance.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LedgerBenchmark {
+    private static final int VARIED_YEARS = 1000;
+
+    private RiverSim riverSim;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        riverSim = BenchmarkGrids.create("101x100", "sparse");
+        for (int year = 0; year < VARIED_YEARS; year++) {
+            riverSim.placeLand(BenchmarkGrids.LAND_TYPES[year % 3], year % riverSim.getTileCount());
+            riverSim.nextMonths(RiverSim.MONTHS_PER_YEAR);
+        }
+        riverSim.skipYears(1000000);
+    }
+
+    @Benchmark
+    public long variedYears() {
+        // a century somewhere in the years that don't repeat
+        int first = cursor++ % (VARIED_YEARS - 100);
+        return riverSim.getLedger().getRevenue(LandType.AGRICULTURE, Ledger.month(first, 0),
+                Ledger.month(first + 100, 0));
+    }
+
+    @Benchmark
+    public long wholeRun() {
+        return riverSim.getLedger().getNet(Ledger.month(0, 0), riverSim.getLedger().getCurrentMonth() + 1);
+    }
+
+    @Benchmark
+    public long funds() {
+        return riverSim.getFunds();
+    }
+}
@@ -0,0 +1,67 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, MetricsBenchmark class. Measures a steady-state month and a placement with metrics off
+ * and on, so the cost of the timed sections can be compared with the same methods in RiverSimBenchmark.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MetricsBenchmark {
+
+    @Param({"5x3", "101x100"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private RiverSim riverSim;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        Metrics.setEnabled(metrics);
+        riverSim = BenchmarkGrids.create(size, "mixed");
+        riverSim.nextMonths(26);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Benchmark
+    public long nextMonth() {
+        riverSim.nextMonth();
+        return riverSim.getFunds();
+    }
+
+    @Benchmark
+    public long placeLand() {
+        int index = cursor % riverSim.getTileCount();
+        riverSim.placeLand(BenchmarkGrids.LAND_TYPES[cursor % 3], index);
+        cursor++;
+        return riverSim.getFunds();
+    }
+}
@@ -0,0 +1,81 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, RiverSimBenchmark class. Measures the headless simulation hot paths (a month, a year,
+ * a century fast-forward and single placements) across grid sizes and land mixes. The grid is stepped through two
+ * years first, so the months measured are the repeating steady state.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RiverSimBenchmark {
+
+    @Param({"5x3", "101x100", "1001x1000"})
+    public String size;
+
+    @Param({"empty", "sparse", "mixed", "dense"})
+    public String mix;
+
+    private RiverSim riverSim;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        riverSim = BenchmarkGrids.create(size, mix);
+        riverSim.nextMonths(26);
+    }
+
+    @Benchmark
+    public long nextMonth() {
+        riverSim.nextMonth();
+        return riverSim.getFunds();
+    }
+
+    @Benchmark
+    public long nextYear() {
+        riverSim.nextMonths(13);
+        return riverSim.getFunds();
+    }
+
+    @Benchmark
+    public long advanceCentury() {
+        riverSim.advance(100 * 13);
+        return riverSim.getFunds();
+    }
+
+    @Benchmark
+    public int replaceTile() {
+        // walk the grid, cycling the land types so every call changes the tile
+        int index = cursor % riverSim.getTileCount();
+        riverSim.replaceTile(BenchmarkGrids.LAND_TYPES[cursor % 3], index);
+        cursor++;
+        return index;
+    }
+
+    @Benchmark
+    public long placeLand() {
+        int index = cursor % riverSim.getTileCount();
+        riverSim.placeLand(BenchmarkGrids.LAND_TYPES[cursor % 3], index);
+        cursor++;
+        return riverSim.getFunds();
+    }
+}
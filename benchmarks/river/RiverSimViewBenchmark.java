@@ -0,0 +1,89 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, RiverSimViewBenchmark class. Measures the grid view paths: resize (a fresh map of the
+ * same size, reusing every tile view), growAndShrink (adding and removing a row while keeping the land, so only a
+ * row of tile views changes), rebuild (the constraints and addTiles for the current map) and a month delivered to the
+ * view as one batch of tile changes. The sizes stay under the layout's GridPane limit. The nodes are never shown, so they
+ * are built on the benchmark thread, but the JavaFX toolkit is started first (this needs a display, or the Monocle
+ * headless platform).
+ */
+
+import javafx.application.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RiverSimViewBenchmark {
+
+    @Param({"5x3", "9x7", "25x20", "49x50"})
+    public String size;
+
+    @Param({"empty", "mixed"})
+    public String mix;
+
+    private RiverSim riverSim;
+    private RiverSimView view;
+    private int cols;
+    private int rows;
+    private boolean grown = false;
+
+    @Setup
+    public void setup() {
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (IllegalStateException e) {
+            // the toolkit is already running
+        }
+
+        cols = BenchmarkGrids.cols(size);
+        rows = BenchmarkGrids.rows(size);
+        riverSim = new RiverSim();
+        view = new RiverSimView(new Controller(null, riverSim), riverSim);
+        view.resize(cols, rows);
+        BenchmarkGrids.place(riverSim, mix);
+    }
+
+    @Benchmark
+    public RiverSimView resize() {
+        view.resize(cols, rows);
+        return view;
+    }
+
+    @Benchmark
+    public RiverSimView growAndShrink() {
+        grown = !grown;
+        view.resize(cols, grown ? rows + 1 : rows, true);
+        return view;
+    }
+
+    @Benchmark
+    public RiverSimView rebuild() {
+        view.rebuild();
+        return view;
+    }
+
+    @Benchmark
+    public long nextMonth() {
+        riverSim.nextMonth();
+        return riverSim.getFunds();
+    }
+}
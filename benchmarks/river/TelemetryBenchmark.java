@@ -0,0 +1,72 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, TelemetryBenchmark class. Measures a steady-state month while exporting it at each
+ * granularity (or not exporting, for comparison), into a temporary file deleted after each trial.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TelemetryBenchmark {
+
+    @Param({"101x100"})
+    public String size;
+
+    @Param({"none", "global", "types", "tiles"})
+    public String granularity;
+
+    @Param({"csv", "jsonl"})
+    public String format;
+
+    private RiverSim riverSim;
+    private Path file;
+    private TelemetryExporter exporter;
+
+    @Setup
+    public void setup() throws IOException {
+        riverSim = BenchmarkGrids.create(size, "mixed");
+        riverSim.nextMonths(26);
+        if (!granularity.equals("none")) {
+            file = Files.createTempFile("telemetry", "." + format);
+            exporter = new TelemetryExporter(riverSim, file, TelemetryExporter.formatFor(file),
+                    TelemetryExporter.granularity(granularity));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (exporter != null) {
+            exporter.close();
+            Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    public long nextMonth() {
+        riverSim.nextMonth();
+        return riverSim.getFunds();
+    }
+}
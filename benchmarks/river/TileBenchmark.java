@@ -0,0 +1,69 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, TileBenchmark class. Measures Tile.setLandType through the tile views, with and
+ * without a property change listener attached (the observed case is what the per-tile observer pattern costs).
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TileBenchmark {
+
+    @Param({"5x3", "101x100", "1001x1000"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean observed;
+
+    private Tile[] tiles;
+    private int cursor = 0;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        RiverSim riverSim = BenchmarkGrids.create(size, "mixed");
+        PropertyChangeListener listener = blackhole::consume;
+        tiles = new Tile[riverSim.getTileCount()];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = riverSim.getTile(i);
+            if (observed)
+                tiles[i].addPropertyChangeListener(listener);
+        }
+    }
+
+    @Benchmark
+    public int setLandTypeCode() {
+        Tile tile = tiles[cursor % tiles.length];
+        tile.setLandType((byte) (cursor % LandType.COUNT));
+        cursor++;
+        return tile.getIndex();
+    }
+
+    @Benchmark
+    public int setLandTypeAbbreviation() {
+        Tile tile = tiles[cursor % tiles.length];
+        tile.setLandType(BenchmarkGrids.LAND_TYPES[cursor % 3]);
+        cursor++;
+        return tile.getIndex();
+    }
+}
@@ -0,0 +1,73 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JMH benchmarks, WorldHistoryBenchmark class. Measures what the history costs around a single placement
+ * on a developed grid: committing it, undoing and redoing it, and forking and switching branches, next to the full
+ * copy (RiverSim.copy) each of them would otherwise take.
+ */
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WorldHistoryBenchmark {
+
+    @Param({"101x100", "1001x1000"})
+    public String size;
+
+    private RiverSim riverSim;
+    private WorldHistory history;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        riverSim = BenchmarkGrids.create(size, "mixed");
+        riverSim.nextMonths(26);
+        history = new WorldHistory(riverSim);
+        history.fork("Other");
+    }
+
+    @Benchmark
+    public boolean placeAndCommit() {
+        next = (next + 7919) % riverSim.getTileCount();
+        riverSim.placeLand(BenchmarkGrids.LAND_TYPES[next % 3], next);
+        return history.commit("Place");
+    }
+
+    @Benchmark
+    public boolean placeCommitUndoRedo() {
+        placeAndCommit();
+        history.undo();
+        return history.redo();
+    }
+
+    @Benchmark
+    public int placeAndSwitchBranches() {
+        placeAndCommit();
+        history.checkout(0);
+        history.checkout(1);
+        return riverSim.getFilled();
+    }
+
+    @Benchmark
+    public int copy() {
+        return riverSim.copy().getFilled();
+    }
+}
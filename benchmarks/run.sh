@@ -0,0 +1,35 @@
+#!/bin/sh
+#
+# Author: Noah Johnson
+# Description: builds and runs the JMH benchmarks (see benchmarks/river/BenchmarkMain.java). The simulator and the
+# benchmark sources are compiled together, with jmh-generator-annprocess on the classpath as the annotation processor
+# that generates the benchmark harness, then BenchmarkMain runs them and writes the results as JSON.
+#
+# JMH_LIB is a directory holding the jars to build against, none of which are kept in the repository:
+#   jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3 (JMH 1.37 was used for the baseline), and the
+#   JavaFX base, controls and graphics jars for the platform (17.0.2 for the baseline)
+#
+# Usage: JMH_LIB=<jar directory> benchmarks/run.sh [include regex] [result file]
+#        for example JMH_LIB=~/jars benchmarks/run.sh RiverSimBenchmark.nextMonth benchmarks/results.json
+#        Save a full run (no include regex) as benchmarks/baseline.json to make it the new baseline.
+
+set -e
+
+if [ -z "$JMH_LIB" ] || [ ! -d "$JMH_LIB" ]; then
+    echo "Set JMH_LIB to the directory holding the JMH and JavaFX jars" >&2
+    exit 1
+fi
+
+root=$(cd "$(dirname "$0")/.." && pwd)
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+
+classpath=$(ls "$JMH_LIB"/*.jar | tr '\n' ':')
+javac -encoding UTF-8 -cp "$classpath" -d "$classes" \
+    $(find "$root/river" "$root/benchmarks/river" -name '*.java')
+
+# javac only writes classes, the stylesheet Layout loads goes next to them by hand
+cp "$root"/river/*.css "$classes/johnson_noah/river/"
+
+cd "$root"
+java -cp "$classes:$classpath" johnson_noah.river.BenchmarkMain "$@"
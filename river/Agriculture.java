@@ -1,9 +0,0 @@
-package johnson_noah.river;
-
-/*
- * Author: Noah Johnson
- * Description: JavaFX Project, Agriculture Class
- */
-
-public class Agriculture extends LandArea {
-}
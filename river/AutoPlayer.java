@@ -0,0 +1,199 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, AutoPlayer class. Plays the simulation on its own thread at a set number of months per
+ * second (from one to tens of thousands), while the JavaFX thread keeps drawing at the screen's frame rate.
+ *
+ * The simulation thread steps months in batches, each batch holding every stripe lock of the riverSim (see
+ * RiverSim); anything else doing more than one call on the riverSim while playing (the controller) takes them too.
+ * While playing, the map view's batched tile changes are merged into one pending set instead of being delivered, and
+ * an AnimationTimer hands the pending set to the view once per frame. The view reads the tile values when it is
+ * handed the set, so however many months ran in between, each frame shows only the latest state.
+ */
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class AutoPlayer implements TileChangeListener {
+    public static final double MIN_MONTHS_PER_SECOND = 1;
+    public static final double MAX_MONTHS_PER_SECOND = 50000;
+
+    // the most months stepped while holding the locks, so clicks and frames never wait long
+    private static final int MAX_BATCH = 256;
+
+    private final RiverSim riverSim;
+    private final Runnable onFrame;
+    private final ReadOnlyBooleanWrapper playing = new ReadOnlyBooleanWrapper(this, "playing");
+    private final AnimationTimer frameTimer;
+    private volatile double monthsPerSecond = 10;
+    private volatile boolean running = false;
+    private Thread simulationThread;
+    private TileChangeListener view;
+    private TileChanges pending;
+
+    /*
+     * Description: constructor for AutoPlayer
+     * Parameters: riverSim - the simulation to play
+     *             onFrame - called on the JavaFX thread (holding the riverSim's locks) after each frame's changes are
+     *                       delivered, to refresh anything else showing the riverSim
+     */
+    public AutoPlayer(RiverSim riverSim, Runnable onFrame) {
+        this.riverSim = riverSim;
+        this.onFrame = onFrame;
+        frameTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                publish();
+            }
+        };
+    }
+
+    /*
+     * Description: sets how fast the simulation plays, takes effect right away
+     * Parameters: monthsPerSecond - the number of months per second, clamped to the supported range
+     */
+    public void setMonthsPerSecond(double monthsPerSecond) {
+        this.monthsPerSecond = Math.max(MIN_MONTHS_PER_SECOND, Math.min(MAX_MONTHS_PER_SECOND, monthsPerSecond));
+    }
+
+    /*
+     * Description: getter for the play rate
+     * Returns: monthsPerSecond
+     */
+    public double getMonthsPerSecond() {
+        return monthsPerSecond;
+    }
+
+    /*
+     * Description: whether the simulation is playing
+     * Returns: a read-only property
+     */
+    public ReadOnlyBooleanProperty playingProperty() {
+        return playing.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: getter for whether the simulation is playing
+     * Returns: true if playing
+     */
+    public boolean isPlaying() {
+        return playing.get();
+    }
+
+    /*
+     * Description: starts playing, must be called on the JavaFX thread
+     */
+    public void play() {
+        if (playing.get())
+            return;
+
+        // collect the view's changes until the next frame (the first frame comes after this returns)
+        frameTimer.start();
+        riverSim.lockAll();
+        try {
+            view = riverSim.getTileChangeListener();
+            pending = new TileChanges(riverSim.getTileCount());
+            riverSim.setTileChangeListener(this);
+        } finally {
+            riverSim.unlockAll();
+        }
+        playing.set(true);
+
+        running = true;
+        simulationThread = new Thread(this::runLoop, "river-auto-play");
+        simulationThread.setDaemon(true);
+        simulationThread.start();
+    }
+
+    /*
+     * Description: stops playing after the batch in progress and shows the final state, must be called on the JavaFX
+     * thread
+     */
+    public void pause() {
+        if (!playing.get())
+            return;
+        running = false;
+        LockSupport.unpark(simulationThread);
+        try {
+            simulationThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        frameTimer.stop();
+
+        // deliver what is left and give the view back its changes
+        publish();
+        riverSim.setTileChangeListener(view);
+        simulationThread = null;
+        view = null;
+        pending = null;
+        playing.set(false);
+    }
+
+    /*
+     * Description: merges the changes of a batch into the pending set (called holding the riverSim's locks)
+     * Parameters: changes - the changed tile indexes and which of their values changed
+     */
+    @Override
+    public void tilesChanged(TileChanges changes) {
+        for (int k = 0; k < changes.size(); k++) {
+            int index = changes.index(k);
+            pending.mark(index, changes.flags(index));
+        }
+    }
+
+    /*
+     * Description: hands the pending changes to the view and refreshes the rest of the UI, once per frame
+     */
+    private void publish() {
+        riverSim.lockAll();
+        try {
+            if (pending.size() > 0) {
+                if (view != null)
+                    view.tilesChanged(pending);
+                pending.clear();
+            }
+            onFrame.run();
+        } finally {
+            riverSim.unlockAll();
+        }
+    }
+
+    /*
+     * Description: the simulation thread, steps the months that are due at the current rate. If the months can't be
+     * simulated as fast as asked, it runs flat out without trying to catch up later.
+     */
+    private void runLoop() {
+        double rate = monthsPerSecond;
+        long start = System.nanoTime();
+        long stepped = 0;
+        while (running) {
+            // start counting again when the rate changes
+            if (rate != monthsPerSecond) {
+                rate = monthsPerSecond;
+                start = System.nanoTime();
+                stepped = 0;
+            }
+
+            long due = (long) ((System.nanoTime() - start) * rate / TimeUnit.SECONDS.toNanos(1));
+            if (due > stepped) {
+                int batch = (int) Math.min(due - stepped, MAX_BATCH);
+                riverSim.nextMonths(batch);
+                stepped += batch;
+
+                // don't build up a backlog when falling behind
+                if (due - stepped > rate)
+                    stepped = due;
+            } else {
+                // sleep until the next month is due
+                long next = start + (long) ((stepped + 1) * TimeUnit.SECONDS.toNanos(1) / rate);
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+        }
+    }
+}
@@ -2,21 +2,50 @@ package johnson_noah.river;
 
 /*
  * Author: Noah Johnson
- * Description: JavaFx Project, Controller which handles events and button clicks
+ * Description: JavaFx Project, Controller which handles events and button clicks. While the layout's AutoPlayer is
+ * playing, the riverSim is stepped on another thread, so everything here that does more than one call on it takes
+ * all of its locks (lockAll), and the actions that rebuild the map pause playing first.
+ *
+ * Every action that changes the riverSim is committed to a WorldHistory afterwards (a run of auto-play when it is
+ * paused), so it can be undone and redone, and the player can fork the world into branches, switch between them and
+ * compare them.
  */
 
+import javafx.beans.value.ChangeListener;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.Node;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
-import javafx.scene.control.RadioButton;
+import javafx.scene.control.Tooltip;
+import javafx.scene.control.ToggleButton;
+import javafx.scene.input.MouseDragEvent;
 import javafx.scene.input.MouseEvent;
+import javafx.stage.FileChooser;
+import javafx.stage.Window;
 
-import java.util.Objects;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
 
 public class Controller {
 
     private RiverSim _riverSim;
     private Layout _layout;
+    private EventJournal journal;
+    private final WorldHistory history;
+
+    // the paint stroke in progress: the tiles painted so far (each once), or a rectangle from the first tile
+    private int[] stroke = new int[64];
+    private int strokeCount = 0;
+    private BitSet strokeTiles;
+    private int strokeFirst = -1;
+    private int strokeLast = -1;
+    private boolean strokeRectangle;
 
     /*
      * Description: Constructor for Controller, injects the layout and riverSim
@@ -27,13 +56,27 @@ public class Controller {
         // set layout and riverSim
         _layout = layout;
         _riverSim = riverSim;
+        history = new WorldHistory(riverSim);
+    }
+
+    /*
+     * Description: wraps an input handler so its time, and the layout pulse after it, are measured (see Metrics)
+     * Parameters: handler - the handler
+     * Returns: the measured handler
+     */
+    private static <T extends Event> EventHandler<T> timed(EventHandler<T> handler) {
+        return event -> {
+            long start = Metrics.start();
+            handler.handle(event);
+            Metrics.handlerFinished(start);
+        };
     }
 
     /*
      * Description: handles the "add" checkbox from the layout. Toggles radio buttons enabled/disabled.
      */
     public EventHandler<MouseEvent> handleCheckBox() {
-        return new EventHandler<MouseEvent>() {
+        return timed(new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent mouseEvent) {
 
@@ -44,48 +87,439 @@ public class Controller {
                 // toggle radio buttons disabled
                 _layout.toggleRadioButtonsDisabled(!b);
             }
-        };
+        });
     }
 
     /*
      * Description: handles the "Next Month" button from the layout. Calls nextMonth in riverSim, updates info bar.
      */
     public EventHandler<MouseEvent> handleNextMonthButton() {
-        return new EventHandler<MouseEvent>() {
+        return timed(new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent mouseEvent) {
-                // call next month in the riverSim, then refresh info bar
+                // step a single month (pausing auto-play), then refresh info bar
+                pause();
                 _riverSim.nextMonth();
                 _layout.updateInfoBar();
+                commit("Next month");
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Skip 10 Years" button from the layout. Fast-forwards the riverSim (pausing auto-play),
+     * updates info bar.
+     */
+    public EventHandler<MouseEvent> handleSkipYearsButton() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                // fast-forward the riverSim (pausing auto-play), then refresh info bar
+                pause();
+                _riverSim.lockAll();
+                try {
+                    _riverSim.skipYears(10);
+                    _layout.updateInfoBar();
+                } finally {
+                    _riverSim.unlockAll();
+                }
+                commit("Skip 10 years");
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Play" toggle from the layout. Starts or pauses auto-play.
+     */
+    public EventHandler<ActionEvent> handlePlayButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                ToggleButton source = (ToggleButton) actionEvent.getSource();
+                if (source.isSelected())
+                    _layout.getAutoPlayer().play();
+                else
+                    pause();
+            }
+        });
+    }
+
+    /*
+     * Description: handles the speed slider from the layout, which is the log10 of the months per second
+     */
+    public ChangeListener<Number> handleSpeedChange() {
+        return (observable, oldValue, newValue) ->
+                _layout.getAutoPlayer().setMonthsPerSecond(Math.pow(10, newValue.doubleValue()));
+    }
+
+    /*
+     * Description: handles the "Save" button from the layout. Asks for a file and saves a snapshot of the riverSim.
+     */
+    public EventHandler<MouseEvent> handleSaveButton() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                // ask where to save
+                Window window = ((Node) mouseEvent.getSource()).getScene().getWindow();
+                File file = snapshotChooser("Save River Sim").showSaveDialog(window);
+                if (file == null)
+                    return;
+
+                try {
+                    SnapshotIO.save(_riverSim, file.toPath());
+                } catch (IOException e) {
+                    new Alert(Alert.AlertType.ERROR, "Could not save: " + e.getMessage()).showAndWait();
+                }
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Load" button from the layout. Asks for a snapshot file, loads it into the riverSim and
+     * rebuilds the map view.
+     */
+    public EventHandler<MouseEvent> handleLoadButton() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                // ask which snapshot to load
+                Window window = ((Node) mouseEvent.getSource()).getScene().getWindow();
+                File file = snapshotChooser("Load River Sim").showOpenDialog(window);
+                if (file == null)
+                    return;
+
+                try {
+                    pause();
+                    SnapshotIO.load(file.toPath(), _riverSim);
+                    _layout.reloadMap();
+                    commit("Load");
+                } catch (IOException e) {
+                    new Alert(Alert.AlertType.ERROR, "Could not load: " + e.getMessage()).showAndWait();
+                }
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Record" toggle from the layout. Asks for a journal file and starts recording every
+     * change of the riverSim to it, or stops recording when toggled off.
+     */
+    public EventHandler<ActionEvent> handleRecordButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                ToggleButton source = (ToggleButton) actionEvent.getSource();
+
+                // stop recording
+                if (!source.isSelected()) {
+                    stopRecording();
+                    return;
+                }
+
+                // ask where to record, staying unselected if cancelled
+                FileChooser chooser = new FileChooser();
+                chooser.setTitle("Record River Sim");
+                chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("River Sim journals", "*.rjnl"));
+                File file = chooser.showSaveDialog(source.getScene().getWindow());
+                if (file == null) {
+                    source.setSelected(false);
+                    return;
+                }
+
+                try {
+                    _riverSim.lockAll();
+                    try {
+                        journal = new EventJournal(_riverSim, file.toPath());
+                    } finally {
+                        _riverSim.unlockAll();
+                    }
+                } catch (IOException e) {
+                    source.setSelected(false);
+                    new Alert(Alert.AlertType.ERROR, "Could not record: " + e.getMessage()).showAndWait();
+                }
+            }
+        });
+    }
+
+    /*
+     * Description: stops recording (if a journal is open), writing out everything still buffered
+     */
+    public void stopRecording() {
+        if (journal == null)
+            return;
+        try {
+            _riverSim.lockAll();
+            try {
+                journal.close();
+            } finally {
+                _riverSim.unlockAll();
+            }
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Could not finish the recording: " + e.getMessage()).showAndWait();
+        }
+        journal = null;
+    }
+
+    /*
+     * Description: handles the "Optimize" button from the layout. Searches for the most profitable land to buy with
+     * the budget and years typed into the layout (see LayoutOptimizer), and places it on the map if the player
+     * accepts.
+     */
+    public EventHandler<MouseEvent> handleOptimizeButton() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                // read the budget and the years, ignoring values that aren't numbers
+                long budget;
+                int years;
+                try {
+                    budget = Long.parseLong(_layout.budgetField.getText().trim());
+                    years = Integer.parseInt(_layout.yearsField.getText().trim());
+                } catch (NumberFormatException e) {
+                    return;
+                }
+                if (budget < 0 || years < 1 || years > Integer.MAX_VALUE / RiverSim.MONTHS_PER_YEAR)
+                    return;
+
+                // search while paused
+                pause();
+                LayoutOptimizer.Result result = new LayoutOptimizer(_riverSim).optimize(budget,
+                        years * RiverSim.MONTHS_PER_YEAR);
+                if (result.getGain() == 0) {
+                    new Alert(Alert.AlertType.INFORMATION, "No land pays for itself within " + years + " years.")
+                            .showAndWait();
+                    return;
+                }
+
+                // offer to place it, so it shows on the map
+                Alert offer = new Alert(Alert.AlertType.CONFIRMATION, "Place " + result.describe() + " for $"
+                        + result.getSpent() + "k? Projected funds after " + years + " years: $"
+                        + result.getProjectedFunds() + "k (+$" + result.getGain() + "k)");
+                offer.setHeaderText("Best layout found");
+                if (offer.showAndWait().filter(ButtonType.OK::equals).isPresent()) {
+                    result.apply(_riverSim);
+                    _layout.updateInfoBar();
+                    commit("Optimize");
+                }
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Undo" button from the layout (and its hotkey)
+     */
+    public EventHandler<ActionEvent> handleUndoButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                undo();
+            }
+        });
+    }
+
+    /*
+     * Description: handles the "Redo" button from the layout (and its hotkey)
+     */
+    public EventHandler<ActionEvent> handleRedoButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                redo();
+            }
+        });
+    }
+
+    /*
+     * Description: takes back the last change to the riverSim (pausing auto-play, whose months become a change of
+     * their own)
+     */
+    public void undo() {
+        RiverMap riverMap = _riverSim.getRiverMap();
+        pause();
+        if (history.undo())
+            historyMoved(riverMap);
+    }
+
+    /*
+     * Description: brings back the last change undone
+     */
+    public void redo() {
+        RiverMap riverMap = _riverSim.getRiverMap();
+        pause();
+        if (history.redo())
+            historyMoved(riverMap);
+    }
+
+    /*
+     * Description: handles the "Fork" button from the layout. Forks the world into a new branch, which the player
+     * carries on in, leaving the branch it came from as it is.
+     */
+    public EventHandler<ActionEvent> handleForkButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                pause();
+                int branch = history.fork("Branch " + history.getBranchCount());
+                _layout.branchBox.getItems().add(history.getBranchName(branch));
+                _layout.branchBox.getSelectionModel().select(branch);
+                updateHistoryButtons();
             }
+        });
+    }
+
+    /*
+     * Description: handles a branch being chosen in the layout's branch box, switching the riverSim to it
+     */
+    public ChangeListener<Number> handleBranchChange() {
+        return (observable, oldValue, newValue) -> {
+            int branch = newValue.intValue();
+            if (branch < 0 || branch == history.getCurrentBranch())
+                return;
+            RiverMap riverMap = _riverSim.getRiverMap();
+            pause();
+            history.checkout(branch);
+            historyMoved(riverMap);
         };
     }
 
     /*
-     * Description: handles the three resize buttons from the layout. Calls resize in the layout.
+     * Description: handles the "Compare" button from the layout. Shows every branch side by side: where it is now,
+     * how many tiles differ from the branch being played, and the funds it would have after the years typed into the
+     * layout, playing all the branches forward at the same time.
+     */
+    public EventHandler<ActionEvent> handleCompareButton() {
+        return timed(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                // read the years, ignoring values that aren't numbers
+                int years;
+                try {
+                    years = Integer.parseInt(_layout.yearsField.getText().trim());
+                } catch (NumberFormatException e) {
+                    return;
+                }
+                if (years < 0 || years > Integer.MAX_VALUE / RiverSim.MONTHS_PER_YEAR)
+                    return;
+
+                // project every branch, then describe each next to the one being played
+                pause();
+                long[] projected = history.project(years * RiverSim.MONTHS_PER_YEAR, ForkJoinPool.commonPool());
+                WorldHistory.Version played = history.getHead(history.getCurrentBranch());
+                StringBuilder text = new StringBuilder();
+                for (int b = 0; b < projected.length; b++) {
+                    WorldHistory.Version head = history.getHead(b);
+                    int[] differing = WorldHistory.differingTiles(head, played);
+                    text.append(history.getBranchName(b)).append(b == history.getCurrentBranch() ? " (playing)" : "")
+                            .append(": year ").append(head.getYear()).append(" month ").append(head.getMonth())
+                            .append(", funds $").append(head.getFunds()).append("k, filled ").append(head.getFilled())
+                            .append(", ").append(differing == null ? "another map" : differing.length + " tiles differ")
+                            .append(", funds after ").append(years).append(" years $").append(projected[b])
+                            .append("k\n");
+                }
+                Alert comparison = new Alert(Alert.AlertType.INFORMATION, text.toString());
+                comparison.setHeaderText("Branches");
+                comparison.showAndWait();
+            }
+        });
+    }
+
+    /*
+     * Description: refreshes the layout after the history restored another version: the map view is rebuilt if the
+     * map changed, otherwise the riverSim already told it which tiles changed
+     * Parameters: riverMap - the map before the history moved
+     */
+    private void historyMoved(RiverMap riverMap) {
+        if (_riverSim.getRiverMap() != riverMap)
+            _layout.reloadMap();
+        else
+            _layout.updateInfoBar();
+        updateHistoryButtons();
+    }
+
+    /*
+     * Description: pauses auto-play, committing the months it played as one change
+     */
+    private void pause() {
+        if (!_layout.getAutoPlayer().isPlaying())
+            return;
+        _layout.getAutoPlayer().pause();
+        commit("Play");
+    }
+
+    /*
+     * Description: commits the riverSim's changes to the history, if there are any
+     * Parameters: label - what changed
+     */
+    private void commit(String label) {
+        if (history.commit(label))
+            updateHistoryButtons();
+    }
+
+    /*
+     * Description: enables the undo and redo buttons when there is something to undo or redo, with what it is in
+     * their tooltips
+     */
+    private void updateHistoryButtons() {
+        _layout.undoButton.setDisable(!history.canUndo());
+        _layout.undoButton.setTooltip(history.canUndo() ? new Tooltip("Undo " + history.getUndoLabel()) : null);
+        _layout.redoButton.setDisable(!history.canRedo());
+        _layout.redoButton.setTooltip(history.canRedo() ? new Tooltip("Redo " + history.getRedoLabel()) : null);
+    }
+
+    /*
+     * Description: creates a file chooser for snapshot files
+     * Parameters: title - the dialog title
+     * Returns: the file chooser
+     */
+    private FileChooser snapshotChooser(String title) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle(title);
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("River Sim snapshots", "*.rsim"));
+        return chooser;
+    }
+
+    /*
+     * Description: handles the three resize buttons and the custom size button from the layout. Calls resize in the
+     * layout.
      */
     public EventHandler<MouseEvent> handleResizeButton() {
-        return new EventHandler<MouseEvent>() {
+        return timed(new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent mouseEvent) {
+                // keep the overlapping land if the layout asks for it, the map can't change while playing
+                boolean keepLand = _layout.keepLandBox.isSelected();
+                pause();
 
                 // handle resize of 5x3
                 if(((Node) mouseEvent.getSource()).getId().compareTo("resize1") == 0) {
-                    _layout.resize(5, 3);
+                    _layout.resize(5, 3, keepLand);
                 }
 
                 // handle resize of 7x5
                 else if(((Node) mouseEvent.getSource()).getId().compareTo("resize2") == 0) {
-                    _layout.resize(7, 5);
+                    _layout.resize(7, 5, keepLand);
                 }
 
                 // handle resize of 9x7
                 else if(((Node) mouseEvent.getSource()).getId().compareTo("resize3") == 0) {
-                    _layout.resize(9, 7);
+                    _layout.resize(9, 7, keepLand);
+                }
+
+                // handle resize to the custom size typed into the layout (at least one tile on each bank)
+                else if(((Node) mouseEvent.getSource()).getId().compareTo("resizeCustom") == 0) {
+                    try {
+                        int cols = Integer.parseInt(_layout.colsField.getText().trim());
+                        int rows = Integer.parseInt(_layout.rowsField.getText().trim());
+                        if (cols >= 3 && rows >= 1)
+                            _layout.resize(cols, rows, keepLand);
+                    } catch (NumberFormatException e) {
+                        // ignore sizes that aren't numbers
+                    }
                 }
                 _layout.updateInfoBar();
+                commit("Resize");
             }
-        };
+        });
     }
 
     /*
@@ -93,48 +527,179 @@ public class Controller {
      * the layout info bar. Also sets the active tile in the layout.
      */
     public EventHandler<MouseEvent> handleTileClick() {
-        return new EventHandler<MouseEvent>() {
+        return timed(new EventHandler<MouseEvent>() {
             @Override
             public void handle(MouseEvent mouseEvent) {
 
+                // a drag ending on the tile it started from is a stroke, not a click
+                if (!mouseEvent.isStillSincePress())
+                    return;
+
                 // get source
                 TileView source = (TileView) mouseEvent.getSource();
+                tileClicked(source.getIndex());
+            }
+        });
+    }
 
-                // if checkbox is selected, get the land type from radiobuttons
-                if(_layout.checkBox.isSelected()) {
-                    String selectedLandType =  ((RadioButton)(_layout.radioButtons.getSelectedToggle())).getText();
-                    String landString;
-
-                    // handle new agriculture logic
-                    if(Objects.equals(selectedLandType, "Agriculture")) {
-                        if(Objects.equals(source.getLandText(), "-U-"))
-                            _riverSim.addToFilled(1);
-                        landString = "-A-";
-                        _riverSim.addToFunds(-300);
-                        _layout.updateInfoBar();
-                    }
+    /*
+     * Description: the click logic shared by every map renderer (tile views and the canvas). Places the selected land
+     * type if "add" is checked, then sets the active tile.
+     * Parameters: index - the index of the clicked tile
+     */
+    public void tileClicked(int index) {
+        _riverSim.lockAll();
+        try {
+            // if checkbox is selected, get the land type from radiobuttons
+            String landString = selectedLandType();
+            if (landString != null) {
+                // place the land (charges funds and updates filled) and refresh the info bar
+                _riverSim.placeLand(landString, index);
+                _layout.updateInfoBar();
+            }
 
-                    // handle new recreation logic
-                    else if (Objects.equals(selectedLandType, "Recreation")) {
-                        if(Objects.equals(source.getLandText(), "-U-"))
-                            _riverSim.addToFilled(1);
-                        landString = "-R-";
-                        _riverSim.addToFunds(-10);
-                        _layout.updateInfoBar();
-                    }
+            // set the active tile
+            _layout.setActiveTile(_riverSim.getTile(index));
+        } finally {
+            _riverSim.unlockAll();
+        }
+        commit("Place");
+    }
 
-                    // otherwise, new unused
-                    else {
-                        landString = "-U-";
-                    }
+    /*
+     * Description: gets the land type to place from the radio buttons
+     * Returns: the land type abbreviation, or null if "add" isn't checked or no land type is chosen
+     */
+    private String selectedLandType() {
+        if (!_layout.checkBox.isSelected() || _layout.radioButtons.getSelectedToggle() == null)
+            return null;
 
-                    // replace tile
-                    _riverSim.replaceTile(landString, source.getIndex());
-                }
+        // each radio button holds the abbreviation of its land type
+        return (String) _layout.radioButtons.getSelectedToggle().getUserData();
+    }
 
-                // set the active tile
-                _layout.setActiveTile(_riverSim.getTile(source.getIndex()));
+    /*
+     * Description: handles a drag starting on a tile view. Starts a full press-drag-release gesture, so the tile
+     * views the mouse passes over are told, and starts a paint stroke (a rectangle if shift is held).
+     */
+    public EventHandler<MouseEvent> handleTileDragDetected() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                TileView source = (TileView) mouseEvent.getSource();
+                source.startFullDrag();
+                strokeStarted(source.getIndex(), mouseEvent.isShiftDown());
             }
-        };
+        });
+    }
+
+    /*
+     * Description: handles the mouse being dragged onto a tile view, adding the tile to the paint stroke
+     */
+    public EventHandler<MouseDragEvent> handleTileDragEntered() {
+        return timed(new EventHandler<MouseDragEvent>() {
+            @Override
+            public void handle(MouseDragEvent mouseDragEvent) {
+                strokeEntered(((TileView) mouseDragEvent.getSource()).getIndex());
+            }
+        });
+    }
+
+    /*
+     * Description: handles the mouse being released anywhere on a map view, finishing the paint stroke
+     */
+    public EventHandler<MouseEvent> handleMouseReleased() {
+        return timed(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent mouseEvent) {
+                strokeFinished();
+            }
+        });
+    }
+
+    /*
+     * Description: starts a paint stroke on a tile, shared by every map renderer. Nothing is placed until the stroke
+     * finishes. Does nothing unless "add" is checked with a land type chosen.
+     * Parameters: index - the tile the drag started on
+     *             rectangle - true to fill the rectangle between the first and last tile instead of painting
+     */
+    public void strokeStarted(int index, boolean rectangle) {
+        if (selectedLandType() == null)
+            return;
+        strokeFirst = index;
+        strokeLast = index;
+        strokeRectangle = rectangle;
+        strokeTiles = new BitSet(_riverSim.getTileCount());
+        strokeCount = 0;
+        addToStroke(index);
+    }
+
+    /*
+     * Description: moves a paint stroke onto a tile: paints it (once per stroke), or moves the rectangle's corner
+     * Parameters: index - the tile the mouse is over
+     */
+    public void strokeEntered(int index) {
+        if (strokeFirst < 0)
+            return;
+        strokeLast = index;
+        if (!strokeRectangle)
+            addToStroke(index);
+    }
+
+    /*
+     * Description: finishes a paint stroke, placing every tile in it as one operation with one info bar refresh
+     */
+    public void strokeFinished() {
+        if (strokeFirst < 0)
+            return;
+        String landString = selectedLandType();
+        if (landString != null) {
+            _riverSim.lockAll();
+            try {
+                if (strokeRectangle) {
+                    RiverMap riverMap = _riverSim.getRiverMap();
+                    _riverSim.fillRect(landString, riverMap.getCol(strokeFirst), riverMap.getRow(strokeFirst),
+                            riverMap.getCol(strokeLast), riverMap.getRow(strokeLast));
+                } else {
+                    _riverSim.placeLand(landString, stroke, strokeCount);
+                }
+                _layout.updateInfoBar();
+                _layout.setActiveTile(_riverSim.getTile(strokeLast));
+            } finally {
+                _riverSim.unlockAll();
+            }
+            commit(strokeRectangle ? "Fill" : "Paint");
+        }
+        strokeFirst = -1;
+        strokeTiles = null;
+    }
+
+    /*
+     * Description: getter for the first tile of the paint stroke in progress
+     * Returns: the tile index, or -1 if there is no stroke
+     */
+    public int getStrokeFirst() {
+        return strokeFirst;
+    }
+
+    /*
+     * Description: tells whether the paint stroke in progress fills a rectangle
+     * Returns: strokeRectangle
+     */
+    public boolean isStrokeRectangle() {
+        return strokeRectangle;
+    }
+
+    /*
+     * Description: adds a tile to the paint stroke unless it is already in it
+     * Parameters: index - the tile index
+     */
+    private void addToStroke(int index) {
+        if (strokeTiles.get(index))
+            return;
+        strokeTiles.set(index);
+        if (strokeCount == stroke.length)
+            stroke = Arrays.copyOf(stroke, strokeCount * 2);
+        stroke[strokeCount++] = index;
     }
 }
@@ -0,0 +1,366 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, EventJournal class. Records every state change of a RiverSim to an append-only binary
+ * journal, with a full-state keyframe (a SnapshotIO snapshot) at the start and every few simulated years, so a
+ * JournalReader can replay the session or seek to any recorded month by replaying from the nearest keyframe.
+ *
+ * Events are encoded into a small buffer on the simulation's thread and handed to a writer thread in blocks, so
+ * recording never waits on the disk (unless the writer falls far behind). Keyframes copy the state and are encoded
+ * on the writer thread; if the previous keyframe is still being written the next one waits for a later month.
+ * Placements on several threads at once (see RiverSim) are recorded one at a time, in the order they happened.
+ *
+ * Format (big-endian): int magic "RJNL", int version, then records of a type byte followed by zigzag varints:
+ *   MAP_CREATED mapCols mapRows | PLACE index landType purchased | FUNDS reason amount | FILLED external delta
+ *   FLOOD index | UNFLOOD index | MONTH month year | SKIP years | KEYFRAME long month, long length, snapshot bytes
+ * MAP_CREATED is only used for straight river maps, a map with other rivers is recorded as a keyframe. The journal
+ * month counts the months advanced since recording started. Version 2 has 64-bit funds amounts; it is read the same
+ * way as version 1, whose amounts are varints of ints. Keyframes are snapshots as SnapshotIO writes them, which carry
+ * their own version (SnapshotIO checks it when a keyframe is loaded).
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class EventJournal implements SimEventListener, Closeable {
+    static final int MAGIC = 0x524A4E4C;
+    static final int VERSION = 2;
+
+    // record types
+    static final byte MAP_CREATED = 1;
+    static final byte PLACE = 2;
+    static final byte FUNDS = 3;
+    static final byte FILLED = 4;
+    static final byte FLOOD = 5;
+    static final byte UNFLOOD = 6;
+    static final byte MONTH = 7;
+    static final byte SKIP = 8;
+    static final byte KEYFRAME = 9;
+
+    public static final int DEFAULT_KEYFRAME_MONTHS = 10 * RiverSim.MONTHS_PER_YEAR;
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int QUEUED_BLOCKS = 64;
+    private static final Object CLOSE = new Object();
+
+    // how long a full queue is waited on before checking the writer is still running
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    private final RiverSim riverSim;
+    private final FileChannel channel;
+    private final int keyframeMonths;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+    private final AtomicBoolean keyframePending = new AtomicBoolean();
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private long month = 0;
+    private long nextKeyframe;
+    private boolean closed = false;
+
+    /*
+     * Description: a keyframe waiting for the writer thread: a detached copy of the state and its journal month
+     */
+    private static class Keyframe {
+        final long month;
+        final RiverSim state;
+
+        Keyframe(long month, RiverSim state) {
+            this.month = month;
+            this.state = state;
+        }
+    }
+
+    /*
+     * Description: starts recording a riverSim to a new journal file (replacing the file if it exists), with a
+     * keyframe every DEFAULT_KEYFRAME_MONTHS months
+     * Parameters: riverSim - the simulation to record
+     *             path - the journal file
+     */
+    public EventJournal(RiverSim riverSim, Path path) throws IOException {
+        this(riverSim, path, DEFAULT_KEYFRAME_MONTHS);
+    }
+
+    /*
+     * Description: starts recording a riverSim to a new journal file (replacing the file if it exists). The current
+     * state is written as the first keyframe.
+     * Parameters: riverSim - the simulation to record
+     *             path - the journal file
+     *             keyframeMonths - the number of months between keyframes, which bounds the replay work of a seek
+     */
+    public EventJournal(RiverSim riverSim, Path path, int keyframeMonths) throws IOException {
+        if (keyframeMonths < 1) {
+            throw new IllegalArgumentException("Bad keyframe interval: " + keyframeMonths);
+        }
+        this.riverSim = riverSim;
+        this.keyframeMonths = keyframeMonths;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        block.putInt(MAGIC).putInt(VERSION);
+
+        writer = new Thread(this::writeLoop, "river-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        keyframe(true);
+        riverSim.addSimEventListener(this);
+    }
+
+    @Override
+    public synchronized void mapCreated(RiverMap riverMap) {
+        // a straight river map is replayed from its size, any other layout is kept as a keyframe
+        if (!riverMap.isStraight()) {
+            keyframe(true);
+            return;
+        }
+        record(MAP_CREATED);
+        putVarint(riverMap.getMapCols());
+        putVarint(riverMap.getRows());
+    }
+
+    @Override
+    public synchronized void mapResized(RiverMap riverMap) {
+        // the kept land can't be replayed from the map size, so it must become a keyframe
+        keyframe(true);
+    }
+
+    @Override
+    public synchronized void stateRestored() {
+        // a loaded snapshot can't be replayed from events, so it must become a keyframe
+        keyframe(true);
+    }
+
+    @Override
+    public synchronized void landPlaced(int index, byte landType, boolean purchased) {
+        record(PLACE);
+        putVarint(index);
+        putVarint(landType);
+        putVarint(purchased ? 1 : 0);
+    }
+
+    @Override
+    public synchronized void fundsChanged(long amount, int reason) {
+        record(FUNDS);
+        putVarint(reason);
+        putVarint(amount);
+    }
+
+    @Override
+    public synchronized void filledChanged(int delta, boolean external) {
+        record(FILLED);
+        putVarint(external ? 1 : 0);
+        putVarint(delta);
+    }
+
+    @Override
+    public synchronized void tileFlooded(int index) {
+        record(FLOOD);
+        putVarint(index);
+    }
+
+    @Override
+    public synchronized void tileUnflooded(int index) {
+        record(UNFLOOD);
+        putVarint(index);
+    }
+
+    @Override
+    public synchronized void monthAdvanced(int month, int year) {
+        record(MONTH);
+        putVarint(month);
+        putVarint(year);
+        this.month++;
+        if (this.month >= nextKeyframe)
+            keyframe(false);
+    }
+
+    @Override
+    public synchronized void yearsSkipped(int years) {
+        record(SKIP);
+        putVarint(years);
+        month += (long) years * RiverSim.MONTHS_PER_YEAR;
+        if (month >= nextKeyframe)
+            keyframe(false);
+    }
+
+    /*
+     * Description: getter for the journal month, the number of months advanced since recording started
+     * Returns: month
+     */
+    public synchronized long getMonth() {
+        return month;
+    }
+
+    /*
+     * Description: hands the buffered events to the writer thread without waiting for them to reach the disk
+     */
+    public synchronized void flush() throws IOException {
+        checkFailure();
+        submitBlock();
+    }
+
+    /*
+     * Description: stops recording, writes everything still buffered and closes the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        riverSim.removeSimEventListener(this);
+        submitBlock();
+        put(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        checkFailure();
+    }
+
+    /*
+     * Description: queues a keyframe of the current state. A periodic keyframe is skipped while the last one is still
+     * being written (it is retried at the next month), so copies of the state can't pile up in the queue.
+     * Parameters: force - true if the keyframe is needed for replay (the start, or a loaded snapshot)
+     */
+    private void keyframe(boolean force) {
+        if (!keyframePending.compareAndSet(false, true) && !force)
+            return;
+        submitBlock();
+        put(new Keyframe(month, riverSim.copy()));
+        nextKeyframe = month + keyframeMonths;
+    }
+
+    /*
+     * Description: starts a record, handing the block to the writer first if the record might not fit
+     * Parameters: type - the record type
+     */
+    private void record(byte type) {
+        if (block.remaining() < 16)
+            submitBlock();
+        block.put(type);
+    }
+
+    /*
+     * Description: writes a value to the block as a zigzag varint (the same bytes SnapshotIO writes)
+     * Parameters: value - the value to write
+     */
+    private void putVarint(long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            block.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        block.put((byte) zigzag);
+    }
+
+    /*
+     * Description: hands the current block to the writer thread and starts a new one
+     */
+    private void submitBlock() {
+        if (block.position() == 0)
+            return;
+        block.flip();
+        put(block);
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+    }
+
+    /*
+     * Description: queues an item for the writer thread, waiting only if the queue is full. Items are dropped once the
+     * writer has stopped (it stops at CLOSE or at the first failed write, and an event from another thread can still
+     * arrive just after close), so a full queue can't wait forever.
+     * Parameters: item - a block of events, a keyframe or CLOSE
+     */
+    private void put(Object item) {
+        try {
+            while (failure == null && writer.isAlive()) {
+                if (queue.offer(item, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Description: rethrows a failure from the writer thread
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal write failed", failure);
+        }
+    }
+
+    /*
+     * Description: the writer thread, writes the queued blocks and keyframes in order until CLOSE or until a write
+     * fails (close rethrows the failure)
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                Object item = queue.take();
+                if (item == CLOSE)
+                    return;
+                if (item instanceof ByteBuffer) {
+                    writeFully((ByteBuffer) item);
+                } else {
+                    writeKeyframe((Keyframe) item);
+                }
+                if (failure != null)
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Description: writes a keyframe record, the snapshot's length is filled in after the snapshot is written
+     * Parameters: keyframe - the keyframe to write
+     */
+    private void writeKeyframe(Keyframe keyframe) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(17);
+            header.put(KEYFRAME).putLong(keyframe.month).putLong(0).flip();
+            long lengthPosition = channel.position() + 9;
+            writeFully(header);
+
+            long start = channel.position();
+            SnapshotIO.write(keyframe.state, channel);
+            long end = channel.position();
+
+            ByteBuffer length = ByteBuffer.allocate(8);
+            length.putLong(end - start).flip();
+            while (length.hasRemaining()) {
+                channel.write(length, lengthPosition + length.position());
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            keyframePending.set(false);
+        }
+    }
+
+    /*
+     * Description: writes a whole buffer to the journal file
+     * Parameters: buffer - the bytes to write
+     */
+    private void writeFully(ByteBuffer buffer) {
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+}
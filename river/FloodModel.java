@@ -0,0 +1,26 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, FloodModel interface. Decides which tiles flood in month 3 of each year. A model must
+ * give the same answer for the same map and year however often it is asked, so a simulation can be replayed, copied
+ * or run on several threads with the same result.
+ */
+
+public interface FloodModel {
+
+    /*
+     * Description: writes the indexes of the tiles that flood this year
+     * Parameters: riverSim - the simulation (for the map size and the current year)
+     *             tiles - where to write the tile indexes, with room for every tile on the map
+     * Returns: the number of tile indexes written (each index at most once)
+     */
+    int floodedTiles(RiverSim riverSim, int[] tiles);
+
+    /*
+     * Description: tells whether every year floods the same tiles, which lets RiverSim.advance apply whole years at
+     * once instead of stepping them
+     * Returns: true if the floods repeat every year
+     */
+    boolean isPeriodic();
+}
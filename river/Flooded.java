@@ -1,7 +0,0 @@
-package johnson_noah.river;
-/*
- * Author: Noah Johnson
- * Description: JavaFx Project, Flooded Class
- */
-public class Flooded extends LandArea {
-}
@@ -0,0 +1,118 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, HeadlessRunner class. Runs the river simulator without JavaFX (no javafx classes are
+ * loaded), for batch jobs and servers. Builds a grid, applies placements, steps the months and prints the result.
+ *
+ * Usage: HeadlessRunner <mapCols> <mapRows> <months> [placement...]
+ *        a placement is a land type letter (or the abbreviation of a land type added through river.landtypes, see
+ *        LandType) and a tile index or index range, for example A:0 R:4-7 U:2 -W-:8
+ *        with -Driver.metrics=true the time of each phase (see Metrics) is printed as well
+ *        with -Driver.telemetry=<file> every month is exported to the file (see TelemetryExporter), as JSON Lines if
+ *        it ends in .jsonl and CSV otherwise, with -Driver.telemetry.granularity=global, types (the default) or tiles
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class HeadlessRunner {
+
+    /*
+     * Description: entry point for a headless run
+     * Parameters: args - map columns, map rows, months, then any placements
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: HeadlessRunner <mapCols> <mapRows> <months> [A:index | R:first-last | ...]");
+            System.exit(1);
+        }
+
+        // build the grid without any views
+        int mapCols = Integer.parseInt(args[0]);
+        int mapRows = Integer.parseInt(args[1]);
+        int months = Integer.parseInt(args[2]);
+        RiverSim riverSim = new RiverSim(mapCols, mapRows);
+
+        // apply the placements
+        for (int i = 3; i < args.length; i++) {
+            applyPlacement(riverSim, args[i]);
+        }
+
+        // step the months and time the run, exporting them if asked
+        TelemetryExporter exporter = openExporter(riverSim);
+        long start = System.nanoTime();
+        riverSim.nextMonths(months);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        try {
+            if (exporter != null)
+                exporter.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        System.out.println("Tiles: " + riverSim.getTileCount() + " (" + riverSim.getMapCols() + "x" + riverSim.getRows() + " map)");
+        System.out.println("Year: " + riverSim.getCurrentYear() + " Month: " + riverSim.getCurrentMonth());
+        System.out.println("Filled: " + riverSim.getFilled());
+        System.out.println("Funds: $" + riverSim.getFunds() + "k");
+        LandStats stats = riverSim.getStats();
+        StringBuilder counts = new StringBuilder("Agriculture: " + stats.count(LandType.AGRICULTURE) + " ("
+                + stats.getMatureAgriculture() + " mature) Recreation: " + stats.count(LandType.RECREATION)
+                + " Flooded: " + stats.count(LandType.FLOODED));
+        for (byte type = LandType.FLOODED + 1; type < LandType.COUNT; type++) {
+            counts.append(' ').append(LandType.name(type)).append(": ").append(stats.count(type));
+        }
+        System.out.println(counts);
+        System.out.println("Projected per year: -$" + stats.getProjectedAnnualCost() + "k +$"
+                + stats.getProjectedAnnualRevenue() + "k");
+        System.out.printf("Simulated %d months in %.3f s (%.0f years/s)%n", months, seconds, months / 13.0 / seconds);
+        if (Metrics.isEnabled())
+            System.out.println(Metrics.summary());
+    }
+
+    /*
+     * Description: starts exporting the months to the file named by the river.telemetry system property
+     * Parameters: riverSim - the simulation to export
+     * Returns: the exporter, or null if the property isn't set
+     */
+    static TelemetryExporter openExporter(RiverSim riverSim) {
+        String file = System.getProperty("river.telemetry");
+        if (file == null || file.isEmpty())
+            return null;
+        Path path = Paths.get(file);
+        int granularity = TelemetryExporter.granularity(System.getProperty("river.telemetry.granularity", "types"));
+        try {
+            return new TelemetryExporter(riverSim, path, TelemetryExporter.formatFor(path), granularity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Description: applies one placement argument such as "A:3" or "R:0-9" to the simulation
+     * Parameters: riverSim - the simulation to place land on
+     *             placement - the placement argument
+     */
+    static void applyPlacement(RiverSim riverSim, String placement) {
+        // split the land letter (or abbreviation) from the index range, the land has to be placeable
+        String[] parts = placement.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Bad placement: " + placement);
+        }
+        String landType = parts[0].length() == 1 ? "-" + parts[0].toUpperCase() + "-" : parts[0];
+        if (!LandType.isRegistered(landType) || !LandType.isPlaceable(LandType.fromAbbreviation(landType))) {
+            throw new IllegalArgumentException("Bad placement: " + placement);
+        }
+
+        // read the first and last index of the range
+        String[] range = parts[1].split("-");
+        int first = Integer.parseInt(range[0]);
+        int last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+
+        for (int index = first; index <= last; index++) {
+            riverSim.placeLand(landType, index);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, JournalReader class. Reads a journal written by EventJournal: seeks a RiverSim to any
+ * recorded month by loading the nearest earlier keyframe and replaying the inputs after it (so a seek costs at most
+ * one keyframe interval of months), and audits where the funds went. A journal cut short by a crash is read up to
+ * its last complete record.
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class JournalReader {
+    private final ByteBuffer buffer;
+    private final int end;
+    private long months = 0;
+
+    // keyframes in file order: journal month, snapshot position and snapshot length
+    private long[] keyframeMonths = new long[16];
+    private int[] keyframePositions = new int[16];
+    private int[] keyframeLengths = new int[16];
+    private int keyframeCount = 0;
+
+    /*
+     * Description: opens a journal file and indexes its keyframes
+     * Parameters: path - the journal file
+     */
+    public JournalReader(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Journal is too large to map: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < 8 || buffer.getInt() != EventJournal.MAGIC) {
+            throw new IOException("Not a river sim journal: " + path);
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > EventJournal.VERSION) {
+            throw new IOException("Unsupported journal version " + version + ": " + path);
+        }
+        end = index();
+    }
+
+    /*
+     * Description: getter for the number of months recorded
+     * Returns: months
+     */
+    public long getMonths() {
+        return months;
+    }
+
+    /*
+     * Description: getter for the number of keyframes in the journal
+     * Returns: keyframeCount
+     */
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /*
+     * Description: puts a riverSim into the state it had at the end of a recorded month (after every placement made
+     * during that month). The riverSim should use the flood model the recording used, and should not be recording to
+     * a journal itself.
+     * Parameters: month - the journal month, from 0 to getMonths()
+     *             riverSim - the simulation to put into that state
+     */
+    public void seek(long month, RiverSim riverSim) throws IOException {
+        if (month < 0 || month > months) {
+            throw new IllegalArgumentException("Month " + month + " is not in the journal (0-" + months + ")");
+        }
+
+        // find the last keyframe at or before the month
+        int k = keyframeCount - 1;
+        while (k > 0 && keyframeMonths[k] > month) {
+            k--;
+        }
+        ByteBuffer snapshot = buffer.duplicate();
+        snapshot.limit(keyframePositions[k] + keyframeLengths[k]).position(keyframePositions[k]);
+        SnapshotIO.read(snapshot, riverSim);
+
+        // replay the inputs after the keyframe, the derived events are recomputed by the riverSim
+        ByteBuffer records = buffer.duplicate();
+        records.limit(end).position(keyframePositions[k] + keyframeLengths[k]);
+        long current = keyframeMonths[k];
+        while (records.hasRemaining()) {
+            byte type = records.get();
+            if ((type == EventJournal.MONTH || type == EventJournal.SKIP) && current == month)
+                return;
+
+            if (type == EventJournal.MAP_CREATED) {
+                int mapCols = SnapshotIO.getVarint(records);
+                riverSim.createTiles(mapCols, SnapshotIO.getVarint(records));
+            } else if (type == EventJournal.PLACE) {
+                int index = SnapshotIO.getVarint(records);
+                int code = SnapshotIO.getVarint(records);
+                if (code < 0 || code >= LandType.COUNT) {
+                    throw new IOException("Journal places a land type that isn't registered (see LandType)");
+                }
+                String landType = LandType.abbreviation((byte) code);
+                if (SnapshotIO.getVarint(records) != 0)
+                    riverSim.placeLand(landType, index);
+                else
+                    riverSim.replaceTile(landType, index);
+            } else if (type == EventJournal.FUNDS) {
+                int reason = SnapshotIO.getVarint(records);
+                long amount = SnapshotIO.getVarlong(records);
+                if (reason == SimEventListener.FUNDS_EXTERNAL)
+                    riverSim.addToFunds(amount);
+            } else if (type == EventJournal.FILLED) {
+                boolean external = SnapshotIO.getVarint(records) != 0;
+                int delta = SnapshotIO.getVarint(records);
+                if (external)
+                    riverSim.addToFilled(delta);
+            } else if (type == EventJournal.FLOOD || type == EventJournal.UNFLOOD) {
+                SnapshotIO.getVarint(records);
+            } else if (type == EventJournal.MONTH) {
+                int recordedMonth = SnapshotIO.getVarint(records);
+                int recordedYear = SnapshotIO.getVarint(records);
+                riverSim.nextMonth();
+                current++;
+                if (riverSim.getCurrentMonth() != recordedMonth || riverSim.getCurrentYear() != recordedYear) {
+                    throw new IOException("Journal replay diverged at month " + current);
+                }
+            } else if (type == EventJournal.SKIP) {
+                // the skip may end past the month, then only part of it is applied and the records after it (made
+                // once the whole skip was over) are not
+                long years = SnapshotIO.getVarint(records);
+                long wanted = Math.min(years * RiverSim.MONTHS_PER_YEAR, month - current);
+                riverSim.skipSteadyYears((int) (wanted / RiverSim.MONTHS_PER_YEAR));
+                riverSim.nextMonths((int) (wanted % RiverSim.MONTHS_PER_YEAR));
+                current += wanted;
+                if (wanted < years * RiverSim.MONTHS_PER_YEAR)
+                    return;
+            } else if (type == EventJournal.KEYFRAME) {
+                records.position(skipKeyframe(records));
+            } else {
+                throw new IOException("Bad journal record type " + type);
+            }
+        }
+    }
+
+    /*
+     * Description: audits the whole journal, adding up the funds changes by their reason
+     * Returns: the total per reason, indexed by the SimEventListener FUNDS_ reasons
+     */
+    public long[] fundsByReason() throws IOException {
+        return fundsByReason(0, Long.MAX_VALUE);
+    }
+
+    /*
+     * Description: audits part of the journal, adding up the funds changes by their reason
+     * Parameters: fromMonth - the first journal month to include
+     *             toMonth - the journal month to stop at (not included)
+     * Returns: the total per reason, indexed by the SimEventListener FUNDS_ reasons
+     */
+    public long[] fundsByReason(long fromMonth, long toMonth) throws IOException {
+        long[] totals = new long[SimEventListener.FUNDS_REASONS];
+        ByteBuffer records = buffer.duplicate();
+        records.limit(end).position(8);
+        long current = 0;
+        while (records.hasRemaining() && current < toMonth) {
+            byte type = records.get();
+            if (type == EventJournal.FUNDS) {
+                int reason = SnapshotIO.getVarint(records);
+                long amount = SnapshotIO.getVarlong(records);
+                if (current >= fromMonth && reason >= 0 && reason < totals.length)
+                    totals[reason] += amount;
+            } else if (type == EventJournal.MONTH) {
+                skipVarints(records, 2);
+                current++;
+            } else if (type == EventJournal.SKIP) {
+                current += (long) SnapshotIO.getVarint(records) * RiverSim.MONTHS_PER_YEAR;
+            } else if (type == EventJournal.KEYFRAME) {
+                records.position(skipKeyframe(records));
+            } else {
+                skipVarints(records, varintCount(type));
+            }
+        }
+        return totals;
+    }
+
+    /*
+     * Description: scans the journal once, counting its months and indexing its keyframes
+     * Returns: the position after the last complete record
+     */
+    private int index() throws IOException {
+        ByteBuffer records = buffer.duplicate();
+        int complete = records.position();
+        try {
+            while (records.hasRemaining()) {
+                byte type = records.get();
+                if (type == EventJournal.MONTH) {
+                    skipVarints(records, 2);
+                    months++;
+                } else if (type == EventJournal.SKIP) {
+                    months += (long) SnapshotIO.getVarint(records) * RiverSim.MONTHS_PER_YEAR;
+                } else if (type == EventJournal.KEYFRAME) {
+                    long month = records.getLong();
+                    long length = records.getLong();
+
+                    // a keyframe that was still being written when the journal stopped has no length yet
+                    if (length <= 0 || length > records.remaining())
+                        break;
+                    addKeyframe(month, records.position(), (int) length);
+                    records.position(records.position() + (int) length);
+                } else {
+                    skipVarints(records, varintCount(type));
+                }
+                complete = records.position();
+            }
+        } catch (BufferUnderflowException e) {
+            // the last record was cut short
+        }
+        if (keyframeCount == 0) {
+            throw new IOException("Journal has no keyframe");
+        }
+        return complete;
+    }
+
+    /*
+     * Description: adds a keyframe to the index
+     * Parameters: month - the journal month of the keyframe
+     *             position - the position of its snapshot
+     *             length - the length of its snapshot
+     */
+    private void addKeyframe(long month, int position, int length) {
+        if (keyframeCount == keyframeMonths.length) {
+            keyframeMonths = Arrays.copyOf(keyframeMonths, keyframeCount * 2);
+            keyframePositions = Arrays.copyOf(keyframePositions, keyframeCount * 2);
+            keyframeLengths = Arrays.copyOf(keyframeLengths, keyframeCount * 2);
+        }
+        keyframeMonths[keyframeCount] = month;
+        keyframePositions[keyframeCount] = position;
+        keyframeLengths[keyframeCount] = length;
+        keyframeCount++;
+    }
+
+    /*
+     * Description: skips the rest of a keyframe record
+     * Parameters: records - the buffer, positioned after the record type
+     * Returns: the position after the keyframe
+     */
+    private static int skipKeyframe(ByteBuffer records) {
+        records.getLong();
+        long length = records.getLong();
+        return records.position() + (int) length;
+    }
+
+    /*
+     * Description: gets the number of varints in a record with a fixed layout
+     * Parameters: type - the record type
+     * Returns: the number of varints after the type byte
+     */
+    private static int varintCount(byte type) throws IOException {
+        switch (type) {
+            case EventJournal.MAP_CREATED:
+            case EventJournal.FUNDS:
+            case EventJournal.FILLED:
+            case EventJournal.MONTH:
+                return 2;
+            case EventJournal.PLACE:
+                return 3;
+            case EventJournal.FLOOD:
+            case EventJournal.UNFLOOD:
+            case EventJournal.SKIP:
+                return 1;
+            default:
+                throw new IOException("Bad journal record type " + type);
+        }
+    }
+
+    /*
+     * Description: skips over varints
+     * Parameters: records - the buffer
+     *             count - the number of varints to skip
+     */
+    private static void skipVarints(ByteBuffer records, int count) {
+        while (count > 0) {
+            if (records.get() >= 0)
+                count--;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, JournalSeekChecker class. Checks that a JournalReader seek into years the journal kept
+ * as skipped gives the same state as stepping to that month. Records an advance of some years followed by a
+ * placement, seeks into every month the advance covers and compares each with the same months stepped one by one.
+ * Runs without JavaFX, like HeadlessRunner.
+ *
+ * Usage: JournalSeekChecker <mapCols> <mapRows> <years> [placement...]
+ *        placements as for HeadlessRunner, for example A:0 R:4-7
+ *        exits with status 1 if any month differs
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class JournalSeekChecker {
+
+    /*
+     * Description: entry point for checking seeks into skipped years against stepping
+     * Parameters: args - map columns, map rows, years, then any placements
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: JournalSeekChecker <mapCols> <mapRows> <years> [A:index | R:first-last | ...]");
+            System.exit(1);
+        }
+
+        // build the starting state, and a copy of it to step month by month
+        RiverSim riverSim = new RiverSim(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        int months = Math.multiplyExact(Integer.parseInt(args[2]), RiverSim.MONTHS_PER_YEAR);
+        for (int i = 3; i < args.length; i++) {
+            HeadlessRunner.applyPlacement(riverSim, args[i]);
+        }
+        RiverSim stepped = riverSim.copy();
+
+        Path file = Files.createTempFile("river", ".journal");
+        try {
+            // record the advance and a placement and a funds change right after it, in the month it ends in
+            EventJournal journal = new EventJournal(riverSim, file);
+            try {
+                riverSim.advance(months);
+                placeAfterAdvance(riverSim);
+                riverSim.nextMonth();
+            } finally {
+                journal.close();
+            }
+
+            // seek to every month of the advance, up to the month with the placement
+            JournalReader reader = new JournalReader(file);
+            int mismatches = 0;
+            for (int month = 0; month <= months; month++) {
+                if (month == months)
+                    placeAfterAdvance(stepped);
+                RiverSim seeked = new RiverSim();
+                reader.seek(month, seeked);
+                if (!sameState(seeked, stepped)) {
+                    System.out.println("Month " + month + ": seek gives funds $" + seeked.getFunds() + "k, filled "
+                            + seeked.getFilled() + "; stepping gives funds $" + stepped.getFunds() + "k, filled "
+                            + stepped.getFilled());
+                    mismatches++;
+                }
+                stepped.nextMonth();
+            }
+            System.out.println("Checked seeks into " + (months + 1) + " months: " + mismatches + " differ");
+            if (mismatches > 0)
+                System.exit(1);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /*
+     * Description: makes the changes recorded right after the advance
+     * Parameters: riverSim - the simulation to change
+     */
+    private static void placeAfterAdvance(RiverSim riverSim) {
+        riverSim.placeLand(LandType.abbreviation(LandType.AGRICULTURE), riverSim.getTileCount() - 1);
+        riverSim.addToFunds(-300);
+    }
+
+    /*
+     * Description: tells whether two simulations are in the same state: the date, funds and filled tiles, the land
+     * counts and every tile's land type and totals
+     * Parameters: a - a simulation
+     *             b - another simulation
+     * Returns: true if they match
+     */
+    private static boolean sameState(RiverSim a, RiverSim b) {
+        if (a.getCurrentYear() != b.getCurrentYear() || a.getCurrentMonth() != b.getCurrentMonth()
+                || a.getFunds() != b.getFunds() || a.getFilled() != b.getFilled()
+                || a.getStats().getMatureAgriculture() != b.getStats().getMatureAgriculture())
+            return false;
+        TileStore storeA = a.getStore();
+        TileStore storeB = b.getStore();
+        return Arrays.equals(storeA.landType, storeB.landType) && Arrays.equals(storeA.totalCost, storeB.totalCost)
+                && Arrays.equals(storeA.totalRevenue, storeB.totalRevenue);
+    }
+}
@@ -2,14 +2,69 @@ package johnson_noah.river;
 
 /*
  * Author: Noah Johnson
- * Description: JavaFx Project, LandArea class (basically a struct, extended by Agriculture, Recreation, etc)
+ * Description: JavaFx Project, LandArea class. A read-only view of one tile's land fields inside the TileStore.
  */
 
 public class LandArea {
-    int currentCost;
-    int currentRevenue;
-    int lastChangedMonth;
-    int lastChangedYear;
-    int age;
-    String abbreviation;
+    private final TileStore store;
+    private final int index;
+
+    /*
+     * Description: constructor for LandArea
+     * Parameters: store - the tile store holding the values
+     *             index - the index of the tile this land area belongs to
+     */
+    LandArea(TileStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    /*
+     * Description: getter for the land type code (see LandType)
+     */
+    public byte getType() {
+        return store.landType[index];
+    }
+
+    /*
+     * Description: getter for the land type abbreviation, such as "-A-"
+     */
+    public String getAbbreviation() {
+        return LandType.abbreviation(store.landType[index]);
+    }
+
+    /*
+     * Description: getter for the age in months since the land type was set
+     */
+    public int getAge() {
+        return store.age(index);
+    }
+
+    /*
+     * Description: getter for the cost charged this month
+     */
+    public int getCurrentCost() {
+        return store.currentCost[index];
+    }
+
+    /*
+     * Description: getter for the revenue earned this month
+     */
+    public int getCurrentRevenue() {
+        return store.currentRevenue[index];
+    }
+
+    /*
+     * Description: getter for the month the land type was last changed
+     */
+    public int getLastChangedMonth() {
+        return store.lastChangedMonth[index];
+    }
+
+    /*
+     * Description: getter for the year the land type was last changed
+     */
+    public int getLastChangedYear() {
+        return store.lastChangedYear[index];
+    }
 }
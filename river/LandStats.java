@@ -0,0 +1,187 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, LandStats class. Aggregate statistics over a TileStore, kept up to date in O(1) as land
+ * changes and the months go by, so the info bar and dashboards never scan the tiles: the number of tiles of each land
+ * type, the number of filled tiles, the number of mature agriculture tiles (old enough to harvest), and the projected
+ * cost and revenue of a year at the current land.
+ *
+ * An agriculture tile matures a few months after it is planted, so only the last few months of plantings are young:
+ * they are counted per planting month in a small ring, and a month's count is dropped from the ring as the store's
+ * month count passes it. Every other agriculture tile is mature. Like the store's other lists, the ring is kept per
+ * stripe, so tiles in different stripes can change on different threads.
+ */
+
+import java.util.Arrays;
+
+public class LandStats {
+    // an agriculture tile is harvested once it is older than this many months (see LandType)
+    static final int MATURE_AGE = LandType.MATURE_AGE;
+
+    private final TileStore store;
+
+    // young agriculture tiles per stripe, counted by planting month (the store's month count) modulo the ring size
+    private final int[][] young;
+
+    /*
+     * Description: constructor for LandStats, every tile of the store starts unused
+     * Parameters: store - the store to keep statistics for
+     */
+    LandStats(TileStore store) {
+        this.store = store;
+        young = new int[TileStore.STRIPES][MATURE_AGE + 1];
+    }
+
+    /*
+     * Description: copy constructor, for a copy of the store
+     * Parameters: other - the statistics to copy
+     *             store - the copied store
+     */
+    LandStats(LandStats other, TileStore store) {
+        this.store = store;
+        young = new int[other.young.length][];
+        for (int s = 0; s < young.length; s++) {
+            young[s] = other.young[s].clone();
+        }
+    }
+
+    /*
+     * Description: getter for the number of tiles of a land type
+     * Parameters: type - the land type code
+     * Returns: the number of tiles of that type
+     */
+    public int count(byte type) {
+        if (type != LandType.UNUSED)
+            return store.index.count(type);
+        int unused = store.size();
+        for (byte other = LandType.UNUSED + 1; other < LandType.COUNT; other++) {
+            unused -= store.index.count(other);
+        }
+        return unused;
+    }
+
+    /*
+     * Description: getter for the number of filled tiles, the agriculture and recreation tiles (and those of any
+     * added land type that counts as filled)
+     * Returns: the number of filled tiles
+     */
+    public int getFilled() {
+        int filled = 0;
+        for (byte type = LandType.UNUSED + 1; type < LandType.COUNT; type++) {
+            if (LandType.isFilled(type))
+                filled += store.index.count(type);
+        }
+        return filled;
+    }
+
+    /*
+     * Description: getter for the number of agriculture tiles old enough to be harvested
+     * Returns: the number of mature agriculture tiles
+     */
+    public int getMatureAgriculture() {
+        int mature = store.index.count(LandType.AGRICULTURE);
+        for (int[] ring : young) {
+            for (int count : ring) {
+                mature -= count;
+            }
+        }
+        return mature;
+    }
+
+    /*
+     * Description: gets the cost of a full year at the current land
+     * Returns: the projected annual cost
+     */
+    public long getProjectedAnnualCost() {
+        long cost = 0;
+        for (byte type = LandType.UNUSED + 1; type < LandType.COUNT; type++) {
+            cost += LandType.annualCost(type) * store.index.count(type);
+        }
+        return cost;
+    }
+
+    /*
+     * Description: gets the revenue of a full year at the current land. Every agriculture tile matures within a few
+     * months, before a year has gone round (and no land type waits longer than a year), so all of them are counted
+     * as harvested.
+     * Returns: the projected annual revenue
+     */
+    public long getProjectedAnnualRevenue() {
+        long revenue = 0;
+        for (byte type = LandType.UNUSED + 1; type < LandType.COUNT; type++) {
+            revenue += LandType.annualRevenue(type) * store.index.count(type);
+        }
+        return revenue;
+    }
+
+    /*
+     * Description: updates the statistics for a tile about to get a new land type (called by the store before it
+     * changes the tile)
+     * Parameters: index - the tile index
+     *             code - the new land type code
+     */
+    void landChanging(int index, byte code) {
+        int[] ring = young[store.stripe(index)];
+        if (store.landType[index] == LandType.AGRICULTURE && isYoung(store.age(index)))
+            ring[slot(store.ageStart[index])]--;
+        if (code == LandType.AGRICULTURE)
+            ring[slot(store.tick)]++;
+    }
+
+    /*
+     * Description: matures the agriculture planted in the months the store's month count just passed (called by the
+     * store after the count moves)
+     * Parameters: months - the number of months that passed
+     */
+    void monthsPassed(int months) {
+        int passed = Math.min(months, MATURE_AGE + 1);
+        for (int[] ring : young) {
+            for (int k = 0; k < passed; k++) {
+                ring[slot(store.tick - MATURE_AGE - 1 - k)] = 0;
+            }
+        }
+    }
+
+    /*
+     * Description: recomputes the statistics after the store's arrays were filled directly (for example when a
+     * snapshot is loaded)
+     */
+    void rebuild() {
+        for (int s = 0; s < young.length; s++) {
+            rebuild(s);
+        }
+    }
+
+    /*
+     * Description: recomputes the statistics of one stripe after its tiles were filled directly (for example when a
+     * version of them is restored)
+     * Parameters: stripe - the stripe
+     */
+    void rebuild(int stripe) {
+        Arrays.fill(young[stripe], 0);
+        int[] agriculture = store.index.members(stripe, LandType.AGRICULTURE);
+        for (int k = 0; k < store.index.count(stripe, LandType.AGRICULTURE); k++) {
+            if (isYoung(store.age(agriculture[k])))
+                young[stripe][slot(store.ageStart[agriculture[k]])]++;
+        }
+    }
+
+    /*
+     * Description: tells whether an agriculture tile of an age is still too young to harvest
+     * Parameters: age - the tile's age in months
+     * Returns: true if the tile is young
+     */
+    private static boolean isYoung(int age) {
+        return age >= 0 && age <= MATURE_AGE;
+    }
+
+    /*
+     * Description: gets the ring slot for a planting month
+     * Parameters: start - the store's month count when the tile was planted
+     * Returns: the slot in a stripe's ring
+     */
+    private static int slot(int start) {
+        return Math.floorMod(start, MATURE_AGE + 1);
+    }
+}
@@ -0,0 +1,445 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, LandType class. The registry of land types. Each type has a byte code (used to store
+ * it in the TileStore), the abbreviation shown on its tiles, a name, a purchase price, whether it counts as filled,
+ * its tile colors and its monthly rules: a cost or revenue paid to every tile of the type in one month of the year,
+ * optionally only to tiles old enough. The four built-in types keep their fixed codes. More types can be added
+ * without code changes from a properties file named by the river.landtypes system property, for example
+ *
+ *   types = forest
+ *   forest.abbreviation = -W-
+ *   forest.name = Forest
+ *   forest.price = 120
+ *   forest.filled = true
+ *   forest.colors = #b5e3a1 #4f8f3a
+ *   forest.costs = 2:10
+ *   forest.revenues = 8:30:6
+ *
+ * where each rule is month:amount, or month:amount:age to only pay tiles at least that many months old (at most a
+ * year, so every year after the first repeats and advance can still skip them). Added types are placeable unless
+ * placeable = false.
+ *
+ * The rules are compiled once, when the class loads, into the list of rules for each month of the year, so a month
+ * step looks its rules up and walks each rule's tiles without comparing land types, however many types there are.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public final class LandType {
+    public static final byte UNUSED = 0;
+    public static final byte AGRICULTURE = 1;
+    public static final byte RECREATION = 2;
+    public static final byte FLOODED = 3;
+
+    // an agriculture tile is harvested once it is older than this many months
+    static final int MATURE_AGE = 3;
+
+    // the most land types, so a snapshot stores a tile's type in four bits and a ledger column mask fits in a long
+    static final int MAX_COUNT = 16;
+
+    // the number of land types, the built-in ones and any added from the river.landtypes file
+    public static final int COUNT;
+
+    private static final String[] KEYS;
+    private static final String[] ABBREVIATIONS;
+    private static final String[] NAMES;
+    private static final int[] PRICES;
+    private static final boolean[] FILLED;
+    private static final String[][] COLORS;
+    private static final long[] ANNUAL_COSTS;
+    private static final long[] ANNUAL_REVENUES;
+    private static final boolean[] PLACEABLE_TYPES;
+    private static final byte[] PLACEABLE;
+    private static final Map<String, Byte> CODES = new HashMap<>();
+
+    // the rules of each month of the year, in land type order
+    private static final Rule[][] SCHEDULE = new Rule[RiverSim.MONTHS_PER_YEAR][];
+
+    static {
+        List<Definition> definitions = builtIns();
+        String path = System.getProperty("river.landtypes");
+        if (path != null)
+            load(Path.of(path), definitions);
+        COUNT = definitions.size();
+
+        KEYS = new String[COUNT];
+        ABBREVIATIONS = new String[COUNT];
+        NAMES = new String[COUNT];
+        PRICES = new int[COUNT];
+        FILLED = new boolean[COUNT];
+        COLORS = new String[COUNT][];
+        ANNUAL_COSTS = new long[COUNT];
+        ANNUAL_REVENUES = new long[COUNT];
+        PLACEABLE_TYPES = new boolean[COUNT];
+        List<Byte> placeable = new ArrayList<>();
+        List<List<Rule>> months = new ArrayList<>();
+        for (int m = 0; m < RiverSim.MONTHS_PER_YEAR; m++) {
+            months.add(new ArrayList<>());
+        }
+        for (byte code = 0; code < COUNT; code++) {
+            Definition definition = definitions.get(code);
+            KEYS[code] = definition.key;
+            ABBREVIATIONS[code] = definition.abbreviation;
+            NAMES[code] = definition.name;
+            PRICES[code] = definition.price;
+            FILLED[code] = definition.filled;
+            COLORS[code] = definition.colors;
+            PLACEABLE_TYPES[code] = definition.placeable;
+            CODES.put(definition.abbreviation, code);
+
+            // unused comes last, it clears the land the other types were placed on
+            if (definition.placeable && code != UNUSED)
+                placeable.add(code);
+            for (Rule rule : definition.rules) {
+                months.get(rule.month).add(rule);
+                if (rule.revenue)
+                    ANNUAL_REVENUES[code] += rule.amount;
+                else
+                    ANNUAL_COSTS[code] += rule.amount;
+            }
+        }
+        placeable.add(UNUSED);
+        PLACEABLE = new byte[placeable.size()];
+        for (int k = 0; k < PLACEABLE.length; k++) {
+            PLACEABLE[k] = placeable.get(k);
+        }
+        for (int m = 0; m < RiverSim.MONTHS_PER_YEAR; m++) {
+            SCHEDULE[m] = months.get(m).toArray(new Rule[0]);
+        }
+    }
+
+    private LandType() {
+    }
+
+    /*
+     * Description: a cost or revenue paid to every tile of a land type (old enough) in one month of the year
+     */
+    static final class Rule {
+        final byte type;
+        final int month;
+        final boolean revenue;
+        final int amount;
+
+        // the youngest age in months a tile is paid at, 0 for every tile
+        final int minAge;
+
+        // the SimEventListener FUNDS_ reason and the Metrics phase the rule's funds are reported under
+        final int reason;
+        final int phase;
+
+        /*
+         * Description: constructor for Rule
+         * Parameters: type - the land type code
+         *             month - the month of the year
+         *             revenue - true for a revenue, false for a cost
+         *             amount - the amount per tile
+         *             minAge - the youngest age in months a tile is paid at
+         *             reason - the SimEventListener FUNDS_ reason
+         */
+        private Rule(byte type, int month, boolean revenue, int amount, int minAge, int reason) {
+            this.type = type;
+            this.month = month;
+            this.revenue = revenue;
+            this.amount = amount;
+            this.minAge = minAge;
+            this.reason = reason;
+            phase = !revenue ? Metrics.COST : minAge > 0 ? Metrics.HARVEST : Metrics.REVENUE;
+        }
+    }
+
+    /*
+     * Description: a land type being registered
+     */
+    private static final class Definition {
+        final String key;
+        final String abbreviation;
+        final String name;
+        final int price;
+        final boolean filled;
+        final boolean placeable;
+        final String[] colors;
+        final List<Rule> rules = new ArrayList<>();
+
+        /*
+         * Description: constructor for Definition
+         * Parameters: key - the type's key, also its stylesheet pseudo-class
+         *             abbreviation - the abbreviation shown on its tiles
+         *             name - the name shown in the sidebar
+         *             price - the purchase price
+         *             filled - whether its tiles count as filled
+         *             placeable - whether the player can place it
+         *             colors - the top and bottom colors of its tiles
+         */
+        Definition(String key, String abbreviation, String name, int price, boolean filled, boolean placeable,
+                   String[] colors) {
+            this.key = key;
+            this.abbreviation = abbreviation;
+            this.name = name;
+            this.price = price;
+            this.filled = filled;
+            this.placeable = placeable;
+            this.colors = colors;
+        }
+    }
+
+    /*
+     * Description: defines the built-in land types, at their fixed codes
+     * Returns: the definitions, indexed by code
+     */
+    private static List<Definition> builtIns() {
+        List<Definition> definitions = new ArrayList<>();
+        definitions.add(new Definition("unused", "-U-", "Unused", 0, false, true,
+                new String[]{"#ffe7ae", "#fddd87"}));
+
+        // agriculture costs 50 in month 5 and is harvested for 65 in month 10 once it has matured
+        Definition agriculture = new Definition("agriculture", "-A-", "Agriculture", 300, true, true,
+                new String[]{"#8fff8f", "#49e749"});
+        agriculture.rules.add(new Rule(AGRICULTURE, 5, false, 50, 0, SimEventListener.FUNDS_AGRICULTURE_COST));
+        agriculture.rules.add(new Rule(AGRICULTURE, 10, true, 65, MATURE_AGE + 1, SimEventListener.FUNDS_HARVEST));
+        definitions.add(agriculture);
+
+        // recreation earns 5 in month 12
+        Definition recreation = new Definition("recreation", "-R-", "Recreation", 10, true, true,
+                new String[]{"#ff98cc", "#e175a9"});
+        recreation.rules.add(new Rule(RECREATION, 12, true, 5, 0, SimEventListener.FUNDS_RECREATION));
+        definitions.add(recreation);
+
+        definitions.add(new Definition("flooded", "-F-", "Flooded", 0, false, false,
+                new String[]{"#98c5ff", "#6288e8"}));
+        return definitions;
+    }
+
+    /*
+     * Description: adds the land types listed in a properties file (see the class description) after the ones
+     * already defined
+     * Parameters: path - the file to read
+     *             definitions - the types defined so far, indexed by code
+     */
+    private static void load(Path path, List<Definition> definitions) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read land types from " + path + ": " + e.getMessage(), e);
+        }
+
+        try {
+            for (String key : properties.getProperty("types", "").trim().split("[,\\s]+")) {
+                if (key.isEmpty())
+                    continue;
+                definitions.add(define(properties, key, definitions));
+            }
+            if (definitions.size() > MAX_COUNT) {
+                throw new IllegalArgumentException("more than " + MAX_COUNT + " land types");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Bad land type file " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * Description: reads one land type from a properties file
+     * Parameters: properties - the file's properties
+     *             key - the type's key
+     *             definitions - the types defined so far, the new type gets the next code
+     * Returns: the definition
+     */
+    private static Definition define(Properties properties, String key, List<Definition> definitions) {
+        // the key names a stylesheet pseudo-class, and the abbreviation has to find a single type and fit a
+        // HeadlessRunner placement such as -W-:0-9
+        String abbreviation = properties.getProperty(key + ".abbreviation", "").trim();
+        if (!key.matches("[a-z][a-z0-9-]*") || !abbreviation.matches("[^\\s,:]{1,8}")) {
+            throw new IllegalArgumentException("land type " + key + " needs a lowercase key and an abbreviation of "
+                    + "1 to 8 characters other than spaces, commas and colons");
+        }
+        for (Definition other : definitions) {
+            if (other.key.equals(key) || other.abbreviation.equals(abbreviation))
+                throw new IllegalArgumentException("land type " + key + " has the key or abbreviation of " + other.key);
+        }
+
+        // two colors, or one for both ends of the gradient
+        String[] colors = properties.getProperty(key + ".colors", "#d8d8d8 #b0b0b0").trim().split("\\s+");
+        if (colors.length == 1)
+            colors = new String[]{colors[0], colors[0]};
+        if (colors.length != 2 || !colors[0].matches("#\\p{XDigit}{6}") || !colors[1].matches("#\\p{XDigit}{6}")) {
+            throw new IllegalArgumentException("land type " + key + " colors must be one or two #rrggbb colors");
+        }
+
+        int price = Integer.parseInt(properties.getProperty(key + ".price", "0").trim());
+        if (price < 0) {
+            throw new IllegalArgumentException("land type " + key + " has a negative price");
+        }
+        Definition definition = new Definition(key, abbreviation, properties.getProperty(key + ".name", key).trim(),
+                price, Boolean.parseBoolean(properties.getProperty(key + ".filled", "false").trim()),
+                Boolean.parseBoolean(properties.getProperty(key + ".placeable", "true").trim()), colors);
+        byte code = (byte) definitions.size();
+        addRules(definition, code, false, properties.getProperty(key + ".costs", ""));
+        addRules(definition, code, true, properties.getProperty(key + ".revenues", ""));
+        return definition;
+    }
+
+    /*
+     * Description: reads a list of rules such as "5:50, 10:65:4" into a definition
+     * Parameters: definition - the land type the rules are for
+     *             code - the land type's code
+     *             revenue - true for revenues, false for costs
+     *             list - the rules, separated by commas or spaces
+     */
+    private static void addRules(Definition definition, byte code, boolean revenue, String list) {
+        for (String text : list.trim().split("[,\\s]+")) {
+            if (text.isEmpty())
+                continue;
+            String[] parts = text.split(":");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("land type " + definition.key + " has a bad rule " + text);
+            }
+            int month = Integer.parseInt(parts[0]);
+            int amount = Integer.parseInt(parts[1]);
+            int minAge = parts.length > 2 ? Integer.parseInt(parts[2]) : 0;
+            if (month < 0 || month >= RiverSim.MONTHS_PER_YEAR || amount < 0 || minAge < 0
+                    || minAge > RiverSim.MONTHS_PER_YEAR) {
+                throw new IllegalArgumentException("land type " + definition.key + " has a bad rule " + text
+                        + " (months 0 to 12, ages up to 13)");
+            }
+            definition.rules.add(new Rule(code, month, revenue, amount, minAge,
+                    revenue ? SimEventListener.FUNDS_LAND_REVENUE : SimEventListener.FUNDS_LAND_COST));
+        }
+    }
+
+    /*
+     * Description: gets the abbreviation for a land type code
+     * Parameters: code - the land type code
+     * Returns: the abbreviation, such as "-A-"
+     */
+    public static String abbreviation(byte code) {
+        return ABBREVIATIONS[code];
+    }
+
+    /*
+     * Description: gets the land type code for an abbreviation. Anything that isn't a registered abbreviation is
+     * treated as flooded.
+     * Parameters: abbreviation - the abbreviation, such as "-A-"
+     * Returns: the land type code
+     */
+    public static byte fromAbbreviation(String abbreviation) {
+        Byte code = CODES.get(abbreviation);
+        return code != null ? code : FLOODED;
+    }
+
+    /*
+     * Description: tells whether an abbreviation belongs to a registered land type
+     * Parameters: abbreviation - the abbreviation, such as "-A-"
+     * Returns: true if registered
+     */
+    public static boolean isRegistered(String abbreviation) {
+        return CODES.containsKey(abbreviation);
+    }
+
+    /*
+     * Description: gets the name of a land type
+     * Parameters: code - the land type code
+     * Returns: the name, such as "Agriculture"
+     */
+    public static String name(byte code) {
+        return NAMES[code];
+    }
+
+    /*
+     * Description: gets the key of a land type, which is also its stylesheet pseudo-class
+     * Parameters: code - the land type code
+     * Returns: the key, such as "agriculture"
+     */
+    public static String key(byte code) {
+        return KEYS[code];
+    }
+
+    /*
+     * Description: tells whether a land type is one of the four built in ones, which river.css has colors for
+     * Parameters: code - the land type code
+     * Returns: true for unused, agriculture, recreation and flooded
+     */
+    public static boolean isBuiltIn(byte code) {
+        return code <= FLOODED;
+    }
+
+    /*
+     * Description: gets the colors of a land type's tiles
+     * Parameters: code - the land type code
+     * Returns: the top and bottom colors of the gradient, as #rrggbb
+     */
+    public static String[] colors(byte code) {
+        return COLORS[code].clone();
+    }
+
+    /*
+     * Description: gets the purchase price of a land type
+     * Parameters: code - the land type code
+     * Returns: the price, 0 for land that is free to place
+     */
+    public static int price(byte code) {
+        return PRICES[code];
+    }
+
+    /*
+     * Description: tells whether a land type counts as filled
+     * Parameters: code - the land type code
+     * Returns: true for agriculture, recreation and any added type marked filled
+     */
+    public static boolean isFilled(byte code) {
+        return FILLED[code];
+    }
+
+    /*
+     * Description: tells whether the player can place a land type
+     * Parameters: code - the land type code
+     * Returns: true for every type but flooded, unless an added type is marked not placeable
+     */
+    public static boolean isPlaceable(byte code) {
+        return PLACEABLE_TYPES[code];
+    }
+
+    /*
+     * Description: gets the land types the player can place, in the order they are offered
+     * Returns: the land type codes, unused last
+     */
+    public static byte[] placeableTypes() {
+        return PLACEABLE.clone();
+    }
+
+    /*
+     * Description: gets what a tile of a land type pays in a full year, once it is old enough for every rule
+     * Parameters: code - the land type code
+     * Returns: the annual cost
+     */
+    public static long annualCost(byte code) {
+        return ANNUAL_COSTS[code];
+    }
+
+    /*
+     * Description: gets what a tile of a land type earns in a full year, once it is old enough for every rule
+     * Parameters: code - the land type code
+     * Returns: the annual revenue
+     */
+    public static long annualRevenue(byte code) {
+        return ANNUAL_REVENUES[code];
+    }
+
+    /*
+     * Description: getter for the compiled rules of a month (shared, not to be changed)
+     * Parameters: month - the month of the year
+     * Returns: the month's rules, in land type order
+     */
+    static Rule[] rules(int month) {
+        return SCHEDULE[month];
+    }
+}
@@ -0,0 +1,151 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, LandTypeIndex class. Keeps a live list of the tile indexes holding each developed land
+ * type (every type except unused), so a monthly phase only visits the tiles it affects. Adding and removing a tile
+ * are O(1): each tile remembers its slot in its type's list, and a removed tile's slot is filled with the last entry.
+ *
+ * The lists are split into stripes of consecutive tiles (see TileStore), each tile is only ever listed in its own
+ * stripe's lists. Moving a tile touches nothing outside its stripe, so tiles in different stripes can be moved on
+ * different threads at the same time.
+ */
+
+import java.util.Arrays;
+
+public class LandTypeIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int[] slot;
+    private final int stripeShift;
+    private final int[][][] members;
+    private final int[][] counts;
+
+    /*
+     * Description: constructor for LandTypeIndex, every tile starts unused (untracked)
+     * Parameters: size - the number of tiles
+     *             typeCount - the number of land type codes
+     *             stripes - the number of stripes
+     *             stripeShift - the log2 of the number of tiles in a stripe
+     */
+    LandTypeIndex(int size, int typeCount, int stripes, int stripeShift) {
+        // slot holds 1 + the tile's position in its type's list, or 0 when the tile is unused
+        slot = new int[size];
+        this.stripeShift = stripeShift;
+        members = new int[stripes][typeCount][];
+        counts = new int[stripes][typeCount];
+        for (int s = 0; s < stripes; s++) {
+            for (int i = 0; i < typeCount; i++) {
+                members[s][i] = new int[INITIAL_CAPACITY];
+            }
+        }
+    }
+
+    /*
+     * Description: copy constructor, the copy shares no arrays with the original
+     * Parameters: other - the index to copy
+     */
+    LandTypeIndex(LandTypeIndex other) {
+        slot = other.slot.clone();
+        stripeShift = other.stripeShift;
+        members = new int[other.members.length][][];
+        counts = new int[other.counts.length][];
+        for (int s = 0; s < members.length; s++) {
+            members[s] = new int[other.members[s].length][];
+            for (int i = 0; i < members[s].length; i++) {
+                members[s][i] = other.members[s][i].clone();
+            }
+            counts[s] = other.counts[s].clone();
+        }
+    }
+
+    /*
+     * Description: moves a tile from one land type's list to another's
+     * Parameters: index - the tile index
+     *             oldType - the land type code the tile had
+     *             newType - the land type code the tile has now
+     */
+    void move(int index, byte oldType, byte newType) {
+        if (oldType == newType)
+            return;
+        remove(index, oldType);
+        add(index, newType);
+    }
+
+    /*
+     * Description: adds a tile to a land type's list (unused tiles are not tracked)
+     */
+    private void add(int index, byte type) {
+        if (type == LandType.UNUSED)
+            return;
+
+        // grow the list if it is full
+        int stripe = index >>> stripeShift;
+        int[] list = members[stripe][type];
+        if (counts[stripe][type] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            members[stripe][type] = list;
+        }
+        list[counts[stripe][type]] = index;
+        slot[index] = ++counts[stripe][type];
+    }
+
+    /*
+     * Description: removes a tile from a land type's list by moving the last entry into its slot
+     */
+    private void remove(int index, byte type) {
+        if (type == LandType.UNUSED)
+            return;
+
+        int stripe = index >>> stripeShift;
+        int[] list = members[stripe][type];
+        int position = slot[index] - 1;
+        int last = list[--counts[stripe][type]];
+        list[position] = last;
+        slot[last] = position + 1;
+        slot[index] = 0;
+    }
+
+    /*
+     * Description: getter for the number of tiles of a land type (always 0 for unused), summed over the stripes
+     * Parameters: type - the land type code
+     * Returns: the number of tiles of that type
+     */
+    public int count(byte type) {
+        int count = 0;
+        for (int[] stripeCounts : counts) {
+            count += stripeCounts[type];
+        }
+        return count;
+    }
+
+    /*
+     * Description: getter for the number of stripes the lists are split into
+     * Returns: the number of stripes
+     */
+    int stripes() {
+        return counts.length;
+    }
+
+    /*
+     * Description: getter for the number of tiles of a land type in one stripe
+     * Parameters: stripe - the stripe
+     *             type - the land type code
+     * Returns: the number of tiles of that type in the stripe
+     */
+    int count(int stripe, byte type) {
+        return counts[stripe][type];
+    }
+
+    /*
+     * Description: getter for the tile indexes of a land type in one stripe. Only the first count(stripe, type)
+     * entries are valid, and the array may be replaced when the list grows, so it should be read again after tiles
+     * are added.
+     * Parameters: stripe - the stripe
+     *             type - the land type code
+     * Returns: the backing array of tile indexes
+     */
+    int[] members(int stripe, byte type) {
+        return members[stripe][type];
+    }
+}
@@ -4,35 +4,77 @@ package johnson_noah.river;
  * Author: Noah Johnson
  * Description: creates the layout for the River Sim application. It uses a riverSimView, as well as VBoxes for the info
  * and sidebar. It's mostly just the big method "CreateLayout", but has a few helper functions such as calling resize
- * and setting the active tile in the land information sidebar.
+ * and setting the active tile in the land information sidebar. The info bar and sidebar are built once and bound to a
+ * RiverSimViewModel, so refreshing them only updates the text that changed. The "m" hotkey shows a metrics overlay
+ * (see Metrics) over the window, which switches metrics on while it is shown. Undo and redo (also on shortcut+Z and
+ * shortcut+Y) and the branches of the world are in a row under the optimizer (see WorldHistory).
  */
 
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.binding.Bindings;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Text;
 import javafx.scene.input.KeyCode;
+import javafx.util.Duration;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import java.util.Objects;
 
 public class Layout {
     private static final int WIDTH = 600;
     private static final int HEIGHT = 400;
+    private static final int GRID_PANE_TILE_LIMIT = 2500;
+    private HBox topHalf;
+    private Region mapView;
     private RiverSimView rsv;
+    private RiverSimCanvasView canvasView;
     private RiverSim riverSim;
+    private RiverSimViewModel viewModel;
+    private AutoPlayer autoPlayer;
+    private Controller controller;
     private VBox infoBar;
     private VBox upperSideBar;
     public ToggleGroup radioButtons;
-    private RadioButton agricultureButton;
-    private RadioButton recreationButton;
-    private RadioButton unusedButton;
+    private final Map<KeyCodeCombination, RadioButton> landHotkeys = new LinkedHashMap<>();
     public CheckBox checkBox;
+    public TextField colsField;
+    public TextField rowsField;
+    public CheckBox keepLandBox;
+    public TextField budgetField;
+    public TextField yearsField;
+    public Button undoButton;
+    public Button redoButton;
+    public ChoiceBox<String> branchBox;
+    private Label metricsOverlay;
+    private Timeline metricsRefresh;
+    private boolean metricsWereEnabled;
+
+    /*
+     * Description: adds the tile colors stylesheet (river.css, which the build copies next to this class) to a scene.
+     * Without it the simulator still runs, with the tiles uncolored.
+     * Parameters: scene - the scene to style
+     */
+    private static void addStylesheet(Scene scene) {
+        URL stylesheet = Layout.class.getResource("river.css");
+        if (stylesheet == null) {
+            System.err.println("Couldn't find river.css on the classpath, copy it next to the compiled classes");
+            return;
+        }
+        scene.getStylesheets().add(stylesheet.toExternalForm());
+    }
 
     /*
      * Description: creates the layout for the river sim using Gridpane, VBox, HBox etc, it's resizable and responsive
@@ -42,17 +84,26 @@ public class Layout {
 
         // define basic layout blocks
         VBox root = new VBox();
-        Scene scene = new Scene(root, WIDTH, HEIGHT);
-        HBox topHalf = new HBox();
+        StackPane layers = new StackPane(root);
+        Scene scene = new Scene(layers, WIDTH, HEIGHT);
+        addStylesheet(scene);
+        topHalf = new HBox();
 
-        // initialize riverSim and upper side bar
+        // initialize riverSim, its view-model and upper side bar
         riverSim = new RiverSim();
+        viewModel = new RiverSimViewModel(riverSim);
         upperSideBar = new VBox();
 
-        // initialize controller
-        Controller controller = new Controller(this, riverSim);
+        // initialize controller and the auto-player, which refreshes the info bar once per frame while playing
+        controller = new Controller(this, riverSim);
+        autoPlayer = new AutoPlayer(riverSim, this::updateInfoBar);
         rsv = new RiverSimView(controller, riverSim);
         rsv.prefWidthProperty().bind(topHalf.widthProperty().multiply(0.75));
+        mapView = rsv;
+
+        // create the canvas renderer used for large maps
+        canvasView = new RiverSimCanvasView(controller, riverSim);
+        canvasView.prefWidthProperty().bind(topHalf.widthProperty().multiply(0.75));
 
         // create sidebar
         VBox sideBar = new VBox();
@@ -60,9 +111,24 @@ public class Layout {
         sideBar.setSpacing(20);
         sideBar.prefWidthProperty().bind(topHalf.widthProperty().multiply(0.25));
 
-        // create upper region of sidebar
-        Text upperSideBarText = new Text("Unused\nLast changed: 0-1\nAge: 0-1\nTotal Cost: $0k\nTotal Revenue: $0k");
-        upperSideBar.getChildren().add(upperSideBarText);
+        // create upper region of sidebar, the selected tile's details bound to the view-model
+        Label landLabel = new Label();
+        landLabel.textProperty().bind(viewModel.selectedLandProperty());
+        Label lastChangedLabel = new Label();
+        lastChangedLabel.textProperty().bind(Bindings.concat("Last changed: ", viewModel.lastChangedYearProperty(), "-",
+                viewModel.lastChangedMonthProperty()));
+        Label ageLabel = new Label();
+        ageLabel.textProperty().bind(Bindings.concat("Age: ", viewModel.ageYearsProperty(), "-",
+                viewModel.ageMonthsProperty()));
+        Label totalCostLabel = new Label();
+        totalCostLabel.textProperty().bind(Bindings.concat("Total Cost: $", viewModel.totalCostProperty(), "k"));
+        Label totalRevenueLabel = new Label();
+        totalRevenueLabel.textProperty().bind(Bindings.concat("Total Revenue: $", viewModel.totalRevenueProperty(), "k"));
+        landLabel.visibleProperty().bind(viewModel.tileSelectedProperty());
+        for (Label detail : new Label[]{lastChangedLabel, ageLabel, totalCostLabel, totalRevenueLabel}) {
+            detail.visibleProperty().bind(viewModel.detailsShownProperty());
+        }
+        upperSideBar.getChildren().addAll(landLabel, lastChangedLabel, ageLabel, totalCostLabel, totalRevenueLabel);
         upperSideBar.prefHeightProperty().bind(sideBar.heightProperty().multiply(0.5));
         upperSideBar.setAlignment(Pos.CENTER);
 
@@ -74,19 +140,50 @@ public class Layout {
         Button nextMonthButton = new Button();
         nextMonthButton.setText("Next Month");
         nextMonthButton.setOnMouseClicked(controller.handleNextMonthButton());
-        lowerSideBar.getChildren().add(nextMonthButton);
 
-        // create radio buttons and their toggle group
+        // create skip years button and link to controller method
+        Button skipYearsButton = new Button("Skip 10 Years");
+        skipYearsButton.setOnMouseClicked(controller.handleSkipYearsButton());
+        // create the auto-play toggle, it follows the auto-player when something else pauses it
+        ToggleButton playButton = new ToggleButton("Play");
+        playButton.setOnAction(controller.handlePlayButton());
+        playButton.textProperty().bind(Bindings.when(playButton.selectedProperty()).then("Pause").otherwise("Play"));
+        autoPlayer.playingProperty().addListener((observable, wasPlaying, isPlaying) -> playButton.setSelected(isPlaying));
+        HBox timeButtons = new HBox(5);
+        timeButtons.setAlignment(Pos.CENTER);
+        timeButtons.getChildren().addAll(playButton, nextMonthButton, skipYearsButton);
+        lowerSideBar.getChildren().add(timeButtons);
+
+        // create the auto-play speed slider, on a log scale from 1 month per second up
+        Slider speedSlider = new Slider(Math.log10(AutoPlayer.MIN_MONTHS_PER_SECOND),
+                Math.log10(AutoPlayer.MAX_MONTHS_PER_SECOND), Math.log10(autoPlayer.getMonthsPerSecond()));
+        speedSlider.valueProperty().addListener(controller.handleSpeedChange());
+        HBox.setHgrow(speedSlider, Priority.ALWAYS);
+        Label speedLabel = new Label();
+        speedLabel.setMinWidth(Region.USE_PREF_SIZE);
+        speedLabel.textProperty().bind(Bindings.createStringBinding(
+                () -> Math.round(Math.pow(10, speedSlider.getValue())) + "/s", speedSlider.valueProperty()));
+        HBox speedArea = new HBox(5);
+        speedArea.setAlignment(Pos.CENTER);
+        speedArea.getChildren().addAll(new Label("Speed:"), speedSlider, speedLabel);
+        lowerSideBar.getChildren().add(speedArea);
+
+        // create a radio button for each land type the player can place, in the toggle group, each holding the
+        // abbreviation of its land type
         VBox radioButtonsBox = new VBox();
         radioButtons = new ToggleGroup();
-        agricultureButton = new RadioButton("Agriculture");
-        recreationButton = new RadioButton("Recreation");
-        unusedButton = new RadioButton("Unused");
-
-        // link radio buttons to the toggle group
-        agricultureButton.setToggleGroup(radioButtons);
-        recreationButton.setToggleGroup(radioButtons);
-        unusedButton.setToggleGroup(radioButtons);
+        for (byte code : LandType.placeableTypes()) {
+            RadioButton button = new RadioButton(LandType.name(code));
+            button.setUserData(LandType.abbreviation(code));
+            button.setToggleGroup(radioButtons);
+            radioButtonsBox.getChildren().add(button);
+
+            // the letter of an abbreviation such as "-A-" is the button's hotkey ("m" is the metrics overlay's)
+            String letter = LandType.abbreviation(code).replace("-", "").toUpperCase();
+            KeyCode key = letter.length() == 1 ? KeyCode.getKeyCode(letter) : null;
+            if (key != null && key.isLetterKey() && key != KeyCode.M)
+                landHotkeys.putIfAbsent(new KeyCodeCombination(key), button);
+        }
         toggleRadioButtonsDisabled(true);
 
         // create add checkbox
@@ -98,7 +195,6 @@ public class Layout {
         VBox.setVgrow(checkBoxWrapper, Priority.ALWAYS);
 
         // create spacing rules for the radio buttons area
-        radioButtonsBox.getChildren().addAll(agricultureButton, recreationButton, unusedButton);
         radioButtonsBox.setAlignment(Pos.CENTER);
         VBox.setVgrow(radioButtonsBox, Priority.ALWAYS);
 
@@ -146,40 +242,143 @@ public class Layout {
         resizeButtonsArea.getChildren().addAll(resizeLabelBox, resizeButtonsBox);
         lowerSideBar.getChildren().add(resizeButtonsArea);
 
-        // create bottom information bar
+        // create custom size fields (columns include the river) and their resize button
+        colsField = new TextField("9");
+        colsField.setPrefColumnCount(4);
+        rowsField = new TextField("7");
+        rowsField.setPrefColumnCount(4);
+        Button resizeCustom = new Button("Go");
+        resizeCustom.setId("resizeCustom");
+        resizeCustom.setOnMouseClicked(controller.handleResizeButton());
+
+        // set spacing rules for the custom size area
+        HBox customSizeArea = new HBox(5);
+        customSizeArea.setAlignment(Pos.BASELINE_RIGHT);
+        customSizeArea.getChildren().addAll(colsField, new Label("x"), rowsField, resizeCustom);
+        lowerSideBar.getChildren().add(customSizeArea);
+
+        // create the option to keep the land where the old and new maps overlap when resizing
+        keepLandBox = new CheckBox("Keep land");
+        HBox keepLandArea = new HBox(keepLandBox);
+        keepLandArea.setAlignment(Pos.BASELINE_RIGHT);
+        lowerSideBar.getChildren().add(keepLandArea);
+
+        // create save and load buttons for snapshots
+        Button saveButton = new Button("Save");
+        saveButton.setOnMouseClicked(controller.handleSaveButton());
+        Button loadButton = new Button("Load");
+        loadButton.setOnMouseClicked(controller.handleLoadButton());
+
+        // create record toggle for the event journal
+        ToggleButton recordButton = new ToggleButton("Record");
+        recordButton.setOnAction(controller.handleRecordButton());
+        HBox fileButtons = new HBox(5);
+        fileButtons.setAlignment(Pos.BASELINE_RIGHT);
+        fileButtons.getChildren().addAll(saveButton, loadButton, recordButton);
+        lowerSideBar.getChildren().add(fileButtons);
+
+        // create the optimizer's budget and horizon fields and its button
+        budgetField = new TextField("1000");
+        budgetField.setPrefColumnCount(5);
+        yearsField = new TextField("20");
+        yearsField.setPrefColumnCount(3);
+        Button optimizeButton = new Button("Optimize");
+        optimizeButton.setOnMouseClicked(controller.handleOptimizeButton());
+        HBox optimizeArea = new HBox(5);
+        optimizeArea.setAlignment(Pos.BASELINE_RIGHT);
+        optimizeArea.getChildren().addAll(new Label("$"), budgetField, new Label("k over"), yearsField,
+                new Label("years"), optimizeButton);
+        lowerSideBar.getChildren().add(optimizeArea);
+
+        // create the history buttons, undo and redo start disabled until there is something to undo, and the branch
+        // box starts with the main branch
+        undoButton = new Button("Undo");
+        undoButton.setOnAction(controller.handleUndoButton());
+        undoButton.setDisable(true);
+        redoButton = new Button("Redo");
+        redoButton.setOnAction(controller.handleRedoButton());
+        redoButton.setDisable(true);
+        Button forkButton = new Button("Fork");
+        forkButton.setOnAction(controller.handleForkButton());
+        branchBox = new ChoiceBox<>();
+        branchBox.getItems().add("Main");
+        branchBox.getSelectionModel().select(0);
+        branchBox.getSelectionModel().selectedIndexProperty().addListener(controller.handleBranchChange());
+        Button compareButton = new Button("Compare");
+        compareButton.setOnAction(controller.handleCompareButton());
+        HBox historyArea = new HBox(5);
+        historyArea.setAlignment(Pos.BASELINE_RIGHT);
+        historyArea.getChildren().addAll(undoButton, redoButton, forkButton, branchBox, compareButton);
+        lowerSideBar.getChildren().add(historyArea);
+
+        // create bottom information bar, its labels bound to the view-model
         infoBar = new VBox();
         infoBar.setPadding(new Insets(10));
         infoBar.setSpacing(10);
         infoBar.setAlignment(Pos.CENTER);
         infoBar.prefHeightProperty().bind(root.heightProperty().multiply(0.15));
+        Label dateLabel = new Label();
+        dateLabel.textProperty().bind(Bindings.concat("Year: ", viewModel.yearProperty(), " Month: ",
+                viewModel.monthProperty()));
+        Label filledLabel = new Label();
+        filledLabel.textProperty().bind(Bindings.concat("Filled: ", viewModel.filledProperty()));
+        Label fundsLabel = new Label();
+        fundsLabel.textProperty().bind(Bindings.concat("Funds: $", viewModel.fundsProperty(), "k"));
+        Label landCountsLabel = new Label();
+        landCountsLabel.textProperty().bind(Bindings.concat("Agriculture: ", viewModel.agricultureProperty(), " (",
+                viewModel.matureAgricultureProperty(), " mature) Recreation: ", viewModel.recreationProperty(),
+                " Flooded: ", viewModel.floodedProperty(), viewModel.addedLandProperty()));
+        Label projectedLabel = new Label();
+        projectedLabel.textProperty().bind(Bindings.concat("Projected per year: -$", viewModel.projectedCostProperty(),
+                "k +$", viewModel.projectedRevenueProperty(), "k"));
+        infoBar.getChildren().addAll(dateLabel, filledLabel, fundsLabel, landCountsLabel, projectedLabel);
         updateInfoBar();
 
         // add the top half and infobar to the root
         root.getChildren().addAll(topHalf, infoBar);
 
-        // define hotkeys
-        KeyCodeCombination A = new KeyCodeCombination(KeyCode.A);
-        KeyCodeCombination U = new KeyCodeCombination(KeyCode.U);
-        KeyCodeCombination R = new KeyCodeCombination(KeyCode.R);
+        // create the metrics overlay, hidden until the "m" hotkey, and time every layout pulse while metrics are on
+        metricsOverlay = new Label();
+        metricsOverlay.getStyleClass().add("metrics-overlay");
+        metricsOverlay.setMouseTransparent(true);
+        metricsOverlay.setVisible(false);
+        StackPane.setAlignment(metricsOverlay, Pos.TOP_LEFT);
+        layers.getChildren().add(metricsOverlay);
+        metricsRefresh = new Timeline(new KeyFrame(Duration.millis(500),
+                event -> metricsOverlay.setText(Metrics.summary())));
+        metricsRefresh.setCycleCount(Timeline.INDEFINITE);
+        scene.addPreLayoutPulseListener(Metrics::layoutStarting);
+        scene.addPostLayoutPulseListener(Metrics::layoutFinished);
+
+        // define hotkeys (the land type buttons' hotkeys were defined with the buttons)
+        KeyCodeCombination M = new KeyCodeCombination(KeyCode.M);
+        KeyCodeCombination UNDO = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+        KeyCodeCombination REDO = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
 
         // add event filter to the scene to listen for hotkey presses
         scene.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
-            // link "a" hotkey to agriculture button
-            if(A.match(event)) {
-                if(!agricultureButton.isDisabled())
-                    agricultureButton.fire();
+            // link the "a", "r" and "u" hotkeys (and any added land type's) to the land type buttons
+            for (Map.Entry<KeyCodeCombination, RadioButton> hotkey : landHotkeys.entrySet()) {
+                if(hotkey.getKey().match(event)) {
+                    if(!hotkey.getValue().isDisabled())
+                        hotkey.getValue().fire();
+                    event.consume();
+                }
+            }
+            // link "m" hotkey to the metrics overlay
+            if(M.match(event)) {
+                toggleMetricsOverlay();
                 event.consume();
             }
-            // link "u" hotkey to unused button
-            if(U.match(event)) {
-                if(!unusedButton.isDisabled())
-                    unusedButton.fire();
+            // link shortcut+Z and shortcut+Y to undo and redo, unless a text field has them
+            if(scene.getFocusOwner() instanceof TextInputControl)
+                return;
+            if(UNDO.match(event)) {
+                controller.undo();
                 event.consume();
             }
-            // link "r" hotkey to recreation button
-            if(R.match(event)) {
-                if(!recreationButton.isDisabled())
-                    recreationButton.fire();
+            if(REDO.match(event)) {
+                controller.redo();
                 event.consume();
             }
 ;        });
@@ -187,62 +386,112 @@ public class Layout {
     }
 
     /*
-     * Description: gets the number of filled (non-unused) tiles
-     * Returns: filled - the number of filled (non-unused) tiles
+     * Description: shows or hides the metrics overlay. Showing it switches metrics on, hiding it switches them back
+     * off unless they were already on (from JMX or the river.metrics property).
+     */
+    public void toggleMetricsOverlay() {
+        boolean show = !metricsOverlay.isVisible();
+        if (show) {
+            metricsWereEnabled = Metrics.isEnabled();
+            Metrics.setEnabled(true);
+            metricsOverlay.setText(Metrics.summary());
+            metricsRefresh.play();
+        } else {
+            metricsRefresh.stop();
+            Metrics.setEnabled(metricsWereEnabled);
+        }
+        metricsOverlay.setVisible(show);
+    }
+
+    /*
+     * Description: finishes anything still running when the application closes (auto-play and an open recording)
+     */
+    public void close() {
+        autoPlayer.pause();
+        controller.stopRecording();
+    }
+
+    /*
+     * Description: getter for the auto-player that plays the riverSim on its own thread
+     * Returns: autoPlayer
+     */
+    public AutoPlayer getAutoPlayer() {
+        return autoPlayer;
+    }
+
+    /*
+     * Description: gets the number of filled (agriculture and recreation) tiles
+     * Returns: filled - the number of filled tiles
      */
     public int getFilled() {
         return riverSim.getFilled();
     }
 
     /*
-     * Description: calls resize of the riverSimView
+     * Description: calls resize of the map view. Small maps use the riverSimView (a node per tile), maps with more
+     * than GRID_PANE_TILE_LIMIT cells are drawn on the canvas view.
      * Params: cols - the new number of columns
      *         rows - the new number of rows
+     *         keepLand - true to keep the land where the old and new maps overlap
      */
-    public void resize(int cols, int rows) {
-        rsv.resize(cols, rows);
+    public void resize(int cols, int rows, boolean keepLand) {
+        if (useCanvas(cols, rows))
+            canvasView.resize(cols, rows, keepLand);
+        else
+            rsv.resize(cols, rows, keepLand);
+        updateInfoBar();
     }
 
     /*
-     * Description: sets the active tile in the land info bar
+     * Description: rebuilds the map view from the riverSim's current state (after a snapshot is loaded), without
+     * replaying any placements
      */
-    public void setActiveTile(Tile tile) {
-
-        // remove the outline from the currently highlighted tile and clear tile info area
-        riverSim.removeHighlight();
-        upperSideBar.getChildren().clear();
-
-        String ageString = (tile.getLandArea().age / 13 + "-" + tile.getLandArea().age % 13);
-
-        // highlight new tile
-        tile.setHighlighted(true);
-        Text sideBarText = new Text("");
-
-        // handle sidebar text for flooded tile
-        if(Objects.equals(tile.getLandArea().abbreviation, "-F-")) {
-            sideBarText.setText("Flooded");
-        }
-
-        // handle sidebar text for recreation tile
-        else if (Objects.equals(tile.getLandArea().abbreviation, "-R-")) {
-            sideBarText.setText("Recreation\nLast changed: " + tile.getLandArea().lastChangedYear + "-" + tile.getLandArea().lastChangedMonth + "\nAge: " + ageString
-                    + "\nTotal Cost: $" + tile.getTotalCost() + "k\nTotal Revenue: $" + tile.getTotalRevenue() + "k");
-        }
+    public void reloadMap() {
+        if (useCanvas(riverSim.getMapCols(), riverSim.getRows()))
+            canvasView.rebuild();
+        else
+            rsv.rebuild();
+        updateInfoBar();
+    }
 
-        // handle sidebar text for agriculture tile
-        else if (Objects.equals(tile.getLandArea().abbreviation, "-A-")) {
-            sideBarText.setText("Agriculture\nLast changed: " + tile.getLandArea().lastChangedYear + "-" + tile.getLandArea().lastChangedMonth + "\nAge: " + ageString
-                    + "\nTotal Cost: $" + tile.getTotalCost() + "k\nTotal Revenue: $" + tile.getTotalRevenue() + "k");
+    /*
+     * Description: picks the map renderer for a map size, swapping it into the layout if it isn't showing
+     * Params: cols - the number of columns
+     *         rows - the number of rows
+     * Returns: true if the canvas view is used, false for the riverSimView
+     */
+    private boolean useCanvas(int cols, int rows) {
+        if ((long) cols * rows > GRID_PANE_TILE_LIMIT) {
+            // switch to the canvas, dropping the tile views
+            if (mapView != canvasView) {
+                rsv.clearTiles();
+                showMapView(canvasView, canvasView);
+            }
+            return true;
         }
+        if (mapView != rsv)
+            showMapView(rsv, rsv);
+        return false;
+    }
 
-        // handle sidebar text for unused tile
-        else if (Objects.equals(tile.getLandArea().abbreviation, "-U-")) {
-            sideBarText.setText("Unused\nLast changed: " + tile.getLandArea().lastChangedYear + "-" + tile.getLandArea().lastChangedMonth +
-                    "\nAge: " + ageString + "\nTotal Cost: $" + tile.getTotalCost() + "k\nTotal Revenue: $" + tile.getTotalRevenue() + "k");
-        }
+    /*
+     * Description: puts a map view in the top half and makes it the riverSim's change listener
+     * Params: view - the map view node
+     *         listener - the same view, as the riverSim's change listener
+     */
+    private void showMapView(Region view, TileChangeListener listener) {
+        topHalf.getChildren().set(topHalf.getChildren().indexOf(mapView), view);
+        riverSim.setTileChangeListener(listener);
+        mapView = view;
+    }
 
-        // mount to the sidebar
-        upperSideBar.getChildren().add(sideBarText);
+    /*
+     * Description: sets the active tile in the land info bar
+     */
+    public void setActiveTile(Tile tile) {
+        // move the outline to the new tile (only the old and new tiles change), the sidebar follows the view-model
+        riverSim.selectTile(tile.getIndex());
+        updateInfoBar();
     }
 
     /*
@@ -251,22 +500,24 @@ public class Layout {
      */
     public void toggleRadioButtonsDisabled(boolean b) {
         // enable / disable radio buttons based on boolean passed in
-        agricultureButton.setDisable(b);
-        recreationButton.setDisable(b);
-        unusedButton.setDisable(b);
+        for (Toggle button : radioButtons.getToggles()) {
+            ((RadioButton) button).setDisable(b);
+        }
     }
 
     /*
-     * Description: refreshes the labels on the info bar to reflect the latest information from the river sim
+     * Description: refreshes the info bar and sidebar to reflect the latest information from the river sim. Only the
+     * view-model's values change, the bound labels update their own text.
      */
     public void updateInfoBar() {
-        // create three labels with refreshed information from the river sim
-        Label dateLabel = new Label("Year: " + riverSim.getCurrentYear() + " Month: " + riverSim.getCurrentMonth());
-        Label filledLabel = new Label("Filled: " + riverSim.getFilled());
-        Label fundsLabel = new Label("Funds: $" + riverSim.getFunds() + "k");
-
-        // clear and mount the new labels to the infobar
-        infoBar.getChildren().clear();
-        infoBar.getChildren().addAll(dateLabel, filledLabel, fundsLabel);
+        viewModel.refresh();
+    }
+
+    /*
+     * Description: getter for the view-model the info bar and sidebar are bound to
+     * Returns: viewModel
+     */
+    public RiverSimViewModel getViewModel() {
+        return viewModel;
     }
-}
\ No newline at end of file
+}
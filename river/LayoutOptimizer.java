@@ -0,0 +1,647 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, LayoutOptimizer class. Searches for the most profitable land to buy on a simulation's
+ * empty (unused or flooded) tiles with a purchase budget, judged by the funds a number of months later.
+ *
+ * Layouts are never simulated. The land types' rules (see LandType) give each tile's costs and revenues in closed form
+ * from its land type, its age and the months it keeps its land, and the flood model says when each tile next floods,
+ * after which it is unused for good. So every empty tile that floods after the same number of months (or not within
+ * the horizon) is worth the same, and tiles are grouped into those classes. A layout is then just how many tiles of
+ * each land type go in each class, and layouts with the same counts are equivalent whichever tiles they use: each
+ * count vector is evaluated once, then kept in a cache for the rest of the search.
+ *
+ * The search starts from the greedy layout (the land with the best value for its price first), then moves tiles
+ * between land types and classes, paying for them with the land worth least for its price and spending what is left
+ * greedily. It moves a large step of tiles at a time and then halves the step, taking the best move each round until
+ * no move helps. Each round's moves are evaluated in parallel with fork/join, and the best is picked by value and then
+ * by move order, so the layout found doesn't depend on the number of threads.
+ *
+ * Usage: LayoutOptimizer <mapCols> <mapRows> <budget> <years> [placement...]
+ *        placements are written as for HeadlessRunner and made before optimizing, the floods are the river banks'
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LayoutOptimizer {
+    private static final int YEAR = RiverSim.MONTHS_PER_YEAR;
+
+    // moves per fork/join task before it stops splitting
+    private static final int MOVES_PER_TASK = 64;
+
+    // every age at least this old passes every rule's minimum age, so those ages are equivalent
+    private static final int OLD_AGE = YEAR;
+
+    private final RiverSim start;
+
+    /*
+     * Description: constructor for LayoutOptimizer
+     * Parameters: start - the simulation to place land on (optimize reads it, only Result.apply changes it)
+     */
+    public LayoutOptimizer(RiverSim start) {
+        this.start = start;
+    }
+
+    /*
+     * Description: finds the best layout on all cores
+     * Parameters: budget - the most the land may cost to buy
+     *             months - the horizon, the layout is judged by the funds this many months from now
+     * Returns: the best layout found
+     */
+    public Result optimize(long budget, int months) {
+        return optimize(budget, months, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * Description: finds the best layout in a fork/join pool (the layout doesn't depend on its size)
+     * Parameters: budget - the most the land may cost to buy
+     *             months - the horizon, the layout is judged by the funds this many months from now
+     *             pool - the pool to search in
+     * Returns: the best layout found
+     */
+    public Result optimize(long budget, int months, ForkJoinPool pool) {
+        if (budget < 0 || months < 0) {
+            throw new IllegalArgumentException("Bad optimization: $" + budget + "k over " + months + " months");
+        }
+        Search search;
+        long baseline;
+        start.lockAll();
+        try {
+            search = new Search(budget, months);
+            baseline = start.getFunds() + search.existingLand();
+        } finally {
+            start.unlockAll();
+        }
+        int[] counts = search.run(pool);
+        return search.result(counts, baseline);
+    }
+
+    /*
+     * Description: works out a tile's net costs and revenues from its land's rules over the months it keeps the land
+     * Parameters: type - the land type code
+     *             age - the tile's age now in months
+     *             month - the current month of the year
+     *             months - the number of months the tile keeps its land
+     * Returns: the revenues minus the costs
+     */
+    static long tileValue(byte type, int age, int month, int months) {
+        long value = 0;
+        for (int ruleMonth = 0; ruleMonth < YEAR; ruleMonth++) {
+            for (LandType.Rule rule : LandType.rules(ruleMonth)) {
+                if (rule.type != type)
+                    continue;
+
+                // the months j from 1 to months that fall on the rule's month with the tile at least minAge old
+                long first = Math.max(1, rule.minAge - age);
+                first += Math.floorMod(ruleMonth - month - first, YEAR);
+                long times = first > months ? 0 : (months - first) / YEAR + 1;
+                value += (rule.revenue ? 1 : -1) * rule.amount * times;
+            }
+        }
+        return value;
+    }
+
+    /*
+     * Description: one search. Holds the tile classes and the value and price of each kind of placement (a land type
+     * in a class), and caches the value of every count vector evaluated.
+     */
+    private final class Search {
+        private final long budget;
+        private final int months;
+        private final int month;
+        private final int[] until;
+        private final byte[] types = placedTypes();
+
+        // the empty tiles sorted by class, safest first, and where each class starts in them
+        private int[] candidates;
+        private int[] classStart;
+
+        // the kinds worth placing: their class and land type, and one tile's value and price
+        private int[] kindClass;
+        private byte[] kindType;
+        private long[] kindValue;
+        private long[] kindPrice;
+
+        // the kinds in order of value for their price, best first
+        private int[] order;
+
+        private final Map<Counts, Long> evaluated = new ConcurrentHashMap<>();
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+
+        /*
+         * Description: reads the simulation and sorts its empty tiles into classes (call holding start's locks)
+         * Parameters: budget - the most the land may cost to buy
+         *             months - the horizon in months
+         */
+        Search(long budget, int months) {
+            this.budget = budget;
+            this.months = months;
+            month = start.getCurrentMonth();
+            until = start.monthsUntilFlood(months);
+            classify();
+            buildKinds();
+        }
+
+        /*
+         * Description: gets the land types the search may place, the placeable ones other than unused
+         * Returns: the land type codes
+         */
+        private byte[] placedTypes() {
+            byte[] placeable = LandType.placeableTypes();
+            byte[] placed = new byte[placeable.length];
+            int count = 0;
+            for (byte type : placeable) {
+                if (type != LandType.UNUSED)
+                    placed[count++] = type;
+            }
+            return Arrays.copyOf(placed, count);
+        }
+
+        /*
+         * Description: sorts the empty tiles (unused, or flooded until next month) by the months until they flood,
+         * tiles that don't flood within the horizon first, and marks where each class of equal months starts
+         */
+        private void classify() {
+            TileStore store = start.getStore();
+            long[] keys = new long[store.size()];
+            int count = 0;
+            for (int i = 0; i < store.size(); i++) {
+                if (store.landType[i] == LandType.UNUSED || store.landType[i] == LandType.FLOODED)
+                    keys[count++] = (long) (Integer.MAX_VALUE - keptMonths(i)) << 32 | i;
+            }
+            Arrays.sort(keys, 0, count);
+            candidates = new int[count];
+            int[] starts = new int[count + 1];
+            int classes = 0;
+            for (int k = 0; k < count; k++) {
+                candidates[k] = (int) keys[k];
+                if (k == 0 || keys[k] >>> 32 != keys[k - 1] >>> 32)
+                    starts[classes++] = k;
+            }
+            starts[classes] = count;
+            classStart = Arrays.copyOf(starts, classes + 1);
+        }
+
+        /*
+         * Description: gets how many months of the horizon a tile keeps its land, until the month before it floods
+         * Parameters: index - the tile index
+         * Returns: the months
+         */
+        private int keptMonths(int index) {
+            return until[index] > months ? months : until[index] - 1;
+        }
+
+        /*
+         * Description: works out the value and price of one tile of each land type in each class, keeping the kinds
+         * that gain anything
+         */
+        private void buildKinds() {
+            int classes = classStart.length - 1;
+            int[] kinds = new int[classes * types.length];
+            long[] values = new long[kinds.length];
+            int count = 0;
+            for (int c = 0; c < classes; c++) {
+                int kept = keptMonths(candidates[classStart[c]]);
+                for (int t = 0; t < types.length; t++) {
+                    long value = tileValue(types[t], 0, month, kept) - LandType.price(types[t]);
+                    if (value > 0) {
+                        kinds[count] = c * types.length + t;
+                        values[count++] = value;
+                    }
+                }
+            }
+            kindClass = new int[count];
+            kindType = new byte[count];
+            kindValue = Arrays.copyOf(values, count);
+            kindPrice = new long[count];
+            for (int k = 0; k < count; k++) {
+                kindClass[k] = kinds[k] / types.length;
+                kindType[k] = types[kinds[k] % types.length];
+                kindPrice[k] = LandType.price(kindType[k]);
+            }
+            Integer[] sorted = new Integer[count];
+            for (int k = 0; k < count; k++) {
+                sorted[k] = k;
+            }
+            Arrays.sort(sorted, (a, b) -> Double.compare(ratio(b), ratio(a)));
+            order = new int[count];
+            for (int k = 0; k < count; k++) {
+                order[k] = sorted[k];
+            }
+        }
+
+        /*
+         * Description: works out what the land already on the map adds to the funds by the horizon. Tiles of the same
+         * land type, age (every old tile alike) and months kept are equivalent, so each is worked out once.
+         * Returns: the revenues minus the costs
+         */
+        long existingLand() {
+            TileStore store = start.getStore();
+            Map<Long, Long> values = new HashMap<>();
+            long total = 0;
+            for (int i = 0; i < store.size(); i++) {
+                byte type = store.landType[i];
+                if (type == LandType.UNUSED || type == LandType.FLOODED)
+                    continue;
+                int age = Math.min(store.age(i), OLD_AGE);
+                int kept = keptMonths(i);
+                long key = ((long) type * (OLD_AGE + 1) + age) << 32 | kept;
+                total += values.computeIfAbsent(key, k -> tileValue(type, age, month, kept));
+            }
+            return total;
+        }
+
+        /*
+         * Description: runs the search
+         * Parameters: pool - the pool to evaluate moves in
+         * Returns: the best count vector found, one count per kind
+         */
+        int[] run(ForkJoinPool pool) {
+            int[] counts = move(new int[kindValue.length], -1, 0);
+            long value = evaluate(counts);
+            int largest = 1;
+            for (int c = 0; c + 1 < classStart.length; c++) {
+                largest = Math.max(largest, classStart[c + 1] - classStart[c]);
+            }
+
+            // take the best move of each round, halving the step once no move of it helps
+            for (int step = Integer.highestOneBit(largest); step > 0; ) {
+                int moveCount = (kindValue.length + 1) * kindValue.length;
+                long[] values = new long[moveCount];
+                pool.invoke(new Moves(counts, step, values, 0, moveCount));
+                int best = -1;
+                for (int m = 0; m < moveCount; m++) {
+                    if (values[m] > value && (best < 0 || values[m] > values[best]))
+                        best = m;
+                }
+                if (best < 0) {
+                    step /= 2;
+                    continue;
+                }
+                counts = move(counts, best, step);
+                value = values[best];
+            }
+            return counts;
+        }
+
+        /*
+         * Description: gets a kind's value per unit of price, free land first
+         * Parameters: kind - the kind
+         * Returns: the ratio
+         */
+        private double ratio(int kind) {
+            return kindPrice[kind] == 0 ? Double.POSITIVE_INFINITY : (double) kindValue[kind] / kindPrice[kind];
+        }
+
+        /*
+         * Description: applies a move: takes up to step tiles off one kind and puts up to step tiles of another in
+         * its class's empty tiles, pays for them by taking off the land with the least value for its price, then
+         * spends what is left greedily (the land with the most value for its price first). Move m takes from kind
+         * m / kinds - 1 (none for the first kinds moves) and adds kind m % kinds, and move -1 is just the greedy
+         * spending. Works in O(kinds).
+         * Parameters: counts - the counts before the move
+         *             m - the move, or -1
+         *             step - the number of tiles moved
+         * Returns: the counts after the move, or null if the move changes nothing
+         */
+        private int[] move(int[] counts, int m, int step) {
+            int from = m < 0 ? -1 : m / kindValue.length - 1;
+            int to = m < 0 ? -1 : m % kindValue.length;
+            if (m >= 0 && (from == to || (from >= 0 && counts[from] == 0)))
+                return null;
+
+            // the money spent and the tiles used in each class
+            int[] moved = counts.clone();
+            int[] used = new int[classStart.length - 1];
+            long spent = 0;
+            for (int k = 0; k < moved.length; k++) {
+                used[kindClass[k]] += moved[k];
+                spent += moved[k] * kindPrice[k];
+            }
+
+            // move the tiles
+            if (from >= 0) {
+                int taken = Math.min(step, moved[from]);
+                moved[from] -= taken;
+                used[kindClass[from]] -= taken;
+                spent -= taken * kindPrice[from];
+            }
+            if (to >= 0) {
+                int added = Math.min(step, free(used, to));
+                if (added == 0 && from < 0)
+                    return null;
+                moved[to] += added;
+                used[kindClass[to]] += added;
+                spent += added * kindPrice[to];
+            }
+
+            // pay for them, the added kind last
+            for (int k = order.length - 1; k >= -1 && spent > budget; k--) {
+                int kind = k < 0 ? to : order[k];
+                if (kind < 0 || (k >= 0 && kind == to) || moved[kind] == 0 || kindPrice[kind] == 0)
+                    continue;
+                int taken = (int) Math.min(moved[kind], (spent - budget + kindPrice[kind] - 1) / kindPrice[kind]);
+                moved[kind] -= taken;
+                used[kindClass[kind]] -= taken;
+                spent -= taken * kindPrice[kind];
+            }
+
+            // spend what is left
+            for (int kind : order) {
+                long added = free(used, kind);
+                if (kindPrice[kind] > 0)
+                    added = Math.min(added, (budget - spent) / kindPrice[kind]);
+                moved[kind] += (int) added;
+                used[kindClass[kind]] += (int) added;
+                spent += added * kindPrice[kind];
+            }
+            return moved;
+        }
+
+        /*
+         * Description: gets how many empty tiles are left in a kind's class
+         * Parameters: used - the tiles used in each class
+         *             kind - the kind
+         * Returns: the number of tiles
+         */
+        private int free(int[] used, int kind) {
+            int c = kindClass[kind];
+            return classStart[c + 1] - classStart[c] - used[c];
+        }
+
+        /*
+         * Description: gets the value of a count vector, from the cache if it was evaluated before
+         * Parameters: counts - the counts
+         * Returns: the total value of the placements
+         */
+        private long evaluate(int[] counts) {
+            Counts key = new Counts(counts);
+            Long cached = evaluated.get(key);
+            if (cached != null) {
+                cacheHits.increment();
+                return cached;
+            }
+            evaluations.increment();
+            long value = 0;
+            for (int k = 0; k < counts.length; k++) {
+                value += counts[k] * kindValue[k];
+            }
+            evaluated.put(key, value);
+            return value;
+        }
+
+        /*
+         * Description: turns a count vector into tiles, each class's tiles taken in index order by kind
+         * Parameters: counts - the counts
+         *             baseline - the funds at the horizon without any placements
+         * Returns: the result
+         */
+        Result result(int[] counts, long baseline) {
+            int[][] tiles = new int[LandType.COUNT][];
+            int[] placed = new int[LandType.COUNT];
+            for (int k = 0; k < counts.length; k++) {
+                placed[kindType[k]] += counts[k];
+            }
+            for (byte type : types) {
+                tiles[type] = new int[placed[type]];
+            }
+            Arrays.fill(placed, 0);
+
+            int[] used = new int[classStart.length - 1];
+            long gain = 0;
+            long spent = 0;
+            for (int k = 0; k < counts.length; k++) {
+                int c = kindClass[k];
+                for (int n = 0; n < counts[k]; n++) {
+                    tiles[kindType[k]][placed[kindType[k]]++] = candidates[classStart[c] + used[c]++];
+                }
+                gain += counts[k] * kindValue[k];
+                spent += counts[k] * kindPrice[k];
+            }
+            return new Result(tiles, months, spent, gain, baseline, evaluations.sum(), cacheHits.sum());
+        }
+
+        /*
+         * Description: a fork/join task evaluating a range of moves, split in half until it is small
+         */
+        private final class Moves extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int[] counts;
+            private final int step;
+            private final long[] values;
+            private final int first;
+            private final int end;
+
+            Moves(int[] counts, int step, long[] values, int first, int end) {
+                this.counts = counts;
+                this.step = step;
+                this.values = values;
+                this.first = first;
+                this.end = end;
+            }
+
+            @Override
+            protected void compute() {
+                if (end - first <= MOVES_PER_TASK) {
+                    for (int m = first; m < end; m++) {
+                        int[] moved = move(counts, m, step);
+                        values[m] = moved == null ? Long.MIN_VALUE : evaluate(moved);
+                    }
+                    return;
+                }
+                int middle = (first + end) >>> 1;
+                invokeAll(new Moves(counts, step, values, first, middle),
+                        new Moves(counts, step, values, middle, end));
+            }
+        }
+    }
+
+    /*
+     * Description: a count vector as a cache key
+     */
+    private static final class Counts {
+        private final int[] counts;
+        private final int hash;
+
+        Counts(int[] counts) {
+            this.counts = counts;
+            hash = Arrays.hashCode(counts);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Counts && Arrays.equals(counts, ((Counts) other).counts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /*
+     * Description: the best layout found: the tiles of each land type, what they cost and what they add to the funds
+     * by the horizon
+     */
+    public static class Result {
+        private final int[][] tiles;
+        private final int months;
+        private final long spent;
+        private final long gain;
+        private final long baseline;
+        private final long evaluations;
+        private final long cacheHits;
+
+        Result(int[][] tiles, int months, long spent, long gain, long baseline, long evaluations, long cacheHits) {
+            this.tiles = tiles;
+            this.months = months;
+            this.spent = spent;
+            this.gain = gain;
+            this.baseline = baseline;
+            this.evaluations = evaluations;
+            this.cacheHits = cacheHits;
+        }
+
+        /*
+         * Description: gets the tiles a land type is placed on
+         * Parameters: type - the land type code
+         * Returns: the tile indexes, empty if the type isn't placed
+         */
+        public int[] getTiles(byte type) {
+            return tiles[type] == null ? new int[0] : tiles[type].clone();
+        }
+
+        /*
+         * Description: gets the number of tiles a land type is placed on
+         * Parameters: type - the land type code
+         * Returns: the number of tiles
+         */
+        public int getCount(byte type) {
+            return tiles[type] == null ? 0 : tiles[type].length;
+        }
+
+        /*
+         * Description: getter for the horizon the layout was judged at
+         * Returns: the months
+         */
+        public int getMonths() {
+            return months;
+        }
+
+        /*
+         * Description: getter for the price of the land
+         * Returns: the purchase cost
+         */
+        public long getSpent() {
+            return spent;
+        }
+
+        /*
+         * Description: getter for what the layout adds to the funds by the horizon, after paying for it
+         * Returns: the gain
+         */
+        public long getGain() {
+            return gain;
+        }
+
+        /*
+         * Description: gets the funds expected at the horizon if the layout is placed now
+         * Returns: the funds
+         */
+        public long getProjectedFunds() {
+            return baseline + gain;
+        }
+
+        /*
+         * Description: getter for the number of count vectors evaluated
+         * Returns: the evaluations
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /*
+         * Description: getter for the number of evaluations answered from the cache
+         * Returns: the cache hits
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /*
+         * Description: buys the layout's land, one placement batch per land type (so a view refreshes once each)
+         * Parameters: riverSim - the simulation the layout was found for
+         */
+        public void apply(RiverSim riverSim) {
+            riverSim.lockAll();
+            try {
+                for (byte type = 0; type < tiles.length; type++) {
+                    if (tiles[type] != null && tiles[type].length > 0)
+                        riverSim.placeLand(LandType.abbreviation(type), tiles[type], tiles[type].length);
+                }
+            } finally {
+                riverSim.unlockAll();
+            }
+        }
+
+        /*
+         * Description: describes the layout, such as "40 Agriculture, 12 Recreation"
+         * Returns: the description, "nothing" if no land is placed
+         */
+        public String describe() {
+            StringBuilder text = new StringBuilder();
+            for (byte type = 0; type < tiles.length; type++) {
+                if (getCount(type) == 0)
+                    continue;
+                if (text.length() > 0)
+                    text.append(", ");
+                text.append(getCount(type)).append(' ').append(LandType.name(type));
+            }
+            return text.length() == 0 ? "nothing" : text.toString();
+        }
+    }
+
+    /*
+     * Description: entry point for optimizing from the command line, checks the projection with a simulated run
+     * Parameters: args - map columns, map rows, budget, years, then any placements
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: LayoutOptimizer <mapCols> <mapRows> <budget> <years>"
+                    + " [A:index | R:first-last | ...]");
+            System.exit(1);
+        }
+
+        // build the starting state
+        RiverSim riverSim = new RiverSim(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        long budget = Long.parseLong(args[2]);
+        int months = Math.multiplyExact(Integer.parseInt(args[3]), YEAR);
+        for (int i = 4; i < args.length; i++) {
+            HeadlessRunner.applyPlacement(riverSim, args[i]);
+        }
+
+        // optimize and time it
+        long startTime = System.nanoTime();
+        Result result = new LayoutOptimizer(riverSim).optimize(budget, months);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.out.printf("Optimized in %.3f s on %d threads (%d layouts evaluated, %d cache hits)%n", seconds,
+                ForkJoinPool.commonPool().getParallelism(), result.getEvaluations(), result.getCacheHits());
+        System.out.println("Layout: " + result.describe() + " for $" + result.getSpent() + "k");
+        System.out.println("Projected funds after " + args[3] + " years: $" + result.getProjectedFunds() + "k (+$"
+                + result.getGain() + "k)");
+
+        // check the projection by running it
+        result.apply(riverSim);
+        riverSim.advance(months);
+        System.out.println("Simulated funds: $" + riverSim.getFunds() + "k");
+    }
+}
@@ -0,0 +1,626 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, Ledger class. Records where the funds came from and where they went, month by month:
+ * the cost and revenue of each land type, plus direct addToFunds changes (the EXTERNAL column), as 64-bit amounts. The
+ * RiverSim's funds balance is the opening balance plus every revenue minus every cost in the ledger.
+ *
+ * The months are stored as a list of chunks, each holding one array per column (left out while the column is all
+ * zero). A chunk either lists its months or repeats a one-year pattern. Whenever the last year recorded repeats the
+ * year before it (a steady simulation, or years skipped by advance), those months are folded into a repeating chunk,
+ * so a run of millions of months takes a handful of chunks. The arrays hold running totals rather than amounts, and
+ * every chunk knows the totals before it, so a range query finds its two ends by binary search and costs O(log
+ * chunks) however many months it covers.
+ *
+ * Stored months never change once the month after them is stored, so versions of a ledger (see WorldHistory) share
+ * the chunk arrays through share instead of copying them. A listed chunk holds at most LISTED_MONTHS months, which
+ * bounds what the first month listed after a share has to copy.
+ *
+ * Costs and revenues can be added from any thread (they go into LongAdder totals until the month ends). Ending months
+ * and queries need the simulation locked (RiverSim.lockAll) or not changing.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Ledger {
+    // the kinds of amount kept for each land type
+    public static final int COST = 0;
+    public static final int REVENUE = 1;
+
+    // the column for funds changes that aren't tied to a land type
+    public static final byte EXTERNAL = (byte) LandType.COUNT;
+    static final int COLUMNS = (LandType.COUNT + 1) * 2;
+
+    private static final int YEAR = RiverSim.MONTHS_PER_YEAR;
+
+    // the most months a listed chunk holds before the next one starts
+    static final int LISTED_MONTHS = 1024;
+
+    private final long firstMonth;
+    private final long openingBalance;
+    private final LongAdder[] recorded = new LongAdder[COLUMNS];
+    private final long[] closed = new long[COLUMNS];
+    private final long[] row = new long[COLUMNS];
+    private long openMonth;
+
+    // the months at the end of the last chunk that match the month a year before them
+    private int repeatRun = 0;
+
+    // true while the last chunk's arrays may be shared with another ledger (see share)
+    private boolean sharedTail = false;
+
+    // chunks in month order: the first month, the number of months, the months stored (the pattern length for a
+    // repeating chunk), the running totals of each column over the stored months and the column totals before it
+    private int chunkCount = 0;
+    private long[] chunkStart = new long[16];
+    private long[] chunkLength = new long[16];
+    private int[] chunkPeriod = new int[16];
+    private long[][][] chunkSums = new long[16][][];
+    private long[][] chunkBefore = new long[16][];
+
+    /*
+     * Description: constructor for an empty Ledger
+     * Parameters: firstMonth - the month the ledger starts at (see month), which is the open month
+     *             openingBalance - the funds before the first month
+     */
+    Ledger(long firstMonth, long openingBalance) {
+        this.firstMonth = firstMonth;
+        this.openingBalance = openingBalance;
+        openMonth = firstMonth;
+        for (int c = 0; c < COLUMNS; c++) {
+            recorded[c] = new LongAdder();
+        }
+    }
+
+    /*
+     * Description: copy constructor, the copy shares no arrays with the original
+     * Parameters: other - the ledger to copy
+     */
+    Ledger(Ledger other) {
+        this(other.firstMonth, other.openingBalance);
+        for (int c = 0; c < COLUMNS; c++) {
+            recorded[c].add(other.recorded[c].sum());
+        }
+        System.arraycopy(other.closed, 0, closed, 0, COLUMNS);
+        openMonth = other.openMonth;
+        repeatRun = other.repeatRun;
+        chunkCount = other.chunkCount;
+        chunkStart = other.chunkStart.clone();
+        chunkLength = other.chunkLength.clone();
+        chunkPeriod = other.chunkPeriod.clone();
+        chunkSums = new long[other.chunkSums.length][][];
+        chunkBefore = new long[other.chunkBefore.length][];
+        for (int k = 0; k < chunkCount; k++) {
+            chunkSums[k] = new long[COLUMNS][];
+            for (int c = 0; c < COLUMNS; c++) {
+                if (other.chunkSums[k][c] != null)
+                    chunkSums[k][c] = other.chunkSums[k][c].clone();
+            }
+            chunkBefore[k] = other.chunkBefore[k].clone();
+        }
+    }
+
+    /*
+     * Description: makes a copy that shares the stored months with this ledger instead of copying them, in O(chunks).
+     * Either ledger can keep recording: the first month either one lists into the shared last chunk copies its
+     * arrays first.
+     * Returns: the copy
+     */
+    Ledger share() {
+        Ledger copy = new Ledger(firstMonth, openingBalance);
+        for (int c = 0; c < COLUMNS; c++) {
+            copy.recorded[c].add(recorded[c].sum());
+        }
+        System.arraycopy(closed, 0, copy.closed, 0, COLUMNS);
+        copy.openMonth = openMonth;
+        copy.repeatRun = repeatRun;
+        copy.chunkCount = chunkCount;
+        copy.chunkStart = chunkStart.clone();
+        copy.chunkLength = chunkLength.clone();
+        copy.chunkPeriod = chunkPeriod.clone();
+        copy.chunkSums = chunkSums.clone();
+        copy.chunkBefore = chunkBefore.clone();
+
+        // only the last chunk's list of columns can change in place, the columns are copied before they do
+        if (chunkCount > 0)
+            copy.chunkSums[chunkCount - 1] = chunkSums[chunkCount - 1].clone();
+
+        // a version's ledger is already marked, and isn't written again so other threads can share it too
+        if (!sharedTail)
+            sharedTail = true;
+        copy.sharedTail = true;
+        return copy;
+    }
+
+    /*
+     * Description: numbers the months of the simulation from year 0, month 0, so that ledger ranges can be given as
+     * plain numbers (the months of years 100 to 200 are month(100, 0) up to month(201, 0))
+     * Parameters: year - the year
+     *             month - the month of the year
+     * Returns: the month number
+     */
+    public static long month(int year, int month) {
+        return (long) year * YEAR + month;
+    }
+
+    /*
+     * Description: gets the column holding one kind of amount for a land type
+     * Parameters: type - the land type code, or EXTERNAL
+     *             kind - COST or REVENUE
+     * Returns: the column
+     */
+    static int column(byte type, int kind) {
+        return type * 2 + kind;
+    }
+
+    /*
+     * Description: adds a cost to the open month, safe to call from any thread
+     * Parameters: type - the land type code, or EXTERNAL
+     *             amount - the cost
+     */
+    void addCost(byte type, long amount) {
+        recorded[column(type, COST)].add(amount);
+    }
+
+    /*
+     * Description: adds a revenue to the open month, safe to call from any thread
+     * Parameters: type - the land type code, or EXTERNAL
+     *             amount - the revenue
+     */
+    void addRevenue(byte type, long amount) {
+        recorded[column(type, REVENUE)].add(amount);
+    }
+
+    /*
+     * Description: gets the funds balance, the opening balance plus every revenue minus every cost so far
+     * Returns: the balance
+     */
+    public long getBalance() {
+        long balance = openingBalance;
+        for (int c = 0; c < COLUMNS; c += 2) {
+            balance += recorded[c + REVENUE].sum() - recorded[c + COST].sum();
+        }
+        return balance;
+    }
+
+    /*
+     * Description: getter for the funds before the first month
+     * Returns: openingBalance
+     */
+    public long getOpeningBalance() {
+        return openingBalance;
+    }
+
+    /*
+     * Description: getter for the first month in the ledger
+     * Returns: firstMonth
+     */
+    public long getFirstMonth() {
+        return firstMonth;
+    }
+
+    /*
+     * Description: getter for the month being recorded, the simulation's current month
+     * Returns: openMonth
+     */
+    public long getCurrentMonth() {
+        return openMonth;
+    }
+
+    /*
+     * Description: getter for the number of chunks the closed months are stored in
+     * Returns: chunkCount
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /*
+     * Description: adds up the costs of a land type over a range of months. Months outside the ledger add nothing.
+     * Parameters: type - the land type code, or EXTERNAL
+     *             fromMonth - the first month (see month)
+     *             toMonth - the month to stop at (not included)
+     * Returns: the total cost
+     */
+    public long getCost(byte type, long fromMonth, long toMonth) {
+        return amount(column(type, COST), fromMonth, toMonth);
+    }
+
+    /*
+     * Description: adds up the revenues of a land type over a range of months. Months outside the ledger add nothing.
+     * Parameters: type - the land type code, or EXTERNAL
+     *             fromMonth - the first month (see month)
+     *             toMonth - the month to stop at (not included)
+     * Returns: the total revenue
+     */
+    public long getRevenue(byte type, long fromMonth, long toMonth) {
+        return amount(column(type, REVENUE), fromMonth, toMonth);
+    }
+
+    /*
+     * Description: adds up every revenue minus every cost over a range of months, the change in funds
+     * Parameters: fromMonth - the first month (see month)
+     *             toMonth - the month to stop at (not included)
+     * Returns: the net amount
+     */
+    public long getNet(long fromMonth, long toMonth) {
+        long net = 0;
+        for (int c = 0; c < COLUMNS; c += 2) {
+            net += amount(c + REVENUE, fromMonth, toMonth) - amount(c + COST, fromMonth, toMonth);
+        }
+        return net;
+    }
+
+    /*
+     * Description: adds up one column over a range of months
+     * Parameters: column - the column
+     *             fromMonth - the first month
+     *             toMonth - the month to stop at (not included)
+     * Returns: the total
+     */
+    private long amount(int column, long fromMonth, long toMonth) {
+        if (toMonth <= fromMonth)
+            return 0;
+        return totalBefore(column, toMonth) - totalBefore(column, fromMonth);
+    }
+
+    /*
+     * Description: adds up one column over every month before a month
+     * Parameters: column - the column
+     *             month - the month to stop at (not included)
+     * Returns: the total
+     */
+    private long totalBefore(int column, long month) {
+        if (month <= firstMonth)
+            return 0;
+        if (month > openMonth)
+            return recorded[column].sum();
+        if (month == openMonth)
+            return closed[column];
+
+        // the chunk holding the month
+        int k = Arrays.binarySearch(chunkStart, 0, chunkCount, month);
+        if (k < 0)
+            k = -k - 2;
+        return chunkBefore[k][column] + chunkTotal(k, column, month - chunkStart[k]);
+    }
+
+    /*
+     * Description: adds up one column over the first months of a chunk
+     * Parameters: k - the chunk
+     *             column - the column
+     *             months - the number of months, up to the chunk's length
+     * Returns: the total
+     */
+    private long chunkTotal(int k, int column, long months) {
+        long[] sums = chunkSums[k][column];
+        if (sums == null)
+            return 0;
+        int period = chunkPeriod[k];
+        return months / period * sums[period] + sums[(int) (months % period)];
+    }
+
+    /*
+     * Description: gets one column's amount for a month of a chunk
+     * Parameters: k - the chunk
+     *             column - the column
+     *             offset - the month's place in the chunk's stored months
+     * Returns: the amount
+     */
+    long monthAmount(int k, int column, int offset) {
+        long[] sums = chunkSums[k][column];
+        return sums == null ? 0 : sums[offset + 1] - sums[offset];
+    }
+
+    /*
+     * Description: getter for the number of months a chunk stores (its pattern length if it repeats)
+     * Parameters: k - the chunk
+     * Returns: the number of stored months
+     */
+    int chunkPeriod(int k) {
+        return chunkPeriod[k];
+    }
+
+    /*
+     * Description: getter for the number of months a chunk covers
+     * Parameters: k - the chunk
+     * Returns: the number of months
+     */
+    long chunkLength(int k) {
+        return chunkLength[k];
+    }
+
+    /*
+     * Description: tells whether a chunk has anything in a column
+     * Parameters: k - the chunk
+     *             column - the column
+     * Returns: false if the column is zero for the whole chunk
+     */
+    boolean hasColumn(int k, int column) {
+        return chunkSums[k][column] != null;
+    }
+
+    /*
+     * Description: gets what the open month has recorded in a column so far
+     * Parameters: column - the column
+     * Returns: the amount
+     */
+    long openAmount(int column) {
+        return recorded[column].sum() - closed[column];
+    }
+
+    /*
+     * Description: closes the open month, the next month becomes the open one
+     */
+    void endMonth() {
+        for (int c = 0; c < COLUMNS; c++) {
+            row[c] = recorded[c].sum() - closed[c];
+        }
+        append(row);
+        openMonth++;
+    }
+
+    /*
+     * Description: closes the open month and records many months after it in one go, the last one becoming the open
+     * month. The months repeat a one-year pattern, so only the first two years are appended month by month and the
+     * rest extends the repeating chunk they fold into.
+     * Parameters: year - the amounts of the months after the open month, indexed by month then column
+     *             months - the number of months to record
+     */
+    void endMonths(long[][] year, long months) {
+        endMonth();
+        long[] before = closed.clone();
+
+        // append until the months fold into a repeating chunk, then extend it
+        long remaining = months - 1;
+        long appended = 0;
+        while (appended < remaining && (appended < 2 * YEAR || !repeats(chunkCount - 1))) {
+            append(year[(int) (appended % YEAR)]);
+            appended++;
+        }
+        if (appended < remaining)
+            extend(chunkCount - 1, remaining - appended);
+        openMonth += remaining;
+
+        // the recorded totals take in the closed months and what the new open month has so far
+        long[] open = year[(int) (remaining % YEAR)];
+        for (int c = 0; c < COLUMNS; c++) {
+            recorded[c].add(closed[c] - before[c] + open[c]);
+        }
+    }
+
+    /*
+     * Description: appends a whole chunk (used when loading a snapshot), the months come after every chunk so far
+     * Parameters: period - the number of months stored
+     *             length - the number of months covered, the stored months repeat if it is more than period
+     *             amounts - the stored amounts, indexed by column then month, null for an all zero column
+     */
+    void addChunk(int period, long length, long[][] amounts) {
+        int k = newChunk();
+        for (int c = 0; c < COLUMNS; c++) {
+            if (amounts[c] == null)
+                continue;
+            long[] sums = new long[period + 1];
+            for (int m = 0; m < period; m++) {
+                sums[m + 1] = sums[m] + amounts[c][m];
+            }
+            chunkSums[k][c] = sums;
+            closed[c] += sums[period];
+        }
+        chunkPeriod[k] = period;
+        chunkLength[k] = period;
+        extend(k, length - period);
+        openMonth += length;
+
+        // count the listed months that already match the year before, as if they had just been appended
+        repeatRun = 0;
+        for (int m = period - 1; length == period && m >= YEAR && matchesYearBefore(k, m); m--) {
+            repeatRun++;
+        }
+    }
+
+    /*
+     * Description: tells whether a listed month matches the month a year before it in every column
+     * Parameters: k - the chunk
+     *             offset - the month, at least a year into the chunk
+     * Returns: true if every column matches
+     */
+    private boolean matchesYearBefore(int k, int offset) {
+        for (int c = 0; c < COLUMNS; c++) {
+            if (monthAmount(k, c, offset) != monthAmount(k, c, offset - YEAR))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Description: sets what the open month has recorded so far (used when loading a snapshot, after the chunks)
+     * Parameters: amounts - the amounts, indexed by column
+     */
+    void setOpen(long[] amounts) {
+        for (int c = 0; c < COLUMNS; c++) {
+            recorded[c].reset();
+            recorded[c].add(closed[c] + amounts[c]);
+        }
+    }
+
+    /*
+     * Description: tells whether a chunk repeats a pattern (a listed chunk covers exactly the months it stores)
+     * Parameters: k - the chunk
+     * Returns: true if the chunk repeats
+     */
+    private boolean repeats(int k) {
+        return chunkLength[k] > chunkPeriod[k];
+    }
+
+    /*
+     * Description: appends a closed month: extends the last chunk if it repeats and the month follows its pattern,
+     * otherwise lists the month and folds the last two years into a repeating chunk if they match
+     * Parameters: amounts - the month's amount in each column
+     */
+    private void append(long[] amounts) {
+        int last = chunkCount - 1;
+        if (last >= 0 && repeats(last)) {
+            if (matches(last, (int) (chunkLength[last] % chunkPeriod[last]), amounts)) {
+                extend(last, 1);
+                return;
+            }
+            last = -1;
+        }
+        if (last < 0 || chunkPeriod[last] >= LISTED_MONTHS) {
+            last = newChunk();
+            repeatRun = 0;
+        }
+
+        // list the month, into arrays of its own if the chunk is shared
+        int period = chunkPeriod[last];
+        repeatRun = period >= YEAR && matches(last, period - YEAR, amounts) ? repeatRun + 1 : 0;
+        long[][] sums = chunkSums[last];
+        if (sharedTail) {
+            for (int c = 0; c < COLUMNS; c++) {
+                if (sums[c] != null)
+                    sums[c] = sums[c].clone();
+            }
+            sharedTail = false;
+        }
+        for (int c = 0; c < COLUMNS; c++) {
+            if (sums[c] == null && amounts[c] == 0)
+                continue;
+            if (sums[c] == null) {
+                sums[c] = new long[Math.max(16, period + 2)];
+            } else if (sums[c].length < period + 2) {
+                sums[c] = Arrays.copyOf(sums[c], sums[c].length * 2);
+            }
+            sums[c][period + 1] = sums[c][period] + amounts[c];
+        }
+        chunkPeriod[last]++;
+        chunkLength[last]++;
+        closeColumns(amounts);
+
+        if (repeatRun == YEAR)
+            fold(last);
+    }
+
+    /*
+     * Description: adds a month's amounts to the closed totals
+     * Parameters: amounts - the amount in each column
+     */
+    private void closeColumns(long[] amounts) {
+        for (int c = 0; c < COLUMNS; c++) {
+            closed[c] += amounts[c];
+        }
+    }
+
+    /*
+     * Description: tells whether a month matches one of a chunk's stored months in every column
+     * Parameters: k - the chunk
+     *             offset - the stored month
+     *             amounts - the month's amount in each column
+     * Returns: true if every column matches
+     */
+    private boolean matches(int k, int offset, long[] amounts) {
+        for (int c = 0; c < COLUMNS; c++) {
+            if (monthAmount(k, c, offset) != amounts[c])
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Description: extends a repeating chunk by more months of its pattern
+     * Parameters: k - the chunk, the last one
+     *             months - the number of months to add
+     */
+    private void extend(int k, long months) {
+        for (int c = 0; c < COLUMNS; c++) {
+            if (chunkSums[k][c] != null)
+                closed[c] += chunkTotal(k, c, chunkLength[k] + months) - chunkTotal(k, c, chunkLength[k]);
+        }
+        chunkLength[k] += months;
+    }
+
+    /*
+     * Description: moves the last two years of a listed chunk, which match, into a new repeating chunk. The listed
+     * chunk is trimmed to the months before them, or replaced if nothing is left.
+     * Parameters: k - the chunk, the last one
+     */
+    private void fold(int k) {
+        int kept = chunkPeriod[k] - 2 * YEAR;
+        long[][] listed = chunkSums[k];
+        long[] before = chunkBefore[k].clone();
+        long start = chunkStart[k] + kept;
+
+        // the pattern is the first of the two years
+        long[][] pattern = new long[COLUMNS][];
+        for (int c = 0; c < COLUMNS; c++) {
+            if (listed[c] == null)
+                continue;
+            before[c] += listed[c][kept];
+            if (isZero(listed[c], kept))
+                continue;
+            pattern[c] = new long[YEAR + 1];
+            for (int m = 0; m < YEAR; m++) {
+                pattern[c][m + 1] = listed[c][kept + m + 1] - listed[c][kept];
+            }
+        }
+
+        // trim the listed chunk to what is left
+        if (kept == 0) {
+            chunkCount--;
+        } else {
+            for (int c = 0; c < COLUMNS; c++) {
+                if (listed[c] != null)
+                    listed[c] = Arrays.copyOf(listed[c], kept + 1);
+            }
+            chunkPeriod[k] = kept;
+            chunkLength[k] = kept;
+        }
+
+        int r = newChunk();
+        chunkStart[r] = start;
+        chunkBefore[r] = before;
+        chunkSums[r] = pattern;
+        chunkPeriod[r] = YEAR;
+        chunkLength[r] = 2 * YEAR;
+        repeatRun = 0;
+    }
+
+    /*
+     * Description: tells whether a listed column is zero for the year starting at a month
+     * Parameters: sums - the column's running totals
+     *             from - the first month of the year
+     * Returns: true if every month of the year is zero
+     */
+    private static boolean isZero(long[] sums, int from) {
+        for (int m = from; m < from + YEAR; m++) {
+            if (sums[m + 1] != sums[m])
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Description: starts an empty chunk after the last one, at the first month not yet stored
+     * Returns: the new chunk
+     */
+    private int newChunk() {
+        if (chunkCount == chunkStart.length) {
+            int capacity = chunkCount * 2;
+            chunkStart = Arrays.copyOf(chunkStart, capacity);
+            chunkLength = Arrays.copyOf(chunkLength, capacity);
+            chunkPeriod = Arrays.copyOf(chunkPeriod, capacity);
+            chunkSums = Arrays.copyOf(chunkSums, capacity);
+            chunkBefore = Arrays.copyOf(chunkBefore, capacity);
+        }
+        int k = chunkCount++;
+        chunkStart[k] = k == 0 ? firstMonth : chunkStart[k - 1] + chunkLength[k - 1];
+        chunkLength[k] = 0;
+        chunkPeriod[k] = 0;
+        chunkSums[k] = new long[COLUMNS][];
+        chunkBefore[k] = closed.clone();
+        sharedTail = false;
+        return k;
+    }
+}
@@ -57,15 +57,26 @@ import javafx.application.Application;
 import javafx.stage.Stage;
 
 public class Main extends Application {
+    private Layout layout;
+
     public static void main(String[] args) {
         launch();
     }
 
     @Override  
     public void start(Stage stage) {
+        // make the metrics available to JMX clients such as JConsole
+        Metrics.registerMBean();
+
         // set the scene to custom layout and show stage
-        Layout layout = new Layout();
+        layout = new Layout();
         stage.setScene(layout.createLayout());
         stage.show();
     }
+
+    @Override
+    public void stop() {
+        // finish an open recording before exiting
+        layout.close();
+    }
 }
\ No newline at end of file
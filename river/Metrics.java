@@ -0,0 +1,353 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, Metrics class. Optional timing of the simulation's hot paths: how long each phase of a
+ * month takes, placements, skipped years, the controller's input handlers and the JavaFX layout pulse that follows
+ * them, plus a count of the property change events fired by tile views. Each phase keeps a run count, its total time,
+ * the number of tiles (or months, or inputs) it handled and a histogram of its times in power-of-two buckets, all
+ * LongAdders so placing threads don't contend.
+ *
+ * Metrics are off unless the river.metrics system property is true, or they are switched on through JMX (see
+ * MetricsMXBean) or the overlay. While off, a timed section costs one volatile read: start() returns 0 and lap() does
+ * nothing with a 0 start.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public final class Metrics {
+    // phases
+    public static final int MONTH = 0;
+    public static final int RESET = 1;
+    public static final int FLOOD = 2;
+    public static final int UNFLOOD = 3;
+    public static final int COST = 4;
+    public static final int HARVEST = 5;
+    public static final int REVENUE = 6;
+    public static final int SKIP = 7;
+    public static final int PLACE = 8;
+    public static final int HANDLER = 9;
+    public static final int PULSE = 10;
+    public static final int LAYOUT = 11;
+    public static final int PHASES = 12;
+
+    private static final String[] NAMES = {"month", "reset", "flood", "unflood", "cost", "harvest", "revenue",
+            "skip", "place", "handler", "pulse", "layout"};
+    private static final int BUCKETS = 64;
+
+    private static volatile boolean enabled = Boolean.getBoolean("river.metrics");
+    private static final LongAdder propertyChanges = new LongAdder();
+    private static final LongAdder[] counts = adders(PHASES);
+    private static final LongAdder[] nanos = adders(PHASES);
+    private static final LongAdder[] events = adders(PHASES);
+    private static final LongAdder[][] histograms = new LongAdder[PHASES][];
+
+    // when the last input handler finished, 0 once the pulse after it was measured
+    private static volatile long handledAt = 0;
+    private static long layoutStart = 0;
+
+    static {
+        for (int phase = 0; phase < PHASES; phase++) {
+            histograms[phase] = adders(BUCKETS);
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /*
+     * Description: creates an array of LongAdders
+     * Parameters: count - the number of adders
+     * Returns: the adders
+     */
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /*
+     * Description: getter for whether metrics are being collected
+     * Returns: true if enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /*
+     * Description: switches collecting metrics on or off, the values collected so far are kept
+     * Parameters: on - true to collect
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+        handledAt = 0;
+    }
+
+    /*
+     * Description: starts timing a section
+     * Returns: the start time, or 0 if metrics are off
+     */
+    public static long start() {
+        if (!enabled)
+            return 0;
+        long now = System.nanoTime();
+        return now == 0 ? 1 : now;
+    }
+
+    /*
+     * Description: finishes timing a phase that started at start, and starts timing the next one from now
+     * Parameters: phase - the phase that finished
+     *             start - the time from start() or the last lap, 0 if metrics were off
+     *             handled - the number of tiles (or months, or inputs) the phase handled
+     * Returns: the time to start the next phase from, 0 if metrics are off
+     */
+    public static long lap(int phase, long start, long handled) {
+        if (start == 0)
+            return 0;
+        long now = System.nanoTime();
+        record(phase, now - start, handled);
+        return now == 0 ? 1 : now;
+    }
+
+    /*
+     * Description: adds one run of a phase
+     * Parameters: phase - the phase
+     *             time - how long it took in nanoseconds
+     *             handled - the number of tiles (or months, or inputs) it handled
+     */
+    private static void record(int phase, long time, long handled) {
+        counts[phase].increment();
+        nanos[phase].add(time);
+        events[phase].add(handled);
+        histograms[phase][BUCKETS - Long.numberOfLeadingZeros(Math.max(time, 1))].increment();
+    }
+
+    /*
+     * Description: counts a property change event fired by a tile view
+     */
+    static void propertyChanged() {
+        if (enabled)
+            propertyChanges.increment();
+    }
+
+    /*
+     * Description: finishes timing an input handler, the next layout pulse is timed from now (call on the JavaFX
+     * thread)
+     * Parameters: start - the time from start(), 0 if metrics were off
+     */
+    static void handlerFinished(long start) {
+        long now = lap(HANDLER, start, 1);
+        if (now != 0)
+            handledAt = now;
+    }
+
+    /*
+     * Description: a layout pulse is starting (call on the JavaFX thread)
+     */
+    static void layoutStarting() {
+        layoutStart = start();
+    }
+
+    /*
+     * Description: a layout pulse finished, times the layout and, if an input handler ran before it, the time from the
+     * end of the handler to now (call on the JavaFX thread)
+     */
+    static void layoutFinished() {
+        long now = lap(LAYOUT, layoutStart, 1);
+        layoutStart = 0;
+        if (now != 0 && handledAt != 0) {
+            record(PULSE, now - handledAt, 1);
+            handledAt = 0;
+        }
+    }
+
+    /*
+     * Description: clears every value collected so far
+     */
+    public static void reset() {
+        propertyChanges.reset();
+        for (int phase = 0; phase < PHASES; phase++) {
+            counts[phase].reset();
+            nanos[phase].reset();
+            events[phase].reset();
+            for (LongAdder bucket : histograms[phase]) {
+                bucket.reset();
+            }
+        }
+    }
+
+    /*
+     * Description: getter for a phase's name
+     * Parameters: phase - the phase
+     * Returns: the name, such as "harvest"
+     */
+    public static String name(int phase) {
+        return NAMES[phase];
+    }
+
+    /*
+     * Description: getter for the number of property change events fired by tile views
+     * Returns: the number of events
+     */
+    public static long getPropertyChangeEvents() {
+        return propertyChanges.sum();
+    }
+
+    /*
+     * Description: getter for the number of times a phase ran
+     * Parameters: phase - the phase
+     * Returns: the count
+     */
+    public static long count(int phase) {
+        return counts[phase].sum();
+    }
+
+    /*
+     * Description: gets a phase's mean time
+     * Parameters: phase - the phase
+     * Returns: the mean in microseconds, 0 if it never ran
+     */
+    public static double meanMicros(int phase) {
+        long count = counts[phase].sum();
+        return count == 0 ? 0 : nanos[phase].sum() / 1e3 / count;
+    }
+
+    /*
+     * Description: gets a percentile of a phase's times from its histogram, as the upper bound of the bucket it falls
+     * in (so it is at most twice the real value)
+     * Parameters: phase - the phase
+     *             percent - the percentile, from 0 to 100
+     * Returns: the percentile in microseconds, 0 if it never ran
+     */
+    public static double percentileMicros(int phase, double percent) {
+        long[] buckets = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = histograms[phase][b].sum();
+            total += buckets[b];
+        }
+        long rank = (long) Math.ceil(percent / 100 * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b];
+            if (seen >= rank && seen > 0)
+                return Math.pow(2, b) / 1e3;
+        }
+        return 0;
+    }
+
+    /*
+     * Description: gets how many tiles (or months, or inputs) a phase handled per second of its own time
+     * Parameters: phase - the phase
+     * Returns: the rate, 0 if it never ran
+     */
+    public static double eventsPerSecond(int phase) {
+        long time = nanos[phase].sum();
+        return time == 0 ? 0 : events[phase].sum() * 1e9 / time;
+    }
+
+    /*
+     * Description: formats every phase that ran as a table, for the overlay and JMX
+     * Returns: the table
+     */
+    public static String summary() {
+        StringBuilder text = new StringBuilder(String.format("%-10s %9s %10s %10s %12s%n", "phase", "runs", "mean us",
+                "p99 us", "per second"));
+        for (int phase = 0; phase < PHASES; phase++) {
+            if (count(phase) == 0)
+                continue;
+            text.append(String.format("%-10s %9d %10.1f %10.1f %12.0f%n", NAMES[phase], count(phase),
+                    meanMicros(phase), percentileMicros(phase, 99), eventsPerSecond(phase)));
+        }
+        text.append("property change events: ").append(getPropertyChangeEvents());
+        return text.toString();
+    }
+
+    /*
+     * Description: registers the MBean with the platform MBean server, once (later calls do nothing)
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("johnson_noah.river:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+        } catch (JMException e) {
+            System.err.println("Couldn't register the metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Description: the MBean, reads the metrics through the static methods
+     */
+    private static class Bean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public long getPropertyChangeEvents() {
+            return Metrics.getPropertyChangeEvents();
+        }
+
+        @Override
+        public Map<String, Long> getCounts() {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (int phase = 0; phase < PHASES; phase++) {
+                values.put(NAMES[phase], count(phase));
+            }
+            return values;
+        }
+
+        @Override
+        public Map<String, Double> getMeanMicros() {
+            return byPhase(Metrics::meanMicros);
+        }
+
+        @Override
+        public Map<String, Double> getP99Micros() {
+            return byPhase(phase -> percentileMicros(phase, 99));
+        }
+
+        @Override
+        public Map<String, Double> getEventsPerSecond() {
+            return byPhase(Metrics::eventsPerSecond);
+        }
+
+        @Override
+        public String getSummary() {
+            return summary();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+
+        /*
+         * Description: collects a value for every phase
+         * Parameters: value - gets the value of a phase
+         * Returns: the values by phase name
+         */
+        private static Map<String, Double> byPhase(ToDoubleFunction<Integer> value) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (int phase = 0; phase < PHASES; phase++) {
+                values.put(NAMES[phase], value.applyAsDouble(phase));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, MetricsMXBean interface. The JMX view of Metrics, registered as
+ * "johnson_noah.river:type=Metrics" so JConsole or VisualVM can switch the metrics on and read them. The per-phase
+ * values are keyed by phase name.
+ */
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+    /*
+     * Description: getter for whether metrics are being collected
+     * Returns: true if enabled
+     */
+    boolean isEnabled();
+
+    /*
+     * Description: switches collecting metrics on or off, the values collected so far are kept
+     * Parameters: enabled - true to collect
+     */
+    void setEnabled(boolean enabled);
+
+    /*
+     * Description: getter for the number of property change events fired by tile views
+     * Returns: the number of events
+     */
+    long getPropertyChangeEvents();
+
+    /*
+     * Description: getter for the number of times each phase ran
+     * Returns: the counts by phase name
+     */
+    Map<String, Long> getCounts();
+
+    /*
+     * Description: getter for the mean time of each phase
+     * Returns: the mean in microseconds by phase name
+     */
+    Map<String, Double> getMeanMicros();
+
+    /*
+     * Description: getter for the 99th percentile time of each phase (the upper bound of its histogram bucket)
+     * Returns: the percentile in microseconds by phase name
+     */
+    Map<String, Double> getP99Micros();
+
+    /*
+     * Description: getter for how many tiles (or months, or inputs) each phase handled per second of its own time
+     * Returns: the rate by phase name
+     */
+    Map<String, Double> getEventsPerSecond();
+
+    /*
+     * Description: getter for every phase's values as a table of text
+     * Returns: the summary
+     */
+    String getSummary();
+
+    /*
+     * Description: clears every value collected so far
+     */
+    void reset();
+}
@@ -0,0 +1,226 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, MonteCarloRunner class. Runs many independent copies of a simulation in parallel with
+ * fork/join, each with its own seeded flood model, and collects the distribution of the final funds and filled
+ * tiles. Run i always gets the seed mixed from the master seed and i, and its result is stored at index i, so the
+ * results are the same whatever the number of threads.
+ *
+ * Usage: MonteCarloRunner <mapCols> <mapRows> <months> <runs> <seed> [placement...]
+ *        placements are written as for HeadlessRunner, the floods use StochasticFloodModel's default odds
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongFunction;
+
+public class MonteCarloRunner {
+    // default odds for the command line: most years flood, about half the rows, up to two columns from each bank
+    private static final double YEAR_PROBABILITY = 0.8;
+    private static final double ROW_PROBABILITY = 0.5;
+    private static final int MAX_EXTENT = 2;
+
+    // runs per fork/join task before it stops splitting
+    private static final int RUNS_PER_TASK = 4;
+
+    private final RiverSim start;
+    private final LongFunction<FloodModel> floodModels;
+
+    /*
+     * Description: constructor for MonteCarloRunner
+     * Parameters: start - the starting state, copied for every run (it is not changed)
+     *             floodModels - makes the flood model for a run from the run's seed
+     */
+    public MonteCarloRunner(RiverSim start, LongFunction<FloodModel> floodModels) {
+        this.start = start;
+        this.floodModels = floodModels;
+    }
+
+    /*
+     * Description: runs the simulations on all cores
+     * Parameters: runs - the number of runs
+     *             months - the number of months each run advances
+     *             seed - the master seed
+     * Returns: the results, indexed by run
+     */
+    public Result run(int runs, int months, long seed) {
+        return run(runs, months, seed, ForkJoinPool.commonPool());
+    }
+
+    /*
+     * Description: runs the simulations in a fork/join pool (the results don't depend on its size)
+     * Parameters: runs - the number of runs
+     *             months - the number of months each run advances
+     *             seed - the master seed
+     *             pool - the pool to run in
+     * Returns: the results, indexed by run
+     */
+    public Result run(int runs, int months, long seed, ForkJoinPool pool) {
+        if (runs < 0 || months < 0) {
+            throw new IllegalArgumentException("Bad run: " + runs + " runs of " + months + " months");
+        }
+        Result result = new Result(runs);
+        pool.invoke(new Runs(0, runs, months, seed, result));
+        return result;
+    }
+
+    /*
+     * Description: runs one simulation from a copy of the starting state
+     * Parameters: run - the run index
+     *             months - the number of months to advance
+     *             seed - the master seed
+     *             result - where to store the run's funds and filled tiles
+     */
+    private void runOne(int run, int months, long seed, Result result) {
+        RiverSim riverSim = start.copy();
+        riverSim.setFloodModel(floodModels.apply(StochasticFloodModel.mix(seed, run)));
+        riverSim.advance(months);
+        result.funds[run] = riverSim.getFunds();
+        result.filled[run] = riverSim.getFilled();
+    }
+
+    /*
+     * Description: a fork/join task for a range of runs, split in half until it is small
+     */
+    private class Runs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int end;
+        private final int months;
+        private final long seed;
+        private final Result result;
+
+        Runs(int first, int end, int months, long seed, Result result) {
+            this.first = first;
+            this.end = end;
+            this.months = months;
+            this.seed = seed;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - first <= RUNS_PER_TASK) {
+                for (int run = first; run < end; run++) {
+                    runOne(run, months, seed, result);
+                }
+                return;
+            }
+            int middle = (first + end) >>> 1;
+            invokeAll(new Runs(first, middle, months, seed, result), new Runs(middle, end, months, seed, result));
+        }
+    }
+
+    /*
+     * Description: the final funds and filled tiles of every run, indexed by run, with percentiles of both
+     */
+    public static class Result {
+        private final long[] funds;
+        private final int[] filled;
+
+        Result(int runs) {
+            funds = new long[runs];
+            filled = new int[runs];
+        }
+
+        /*
+         * Description: getter for the number of runs
+         * Returns: the number of runs
+         */
+        public int getRuns() {
+            return funds.length;
+        }
+
+        /*
+         * Description: getter for one run's final funds
+         * Parameters: run - the run index
+         * Returns: the funds
+         */
+        public long getFunds(int run) {
+            return funds[run];
+        }
+
+        /*
+         * Description: getter for one run's final filled tiles
+         * Parameters: run - the run index
+         * Returns: the filled tiles
+         */
+        public int getFilled(int run) {
+            return filled[run];
+        }
+
+        /*
+         * Description: gets a percentile of the final funds (nearest rank)
+         * Parameters: percent - the percentile, from 0 to 100
+         * Returns: the funds at that percentile
+         */
+        public long fundsPercentile(double percent) {
+            long[] values = funds.clone();
+            Arrays.sort(values);
+            return values[rank(values.length, percent)];
+        }
+
+        /*
+         * Description: gets a percentile of the final filled tiles (nearest rank)
+         * Parameters: percent - the percentile, from 0 to 100
+         * Returns: the filled tiles at that percentile
+         */
+        public int filledPercentile(double percent) {
+            int[] values = filled.clone();
+            Arrays.sort(values);
+            return values[rank(values.length, percent)];
+        }
+
+        /*
+         * Description: gets where a nearest rank percentile is in sorted values
+         * Parameters: count - the number of values
+         *             percent - the percentile, from 0 to 100
+         * Returns: the index of the value at that percentile
+         */
+        private static int rank(int count, double percent) {
+            if (count == 0 || percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("No " + percent + "th percentile of " + count + " runs");
+            }
+            int rank = (int) Math.ceil(percent / 100 * count);
+            return Math.max(0, rank - 1);
+        }
+    }
+
+    /*
+     * Description: entry point for a Monte Carlo run from the command line
+     * Parameters: args - map columns, map rows, months, runs, seed, then any placements
+     */
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.err.println("Usage: MonteCarloRunner <mapCols> <mapRows> <months> <runs> <seed> [A:index | R:first-last | ...]");
+            System.exit(1);
+        }
+
+        // build the starting state
+        RiverSim start = new RiverSim(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        int months = Integer.parseInt(args[2]);
+        int runs = Integer.parseInt(args[3]);
+        long seed = Long.parseLong(args[4]);
+        for (int i = 5; i < args.length; i++) {
+            HeadlessRunner.applyPlacement(start, args[i]);
+        }
+
+        // run and time it
+        MonteCarloRunner runner = new MonteCarloRunner(start,
+                runSeed -> new StochasticFloodModel(runSeed, YEAR_PROBABILITY, ROW_PROBABILITY, MAX_EXTENT));
+        long startTime = System.nanoTime();
+        Result result = runner.run(runs, months, seed);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.printf("%d runs of %d months on %d threads in %.3f s%n", runs, months,
+                ForkJoinPool.commonPool().getParallelism(), seconds);
+        double[] percents = {5, 25, 50, 75, 95};
+        System.out.println("Percentile  Funds  Filled");
+        for (double percent : percents) {
+            System.out.printf("p%-9.0f  $%dk  %d%n", percent, result.fundsPercentile(percent), result.filledPercentile(percent));
+        }
+    }
+}
@@ -1,8 +0,0 @@
-package johnson_noah.river;
-
-/*
- * Author: Noah Johnson
- * Description: JavaFx project, Recreation class
- */
-public class Recreation extends LandArea {
-}
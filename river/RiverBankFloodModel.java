@@ -0,0 +1,22 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, RiverBankFloodModel class. The original flood: every year the tiles next to a river
+ * (the map's precomputed flood-adjacent tiles) flood.
+ */
+
+public class RiverBankFloodModel implements FloodModel {
+
+    @Override
+    public int floodedTiles(RiverSim riverSim, int[] tiles) {
+        int[] adjacent = riverSim.getRiverMap().getFloodAdjacentTiles();
+        System.arraycopy(adjacent, 0, tiles, 0, adjacent.length);
+        return adjacent.length;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return true;
+    }
+}
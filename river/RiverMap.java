@@ -0,0 +1,406 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, RiverMap class. The layout of a map: which cells hold river (any number of rivers,
+ * straight, meandering or branching) and everything derived from that, computed once when the map is built. Every
+ * other cell is a land tile, numbered row by row. The map keeps the tile index <-> (row, col) mapping, a bitmap of
+ * the flood-adjacent tiles (next to a river cell) with their list, and each tile's distance to the nearest river up
+ * to MAX_FLOOD_DISTANCE, so a flood never has to look at the shape of the rivers. A RiverMap never changes once built.
+ */
+
+import java.util.Arrays;
+
+public class RiverMap {
+    public static final int MAX_FLOOD_DISTANCE = 8;
+
+    private final int mapCols;
+    private final int rows;
+    private final long[] river;
+    private final boolean straight;
+    private final boolean[] riverColumn;
+    private final int[] tileCell;
+    private final int[] cellTile;
+    private final long[] floodAdjacent;
+    private final int[] floodAdjacentTiles;
+    private final byte[] riverDistance;
+    private final int[] nearRiverTiles;
+
+    /*
+     * Description: builds a map from its river bitmap, deriving the tile numbering and the flood structures
+     * Parameters: mapCols - the number of map columns
+     *             rows - the number of map rows
+     *             river - one bit per cell (row * mapCols + col) set for river cells, kept by the map
+     */
+    private RiverMap(int mapCols, int rows, long[] river) {
+        this.mapCols = mapCols;
+        this.rows = rows;
+        this.river = river;
+        int cells = Math.multiplyExact(mapCols, rows);
+
+        // number the land cells row by row, and note the columns that are river in every row
+        int riverCells = 0;
+        for (long word : river) {
+            riverCells += Long.bitCount(word);
+        }
+        tileCell = new int[cells - riverCells];
+        cellTile = new int[cells];
+        int[] riverPerColumn = new int[mapCols];
+        int tile = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (isRiverCell(cell)) {
+                cellTile[cell] = -1;
+                riverPerColumn[cell % mapCols]++;
+            } else {
+                cellTile[cell] = tile;
+                tileCell[tile++] = cell;
+            }
+        }
+        riverColumn = new boolean[mapCols];
+        for (int col = 0; col < mapCols; col++) {
+            riverColumn[col] = rows > 0 && riverPerColumn[col] == rows;
+        }
+        straight = riverCells == rows && (rows == 0 || riverColumn[mapCols / 2]);
+
+        // find each tile's distance to a river, breadth first from the river cells
+        riverDistance = new byte[tileCell.length];
+        int[] queue = new int[64];
+        int queued = 0;
+        for (int w = 0; w < river.length; w++) {
+            for (long word = river[w]; word != 0; word &= word - 1) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+                queue = ensureRoom(queue, queued);
+                queued = visitNeighbours(cell, 1, queue, queued);
+            }
+        }
+        for (int next = 0; next < queued; next++) {
+            int from = queue[next];
+            int distance = riverDistance[from] + 1;
+            if (distance <= MAX_FLOOD_DISTANCE) {
+                queue = ensureRoom(queue, queued);
+                queued = visitNeighbours(tileCell[from], distance, queue, queued);
+            }
+        }
+
+        // list the near tiles in tile order, and keep the adjacent ones as a bitmap too
+        Arrays.sort(queue, 0, queued);
+        nearRiverTiles = Arrays.copyOf(queue, queued);
+        floodAdjacent = new long[(tileCell.length + 63) >> 6];
+        int adjacent = 0;
+        for (int t : nearRiverTiles) {
+            if (riverDistance[t] == 1) {
+                floodAdjacent[t >> 6] |= 1L << t;
+                adjacent++;
+            }
+        }
+        floodAdjacentTiles = new int[adjacent];
+        int next = 0;
+        for (int t : nearRiverTiles) {
+            if (riverDistance[t] == 1)
+                floodAdjacentTiles[next++] = t;
+        }
+    }
+
+    /*
+     * Description: grows the breadth first queue if it can't take another cell's four neighbours
+     * Parameters: queue - the queue
+     *             queued - the number of tiles queued so far
+     * Returns: the queue, with room for four more tiles
+     */
+    private static int[] ensureRoom(int[] queue, int queued) {
+        if (queued + 4 > queue.length)
+            return Arrays.copyOf(queue, queue.length * 2);
+        return queue;
+    }
+
+    /*
+     * Description: gives the unvisited land neighbours (up, down, left, right) of a cell a distance and queues them
+     * Parameters: cell - the cell
+     *             distance - the distance for its neighbours
+     *             queue - the breadth first queue, with room for four more tiles
+     *             queued - the number of tiles queued so far
+     * Returns: the number of tiles queued now
+     */
+    private int visitNeighbours(int cell, int distance, int[] queue, int queued) {
+        int row = cell / mapCols;
+        int col = cell % mapCols;
+        int[] neighbours = {
+                row > 0 ? cell - mapCols : -1,
+                row < rows - 1 ? cell + mapCols : -1,
+                col > 0 ? cell - 1 : -1,
+                col < mapCols - 1 ? cell + 1 : -1
+        };
+        for (int neighbour : neighbours) {
+            if (neighbour < 0)
+                continue;
+            int t = cellTile[neighbour];
+            if (t < 0 || riverDistance[t] != 0)
+                continue;
+            riverDistance[t] = (byte) distance;
+            queue[queued++] = t;
+        }
+        return queued;
+    }
+
+    /*
+     * Description: builds the original map, one straight river down the middle column
+     * Parameters: mapCols - the number of map columns, including the river
+     *             rows - the number of map rows
+     * Returns: the map
+     */
+    public static RiverMap straight(int mapCols, int rows) {
+        return new Builder(mapCols, rows).addColumn(mapCols / 2).build();
+    }
+
+    /*
+     * Description: getter for the number of map columns
+     * Returns: mapCols
+     */
+    public int getMapCols() {
+        return mapCols;
+    }
+
+    /*
+     * Description: getter for the number of map rows
+     * Returns: rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /*
+     * Description: getter for the number of land tiles
+     * Returns: the number of cells that aren't river
+     */
+    public int getTileCount() {
+        return tileCell.length;
+    }
+
+    /*
+     * Description: tells whether this is the original map, one straight river down the middle column
+     * Returns: straight
+     */
+    public boolean isStraight() {
+        return straight;
+    }
+
+    /*
+     * Description: checks whether a map cell holds river
+     * Parameters: col - the map column
+     *             row - the map row
+     * Returns: true if the cell is river (cells off the map are not)
+     */
+    public boolean isRiver(int col, int row) {
+        return col >= 0 && col < mapCols && row >= 0 && row < rows && isRiverCell(row * mapCols + col);
+    }
+
+    /*
+     * Description: checks whether a whole map column is river (drawn narrower by the grid view)
+     * Parameters: col - the map column
+     * Returns: true if every row has river in that column
+     */
+    public boolean isRiverColumn(int col) {
+        return riverColumn[col];
+    }
+
+    /*
+     * Description: gets the tile at a map cell
+     * Parameters: col - the map column
+     *             row - the map row
+     * Returns: the tile index, or -1 if the cell is river or off the map
+     */
+    public int getTileIndexAt(int col, int row) {
+        if (col < 0 || col >= mapCols || row < 0 || row >= rows)
+            return -1;
+        return cellTile[row * mapCols + col];
+    }
+
+    /*
+     * Description: gets the map row of a tile
+     * Parameters: index - the tile index
+     * Returns: the map row
+     */
+    public int getRow(int index) {
+        return tileCell[index] / mapCols;
+    }
+
+    /*
+     * Description: gets the map column of a tile
+     * Parameters: index - the tile index
+     * Returns: the map column
+     */
+    public int getCol(int index) {
+        return tileCell[index] % mapCols;
+    }
+
+    /*
+     * Description: checks whether a tile is next to a river (up, down, left or right), using the bitmap
+     * Parameters: index - the tile index
+     * Returns: true if the tile floods with the river banks
+     */
+    public boolean isFloodAdjacent(int index) {
+        return (floodAdjacent[index >> 6] & (1L << index)) != 0;
+    }
+
+    /*
+     * Description: getter for the flood-adjacent tiles in tile order (row by row)
+     * Returns: the tile indexes, which must not be changed
+     */
+    int[] getFloodAdjacentTiles() {
+        return floodAdjacentTiles;
+    }
+
+    /*
+     * Description: getter for the tiles within MAX_FLOOD_DISTANCE of a river in tile order (row by row)
+     * Returns: the tile indexes, which must not be changed
+     */
+    int[] getNearRiverTiles() {
+        return nearRiverTiles;
+    }
+
+    /*
+     * Description: gets a tile's distance to the nearest river, counted in steps up, down, left or right
+     * Parameters: index - the tile index
+     * Returns: the distance (1 for flood-adjacent tiles), or 0 if it is farther than MAX_FLOOD_DISTANCE
+     */
+    public int getRiverDistance(int index) {
+        return riverDistance[index];
+    }
+
+    /*
+     * Description: getter for the river bitmap, one bit per cell (row * mapCols + col)
+     * Returns: the bitmap, which must not be changed
+     */
+    long[] getRiverBits() {
+        return river;
+    }
+
+    /*
+     * Description: builds a map from a saved river bitmap (see SnapshotIO)
+     * Parameters: mapCols - the number of map columns
+     *             rows - the number of map rows
+     *             river - one bit per cell, set for river cells
+     * Returns: the map
+     */
+    static RiverMap fromBits(int mapCols, int rows, long[] river) {
+        checkSize(mapCols, rows);
+        if (river.length != wordsFor(mapCols, rows)) {
+            throw new IllegalArgumentException("River bitmap doesn't fit a " + mapCols + "x" + rows + " map");
+        }
+        return new RiverMap(mapCols, rows, river.clone());
+    }
+
+    /*
+     * Description: checks whether a cell's river bit is set
+     */
+    private boolean isRiverCell(int cell) {
+        return (river[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    /*
+     * Description: checks a map size
+     */
+    private static void checkSize(int mapCols, int rows) {
+        if (mapCols < 1 || rows < 0) {
+            throw new IllegalArgumentException("Bad map size: " + mapCols + "x" + rows);
+        }
+    }
+
+    /*
+     * Description: gets the number of longs in a bitmap of every cell
+     */
+    private static int wordsFor(int mapCols, int rows) {
+        return (Math.multiplyExact(mapCols, rows) + 63) >> 6;
+    }
+
+    /*
+     * Description: draws rivers onto an empty map, then builds the RiverMap
+     */
+    public static class Builder {
+        private final int mapCols;
+        private final int rows;
+        private final long[] river;
+
+        /*
+         * Description: starts a map of the given size with no river
+         * Parameters: mapCols - the number of map columns
+         *             rows - the number of map rows
+         */
+        public Builder(int mapCols, int rows) {
+            checkSize(mapCols, rows);
+            this.mapCols = mapCols;
+            this.rows = rows;
+            river = new long[wordsFor(mapCols, rows)];
+        }
+
+        /*
+         * Description: adds a straight river down a whole column
+         * Parameters: col - the map column
+         * Returns: this builder
+         */
+        public Builder addColumn(int col) {
+            for (int row = 0; row < rows; row++) {
+                addCell(col, row);
+            }
+            return this;
+        }
+
+        /*
+         * Description: adds a river running through a list of points, joined by 4-connected lines (a river cell
+         * always touches the next one by an edge, so a path never leaks a diagonal gap). Tributaries are paths that
+         * end on another river.
+         * Parameters: points - col, row pairs
+         * Returns: this builder
+         */
+        public Builder addPath(int... points) {
+            if (points.length < 2 || points.length % 2 != 0) {
+                throw new IllegalArgumentException("A river path needs col, row pairs");
+            }
+            addCell(points[0], points[1]);
+            for (int p = 2; p < points.length; p += 2) {
+                int col = points[p - 2];
+                int row = points[p - 1];
+                int dx = Math.abs(points[p] - col);
+                int dy = Math.abs(points[p + 1] - row);
+                int stepX = Integer.signum(points[p] - col);
+                int stepY = Integer.signum(points[p + 1] - row);
+
+                // step sideways or down, whichever keeps closer to the straight line
+                for (int ix = 0, iy = 0; ix < dx || iy < dy; ) {
+                    if ((long) (1 + 2 * ix) * dy < (long) (1 + 2 * iy) * dx) {
+                        col += stepX;
+                        ix++;
+                    } else {
+                        row += stepY;
+                        iy++;
+                    }
+                    addCell(col, row);
+                }
+            }
+            return this;
+        }
+
+        /*
+         * Description: adds one river cell
+         * Parameters: col - the map column
+         *             row - the map row
+         * Returns: this builder
+         */
+        public Builder addCell(int col, int row) {
+            if (col < 0 || col >= mapCols || row < 0 || row >= rows) {
+                throw new IllegalArgumentException("River cell " + col + "," + row + " is off the map");
+            }
+            int cell = row * mapCols + col;
+            river[cell >> 6] |= 1L << cell;
+            return this;
+        }
+
+        /*
+         * Description: builds the map and everything derived from its rivers
+         * Returns: the map
+         */
+        public RiverMap build() {
+            return new RiverMap(mapCols, rows, river.clone());
+        }
+    }
+}
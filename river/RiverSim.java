@@ -3,41 +3,492 @@ package johnson_noah.river;
 /*
  * Author: Noah Johnson
  * Description: JavaFx project, RiverSim class. This is the heart of the logic for the river simulator.
+ *
+ * Thread safety: the tiles are split into stripes (see TileStore) with a lock each. placeLand and replaceTile on a
+ * single tile only take that tile's stripe lock, so many threads can place land at once. Everything that touches the
+ * whole map (the month steps, batch placements, selection, resizing, loading and restoring versions) takes every
+ * stripe lock, so each single-tile placement happens entirely before or entirely after it. The funds (kept by the
+ * Ledger) and the direct filled adjustments are LongAdder counters, which addToFunds and addToFilled change without
+ * any lock. lockAll gives a caller the same exclusive access for a group of calls or a consistent read of several
+ * values.
+ *
+ * Listeners are called on the thread making the change. The batch listener is called with every stripe lock held, or
+ * for a single-tile placement with the tile's stripe lock held and its change set locked, so its calls never overlap;
+ * SimEventListeners may be called from several placing threads at once. Tile views and their property events belong
+ * to the JavaFX thread, so placing from other threads needs the batch listener (or no view at all).
  */
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class RiverSim {
+    static final int MONTHS_PER_YEAR = 13;
+
     private int currentMonth = 1;
     private int currentYear = 0;
-    private int funds;
-    private int filled = 0;
-    private ArrayList<Tile> tiles = new ArrayList<>();
+    private volatile Ledger ledger = new Ledger(Ledger.month(0, 1), 0);
+    private final LongAdder externalFilled = new LongAdder();
+    private final ReentrantLock[] stripeLocks = newStripeLocks();
+    private RiverMap riverMap = RiverMap.straight(1, 0);
+    private FloodModel floodModel = new RiverBankFloodModel();
+    private int[] floodTiles = new int[0];
+    private TileStore store = new TileStore(0);
+    private Tile[] tiles;
+    private TileChangeListener changeListener;
+    private TileChanges changes;
+    private int batchDepth = 0;
+    private int selectedIndex = -1;
+    private final List<SimEventListener> eventListeners = new CopyOnWriteArrayList<>();
+
+    /*
+     * Description: default constructor, the tiles are created later by the view (or by createTiles)
+     */
+    public RiverSim() {
+    }
+
+    /*
+     * Description: constructor for a headless simulation, builds the tiles without any view attached
+     * Parameters: mapCols - the number of columns on the map, including the river
+     *             mapRows - the number of rows on the map
+     */
+    public RiverSim(int mapCols, int mapRows) {
+        createTiles(mapCols, mapRows);
+    }
+
+    /*
+     * Description: constructor for a headless simulation on a map with any rivers
+     * Parameters: riverMap - the map layout
+     */
+    public RiverSim(RiverMap riverMap) {
+        createTiles(riverMap);
+    }
+
+    /*
+     * Description: creates the stripe locks, one for each stripe of the tile store
+     * Returns: the locks
+     */
+    private static ReentrantLock[] newStripeLocks() {
+        ReentrantLock[] locks = new ReentrantLock[TileStore.STRIPES];
+        for (int s = 0; s < locks.length; s++) {
+            locks[s] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /*
+     * Description: takes every stripe lock, waiting for the single-tile placements in progress to finish, which gives
+     * the calling thread exclusive access to the simulation until unlockAll. The locks are reentrant, so the
+     * simulation's methods can still be called while holding them. Must not be called while holding a single
+     * stripe (from a listener of a single-tile placement).
+     */
+    public void lockAll() {
+        for (ReentrantLock lock : stripeLocks) {
+            lock.lock();
+        }
+    }
 
+    /*
+     * Description: releases the locks taken by lockAll
+     */
+    public void unlockAll() {
+        for (int s = stripeLocks.length - 1; s >= 0; s--) {
+            stripeLocks[s].unlock();
+        }
+    }
 
     /*
-     * Description: adds (or subtracts if a negative integer is passed in) to the current funds balance
+     * Description: adds (or subtracts if a negative integer is passed in) to the current funds balance, safe to call
+     * from any thread
      * Parameters: amount - the amount to be added to the current funds
      */
-    public void addToFunds(int amount) {
-        funds += amount;
+    public void addToFunds(long amount) {
+        changeFunds(Ledger.EXTERNAL, amount, SimEventListener.FUNDS_EXTERNAL);
     }
 
     /*
-     * Description: adds a new tile to the tiles arrayList
-     * Parameters: tile - the new tile to be added to the arrayList
+     * Description: changes the funds, recording the change in the ledger, and tells the event listeners why
+     * Parameters: type - the land type the change is for, or Ledger.EXTERNAL
+     *             amount - the amount to add, negative for a cost
+     *             reason - one of the SimEventListener FUNDS_ reasons
      */
-    public void addTile(Tile tile) {
-        this.tiles.add(tile);
+    private void changeFunds(byte type, long amount, int reason) {
+        if (amount < 0)
+            ledger.addCost(type, -amount);
+        else
+            ledger.addRevenue(type, amount);
+        reportFunds(amount, reason);
     }
 
     /*
-     * Description: clears the tiles currently in the arrayList
+     * Description: tells the event listeners the funds changed
+     * Parameters: amount - the amount added
+     *             reason - one of the SimEventListener FUNDS_ reasons
+     */
+    private void reportFunds(long amount, int reason) {
+        for (SimEventListener listener : eventListeners)
+            listener.fundsChanged(amount, reason);
+    }
+
+    /*
+     * Description: changes the filled count and tells the event listeners. The count follows the land statistics, so
+     * only a direct change is stored (as an adjustment on top of them).
+     * Parameters: delta - the change in filled tiles
+     *             external - true for a direct addToFilled/resetFilled call
+     */
+    private void changeFilled(int delta, boolean external) {
+        if (external)
+            externalFilled.add(delta);
+        for (SimEventListener listener : eventListeners)
+            listener.filledChanged(delta, external);
+    }
+
+    /*
+     * Description: tells the event listeners how much land changes moved the filled count
+     * Parameters: filledBefore - the number of filled tiles before the changes
+     */
+    private void reportFilled(int filledBefore) {
+        int delta = store.stats.getFilled() - filledBefore;
+        if (delta != 0)
+            changeFilled(delta, false);
+    }
+
+    /*
+     * Description: adds a listener for model level events (see SimEventListener)
+     * Parameters: listener - the listener to add
+     */
+    public void addSimEventListener(SimEventListener listener) {
+        eventListeners.add(listener);
+    }
+
+    /*
+     * Description: removes a listener added by addSimEventListener
+     * Parameters: listener - the listener to remove
+     */
+    public void removeSimEventListener(SimEventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /*
+     * Description: clears the tiles currently in the store
      */
     public void clearTiles() {
-        tiles.clear();
+        lockAll();
+        try {
+            store = new TileStore(0);
+            tiles = null;
+            floodTiles = new int[0];
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: replaces the tiles with a fresh unused grid of the given map size. The map has a single river
+     * column in the middle, so the tile count is rows * (mapCols - 1). Observers can be attached to the tiles
+     * afterwards.
+     * Parameters: mapCols - the number of columns on the map, including the river
+     *             mapRows - the number of rows on the map
+     */
+    public void createTiles(int mapCols, int mapRows) {
+        createTiles(RiverMap.straight(mapCols, mapRows));
+    }
+
+    /*
+     * Description: replaces the tiles with a fresh unused grid on a map layout, one tile for every cell that isn't
+     * river
+     * Parameters: riverMap - the map layout
+     */
+    public void createTiles(RiverMap riverMap) {
+        lockAll();
+        try {
+            clearTiles();
+            externalFilled.reset();
+            setStore(riverMap, new TileStore(riverMap.getTileCount()));
+            for (SimEventListener listener : eventListeners)
+                listener.mapCreated(riverMap);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: resizes the map to a straight river map of a new size, keeping the land where the old and new maps
+     * overlap. The maps are lined up on their middle column, so each bank keeps its distance from the river: growing
+     * the map adds unused tiles around the edges, shrinking it drops the tiles past them. Tiles that land on the new
+     * river are dropped, and old river cells become unused tiles. The date, funds and tile values are kept.
+     * Parameters: mapCols - the new number of columns on the map, including the river
+     *             mapRows - the new number of rows on the map
+     */
+    public void resizeKeepingLand(int mapCols, int mapRows) {
+        lockAll();
+        try {
+            RiverMap oldMap = riverMap;
+            TileStore oldStore = store;
+            RiverMap newMap = RiverMap.straight(mapCols, mapRows);
+            TileStore newStore = new TileStore(newMap.getTileCount());
+            newStore.tick = oldStore.tick;
+
+            // copy each tile that has a tile in the same place on the old map
+            int shift = mapCols / 2 - oldMap.getMapCols() / 2;
+            for (int i = 0; i < newStore.size(); i++) {
+                int old = oldMap.getTileIndexAt(newMap.getCol(i) - shift, newMap.getRow(i));
+                if (old < 0) {
+                    newStore.ageStart[i] = newStore.tick;
+                    continue;
+                }
+                newStore.landType[i] = oldStore.landType[old];
+                newStore.ageStart[i] = oldStore.ageStart[old];
+                newStore.currentCost[i] = oldStore.currentCost[old];
+                newStore.currentRevenue[i] = oldStore.currentRevenue[old];
+                newStore.lastChangedMonth[i] = oldStore.lastChangedMonth[old];
+                newStore.lastChangedYear[i] = oldStore.lastChangedYear[old];
+                newStore.totalCost[i] = oldStore.totalCost[old];
+                newStore.totalRevenue[i] = oldStore.totalRevenue[old];
+            }
+            newStore.rebuildIndex();
+
+            // the filled count follows the kept land, direct changes to it are kept
+            int filledBefore = getFilled();
+            tiles = null;
+            setStore(newMap, newStore);
+            int delta = getFilled() - filledBefore;
+            for (SimEventListener listener : eventListeners) {
+                listener.mapResized(newMap);
+                if (delta != 0)
+                    listener.filledChanged(delta, false);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: replaces the whole simulation state with a saved one (see SnapshotIO), the tiles are used as they
+     * are instead of being replayed through replaceTile
+     * Parameters: riverMap - the map layout
+     *             month - the current month
+     *             year - the current year
+     *             ledger - the funds history, with the current month open
+     *             filled - the number of filled tiles
+     *             store - the restored tiles, with a slot for every tile of the map
+     */
+    void restore(RiverMap riverMap, int month, int year, Ledger ledger, int filled, TileStore store) {
+        lockAll();
+        try {
+            currentMonth = month;
+            currentYear = year;
+            this.ledger = ledger;
+            tiles = null;
+            setStore(riverMap, store);
+            externalFilled.reset();
+            externalFilled.add(filled - store.stats.getFilled());
+            for (SimEventListener listener : eventListeners)
+                listener.stateRestored();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: captures the simulation state as an immutable version (see WorldHistory). Only the chunks of tiles
+     * changed since the last capture or restore are copied, the others are shared with the version before.
+     * Parameters: label - what changed, shown when offering to undo it
+     * Returns: the version
+     */
+    WorldHistory.Version capture(String label) {
+        lockAll();
+        try {
+            int[] counts = new int[LandType.COUNT];
+            for (byte type = 0; type < LandType.COUNT; type++) {
+                counts[type] = store.stats.count(type);
+            }
+            return new WorldHistory.Version(label, riverMap, floodModel, currentMonth, currentYear, store.tick,
+                    ledger.share(), externalFilled.sum(), store.size(), store.capture(), counts);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: tells whether the simulation changed since a version was captured or restored (the version must
+     * be the last one captured or restored)
+     * Parameters: version - the version
+     * Returns: true if anything changed
+     */
+    boolean changedSince(WorldHistory.Version version) {
+        lockAll();
+        try {
+            return store.hasChanges() || version.riverMap != riverMap || version.tileCount != store.size()
+                    || version.month != currentMonth || version.year != currentYear
+                    || version.floodModel != floodModel || version.externalFilled != externalFilled.sum()
+                    || version.ledger.getBalance() != ledger.getBalance();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: restores a captured version. On the same map only the chunks of tiles that differ from the
+     * current ones are copied back, and the batch listener gets just the tiles that changed; a version of another map
+     * replaces the tiles like a loaded snapshot (the view has to be rebuilt).
+     * Parameters: version - the version (see capture)
+     * Returns: true if the map layout was replaced
+     */
+    boolean restore(WorldHistory.Version version) {
+        lockAll();
+        try {
+            beginChanges();
+            boolean sameMap = version.riverMap == riverMap && version.tileCount == store.size();
+            if (sameMap) {
+                store.restore(version.chunks, version.tick, changes);
+            } else {
+                tiles = null;
+                setStore(version.riverMap, new TileStore(version.chunks, version.tileCount, version.tick));
+            }
+            currentMonth = version.month;
+            currentYear = version.year;
+            ledger = version.ledger.share();
+            floodModel = version.floodModel;
+            externalFilled.reset();
+            externalFilled.add(version.externalFilled);
+            for (SimEventListener listener : eventListeners)
+                listener.stateRestored();
+            endChanges();
+            return !sameMap;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: installs a tile store for a map layout (the layout already holds everything derived from the
+     * rivers)
+     * Parameters: riverMap - the map layout
+     *             newStore - the tile store to use, with a slot for every tile of the map
+     */
+    private void setStore(RiverMap riverMap, TileStore newStore) {
+        selectedIndex = -1;
+        this.riverMap = riverMap;
+
+        // tile views are only created when someone asks for them
+        store = newStore;
+        floodTiles = new int[store.size()];
+        if (changeListener != null)
+            changes = new TileChanges(store.size());
     }
+
+    /*
+     * Description: switches to batched notifications. The tiles changed by each nextMonth, advance or placement are
+     * delivered to the listener in a single call, and tile views no longer fire land, cost and revenue events.
+     * Passing null switches back to per-tile property change events.
+     * Parameters: listener - the listener for batched changes, or null
+     */
+    public void setTileChangeListener(TileChangeListener listener) {
+        lockAll();
+        try {
+            changeListener = listener;
+            changes = listener != null ? new TileChanges(store.size()) : null;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: getter for the listener for batched changes
+     * Returns: changeListener, or null if the tile views get per-tile events
+     */
+    public TileChangeListener getTileChangeListener() {
+        return changeListener;
+    }
+
+    /*
+     * Description: starts collecting tile changes, calls can be nested
+     */
+    private void beginChanges() {
+        batchDepth++;
+    }
+
+    /*
+     * Description: finishes collecting tile changes, the outermost call delivers them to the batch listener
+     */
+    private void endChanges() {
+        batchDepth--;
+        if (batchDepth == 0 && changes != null && changes.size() > 0) {
+            changeListener.tilesChanged(changes);
+            changes.clear();
+        }
+    }
+
+    /*
+     * Description: getter for the map layout (where the rivers are, and where each tile is on the map)
+     * Returns: riverMap
+     */
+    public RiverMap getRiverMap() {
+        return riverMap;
+    }
+
+    /*
+     * Description: sets the model that decides which tiles flood each year (the river banks by default)
+     * Parameters: floodModel - the flood model
+     */
+    public void setFloodModel(FloodModel floodModel) {
+        lockAll();
+        try {
+            this.floodModel = Objects.requireNonNull(floodModel);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: getter for the flood model
+     * Returns: floodModel
+     */
+    public FloodModel getFloodModel() {
+        return floodModel;
+    }
+
+    /*
+     * Description: works out when each tile next floods without stepping there, by asking the flood model about each
+     * coming year's month 3 (a model only looks at the map and the year, see FloodModel). A periodic model floods the
+     * same tiles every year, so only the first year is asked.
+     * Parameters: months - how many months ahead to look
+     * Returns: for each tile the number of months until it floods, or Integer.MAX_VALUE if it doesn't flood within
+     *          months
+     */
+    int[] monthsUntilFlood(int months) {
+        lockAll();
+        try {
+            int[] until = new int[store.size()];
+            Arrays.fill(until, Integer.MAX_VALUE);
+            int[] flooded = new int[store.size()];
+
+            // a simulation sitting in month 3 of each year for the model to look at
+            RiverSim probe = new RiverSim();
+            probe.riverMap = riverMap;
+            probe.currentMonth = 3;
+            int first = Math.floorMod(3 - currentMonth - 1, MONTHS_PER_YEAR) + 1;
+            for (long step = first; step <= months; step += MONTHS_PER_YEAR) {
+                probe.currentYear = (int) ((currentYear * (long) MONTHS_PER_YEAR + currentMonth + step)
+                        / MONTHS_PER_YEAR);
+                int count = floodModel.floodedTiles(probe, flooded);
+                for (int k = 0; k < count; k++) {
+                    if (until[flooded[k]] == Integer.MAX_VALUE)
+                        until[flooded[k]] = (int) step;
+                }
+                if (floodModel.isPeriodic())
+                    break;
+            }
+            return until;
+        } finally {
+            unlockAll();
+        }
+    }
+
     /*
      * Description: getter for the private variable currentMonth
      * Returns - the current month
@@ -55,147 +506,593 @@ public class RiverSim {
     }
 
     /*
-     * Description: getter for the private variable filled
+     * Description: getter for the number of map rows
+     * Returns: rows
+     */
+    public int getRows() {
+        return riverMap.getRows();
+    }
+
+    /*
+     * Description: getter for the number of map columns (the river is counted)
+     * Returns: mapCols
+     */
+    public int getMapCols() {
+        return riverMap.getMapCols();
+    }
+
+    /*
+     * Description: gets the tile at a map cell
+     * Parameters: mapCol - the map column
+     *             mapRow - the map row
+     * Returns: the tile index, or -1 if the cell is river or off the map
+     */
+    public int getTileIndexAt(int mapCol, int mapRow) {
+        return riverMap.getTileIndexAt(mapCol, mapRow);
+    }
+
+    /*
+     * Description: getter for the number of tiles in the simulation
+     * Returns: the number of tiles
+     */
+    public int getTileCount() {
+        return store.size();
+    }
+
+    /*
+     * Description: getter for the number of filled (agriculture and recreation) tiles, plus any direct changes made
+     * through addToFilled
+     * Returns: the number of filled tiles
      */
     public int getFilled() {
-        return filled;
+        return store.stats.getFilled() + (int) externalFilled.sum();
     }
 
     /*
-     * Description: mutation for private variable filled
+     * Description: getter for the aggregate land statistics (counts per land type, mature agriculture, projected
+     * cost and revenue), which are kept up to date as the simulation runs
+     * Returns: the statistics
+     */
+    public LandStats getStats() {
+        return store.stats;
+    }
+
+    /*
+     * Description: mutation for private variable filled, safe to call from any thread
      */
     public void addToFilled(int value) {
-        filled += value;
+        changeFilled(value, true);
     }
 
     /*
-     * Description: getter for the private variable funds
+     * Description: getter for the funds balance, which the ledger derives from every cost and revenue so far
      * Returns - funds
      */
-    public int getFunds() {
-        return funds;
+    public long getFunds() {
+        return ledger.getBalance();
+    }
+
+    /*
+     * Description: getter for the ledger of every cost and revenue by month and land type. Read it holding lockAll
+     * (or while nothing else changes the simulation).
+     * Returns: ledger
+     */
+    public Ledger getLedger() {
+        return ledger;
     }
 
     /*
-     * Description: getter for the private arrayList of tiles
+     * Description: getter for the tile view at an index. Tile views are created on first use, so a headless run over
+     * a large grid never allocates them.
      * Parameters: index - the index of the tile to return
      * Returns: the tile at the specified index
      */
     public Tile getTile(int index) {
-        return tiles.get(index);
+        if (tiles == null) {
+            tiles = new Tile[store.size()];
+        }
+        if (tiles[index] == null) {
+            tiles[index] = new Tile(store, index);
+        }
+        return tiles[index];
+    }
+
+    /*
+     * Description: getter for the tile store backing this simulation
+     * Returns: store
+     */
+    TileStore getStore() {
+        return store;
+    }
+
+    /*
+     * Description: makes a detached copy of the simulation state (no tiles, views or listeners), which can be read or
+     * stepped on another thread while this simulation keeps going
+     * Returns: the copy
+     */
+    RiverSim copy() {
+        lockAll();
+        try {
+            RiverSim copy = new RiverSim();
+            copy.floodModel = floodModel;
+            copy.restore(riverMap, currentMonth, currentYear, new Ledger(ledger), getFilled(), new TileStore(store));
+            return copy;
+        } finally {
+            unlockAll();
+        }
     }
 
     /*
-     * Description: the logic for the next month button. Adds appropriate funds and invokes the flood when appropriate
+     * Description: the logic for the next month button. Adds appropriate funds and invokes the flood when appropriate.
+     * The month is stepped holding every stripe lock, so placements from other threads happen before or after it.
      */
     public void nextMonth() {
+        lockAll();
+        try {
+            beginChanges();
+            stepMonth();
+            endChanges();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: advances one month (see nextMonth), without delivering the batched changes
+     */
+    private void stepMonth() {
+        long start = Metrics.start();
+        long time = start;
 
         // increment current month and loop if a year is finishing
         currentMonth++;
-        if (currentMonth % 13 == 0) {
+        if (currentMonth % MONTHS_PER_YEAR == 0) {
             currentMonth = 0;
             currentYear++;
         }
+        ledger.endMonth();
 
-        // reset current revenue and cost for each tile
-        for (Tile tile : tiles) {
-            tile.getLandArea().age++;
-            tile.setCurrentRevenue(0);
-            tile.setCurrentCost(0);
+        // age every tile (ages are derived from the store's month count)
+        store.advanceTick(1);
+
+        // reset current revenue and cost, only tiles that were charged or paid have anything to reset
+        int reset = 0;
+        for (int s = 0; s < TileStore.STRIPES; s++) {
+            reset += store.chargedCount(s);
+            resetStripe(s);
         }
+        store.clearCharged();
+        time = Metrics.lap(Metrics.RESET, time, reset);
 
         // handle flood in month 3
         if (currentMonth == 3) {
-            int rows;
-            int cols;
 
-            // set rows and columns for 5x3 grid
-            if(tiles.size() == 12) {
-                rows = 3;
-                cols = 4;
+            // set flooded tiles chosen by the flood model (next to the river by default)
+            int count = floodModel.floodedTiles(this, floodTiles);
+            for (int k = 0; k < count; k++) {
+                flood(floodTiles[k]);
             }
+            time = Metrics.lap(Metrics.FLOOD, time, count);
+        }
 
-            // set rows and columns for 7x5 grid
-            else if (tiles.size() == 30) {
-                rows = 5;
-                cols = 6;
+        // handle flood tiles becoming unused tiles in month 4 (walk backwards, each tile leaves the flooded list)
+        if (currentMonth == 4) {
+            int flooded = store.index.count(LandType.FLOODED);
+            for (int s = 0; s < TileStore.STRIPES; s++) {
+                unfloodStripe(s);
             }
+            time = Metrics.lap(Metrics.UNFLOOD, time, flooded);
+        }
 
-            // set rows and columns for 9x7 grid
-            else {
-                rows = 7;
-                cols = 8;
+        // apply this month's land type costs and revenues (agriculture costs in month 5, harvests in month 10 and
+        // recreation revenue in month 12, plus any added land types, see LandType)
+        for (LandType.Rule rule : LandType.rules(currentMonth)) {
+            int applied = 0;
+            for (int s = 0; s < TileStore.STRIPES; s++) {
+                applied += rule.revenue ? payStripe(s, rule) : chargeStripe(s, rule);
             }
+            if (applied > 0)
+                changeFunds(rule.type, (rule.revenue ? 1L : -1L) * rule.amount * applied, rule.reason);
+            time = Metrics.lap(rule.phase, time, applied);
+        }
 
-            // set flooded tiles next to the river
-            for (int i = 0; i < rows; i++) {
+        for (SimEventListener listener : eventListeners)
+            listener.monthAdvanced(currentMonth, currentYear);
+        Metrics.lap(Metrics.MONTH, start, 1);
+    }
 
-                // decrement filled for flooded tiles that were filled
-                if(!Objects.equals(tiles.get((i * cols) + (cols / 2) - 1).getLandArea().abbreviation, "-U-")) {
-                    addToFilled(-1);
-                }
-                tiles.get((i * cols) + (cols / 2) - 1).setLandType("-F-");
-                tiles.get((i * cols) + (cols / 2) - 1).getLandArea().lastChangedMonth = currentMonth;
-                tiles.get((i * cols) + (cols / 2) - 1).getLandArea().lastChangedYear = currentYear;
-                tiles.get((i * cols) + (cols / 2) - 1).getLandArea().age = 0;
+    /*
+     * Description: resets the current revenue and cost of a stripe's charged tiles (each monthly phase works one
+     * stripe at a time, which keeps the loops small enough to compile well)
+     * Parameters: stripe - the stripe
+     */
+    private void resetStripe(int stripe) {
+        int[] charged = store.charged(stripe);
+        int count = store.chargedCount(stripe);
+        for (int k = 0; k < count; k++) {
+            int i = charged[k];
+            if (store.currentRevenue[i] != 0)
+                setCurrentRevenue(i, 0);
+            if (store.currentCost[i] != 0)
+                setCurrentCost(i, 0);
+        }
+    }
 
-                if(!Objects.equals(tiles.get((i * cols) + (cols / 2)).getLandArea().abbreviation, "-U-")) {
-                    addToFilled(-1);
-                }
-                tiles.get((i * cols) + (cols / 2)).setLandType("-F-");
-                tiles.get((i * cols) + (cols / 2)).getLandArea().lastChangedMonth = currentMonth;
-                tiles.get((i * cols) + (cols / 2)).getLandArea().lastChangedYear = currentYear;
-                tiles.get((i * cols) + (cols / 2)).getLandArea().age = 0;
+    /*
+     * Description: turns a stripe's flooded tiles back into unused tiles (walking backwards, each tile leaves the
+     * flooded list)
+     * Parameters: stripe - the stripe
+     */
+    private void unfloodStripe(int stripe) {
+        int[] flooded = store.index.members(stripe, LandType.FLOODED);
+        for (int k = store.index.count(stripe, LandType.FLOODED) - 1; k >= 0; k--) {
+            int index = flooded[k];
+            setLandType(index, LandType.UNUSED);
+            for (SimEventListener listener : eventListeners)
+                listener.tileUnflooded(index);
+        }
+    }
+
+    /*
+     * Description: charges a cost rule's current cost to the tiles of its land type in a stripe that are old enough
+     * Parameters: stripe - the stripe
+     *             rule - the cost rule
+     * Returns: the number of tiles charged
+     */
+    private int chargeStripe(int stripe, LandType.Rule rule) {
+        int[] members = store.index.members(stripe, rule.type);
+        int count = store.index.count(stripe, rule.type);
+        int charged = 0;
+        for (int k = 0; k < count; k++) {
+            if (rule.minAge == 0 || store.age(members[k]) >= rule.minAge) {
+                charged++;
+                setCurrentCost(members[k], rule.amount);
             }
         }
+        return charged;
+    }
 
-        // handle flood tiles becoming unused tiles in month 4
-        if (currentMonth == 4) {
-            for (Tile tile : tiles) {
-                if (Objects.equals(tile.getLandArea().abbreviation, "-F-")) {
-                    tile.setLandType("-U-");
-                }
+    /*
+     * Description: pays a revenue rule's current revenue to the tiles of its land type in a stripe that are old
+     * enough (agriculture is harvested once it has matured)
+     * Parameters: stripe - the stripe
+     *             rule - the revenue rule
+     * Returns: the number of tiles paid
+     */
+    private int payStripe(int stripe, LandType.Rule rule) {
+        int[] members = store.index.members(stripe, rule.type);
+        int count = store.index.count(stripe, rule.type);
+        int paid = 0;
+        for (int k = 0; k < count; k++) {
+            if (rule.minAge == 0 || store.age(members[k]) >= rule.minAge) {
+                paid++;
+                setCurrentRevenue(members[k], rule.amount);
             }
         }
+        return paid;
+    }
 
-        // handle agriculture costs in month 5
-        if (currentMonth == 5) {
-            for (Tile tile : tiles) {
-                if (tile.getLandArea() instanceof Agriculture) {
-                    addToFunds(-50);
-                    tile.setCurrentCost(50);
-                }
+    /*
+     * Description: floods a tile next to the river, emptying it (filled tiles are no longer counted)
+     * Parameters: index - the index of the tile to flood
+     */
+    private void flood(int index) {
+        int filledBefore = store.stats.getFilled();
+        setLandType(index, LandType.FLOODED);
+        reportFilled(filledBefore);
+        store.setLastChanged(index, currentMonth, currentYear);
+        for (SimEventListener listener : eventListeners)
+            listener.tileFlooded(index);
+    }
+
+    /*
+     * Description: sets a tile's land type, marking it for the batch listener when batching, otherwise going
+     * through the tile view (and its observers) if one exists
+     * Parameters: index - the tile index
+     *             code - the new land type code
+     */
+    private void setLandType(int index, byte code) {
+        if (changes != null) {
+            store.setLand(index, code);
+            changes.mark(index, TileChangeListener.LAND | TileChangeListener.COST | TileChangeListener.REVENUE);
+        } else if (tiles != null && tiles[index] != null) {
+            tiles[index].setLandType(code);
+        } else {
+            store.setLand(index, code);
+        }
+    }
+
+    /*
+     * Description: sets a tile's current cost, marking it for the batch listener when batching, otherwise going
+     * through the tile view (and its observers) if one exists
+     * Parameters: index - the tile index
+     *             cost - the new current cost
+     */
+    private void setCurrentCost(int index, int cost) {
+        if (changes != null) {
+            store.setCurrentCost(index, cost);
+            changes.mark(index, TileChangeListener.COST);
+        } else if (tiles != null && tiles[index] != null) {
+            tiles[index].setCurrentCost(cost);
+        } else {
+            store.setCurrentCost(index, cost);
+        }
+    }
+
+    /*
+     * Description: sets a tile's current revenue, marking it for the batch listener when batching, otherwise going
+     * through the tile view (and its observers) if one exists
+     * Parameters: index - the tile index
+     *             revenue - the new current revenue
+     */
+    private void setCurrentRevenue(int index, int revenue) {
+        if (changes != null) {
+            store.setCurrentRevenue(index, revenue);
+            changes.mark(index, TileChangeListener.REVENUE);
+        } else if (tiles != null && tiles[index] != null) {
+            tiles[index].setCurrentRevenue(revenue);
+        } else {
+            store.setCurrentRevenue(index, revenue);
+        }
+    }
+
+    /*
+     * Description: advances the simulation by several months, one month at a time
+     * Parameters: months - the number of months to advance
+     */
+    public void nextMonths(int months) {
+        lockAll();
+        try {
+            beginChanges();
+            for (int i = 0; i < months; i++) {
+                stepMonth();
+            }
+            endChanges();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: advances the simulation by several months with the same result as calling nextMonth that many
+     * times, but in O(developed tiles) instead of O(developed tiles * months). After one full year every tile the
+     * flood model floods has flooded and every agriculture tile is past age 3, so if the floods repeat each later year
+     * repeats exactly and whole years can be applied at once. Floods that change from year to year are stepped.
+     * The year stepped after that first one is itself a repeating year (the first one's months before its flood still
+     * have the land the flood destroys), so listeners can take the skipped months from it (see TelemetryExporter).
+     * Parameters: months - the number of months to advance
+     */
+    public void advance(int months) {
+        lockAll();
+        try {
+            // short runs are cheaper to step, and years only repeat if the floods do
+            if (months < 3 * MONTHS_PER_YEAR || !floodModel.isPeriodic()) {
+                nextMonths(months);
+                return;
             }
+
+            // step a year to reach the repeating cycle and a year of it, jump the whole years, then step what's left
+            beginChanges();
+            nextMonths(2 * MONTHS_PER_YEAR);
+            int remaining = months - 2 * MONTHS_PER_YEAR;
+            skipSteadyYears(remaining / MONTHS_PER_YEAR);
+            nextMonths(remaining % MONTHS_PER_YEAR);
+            endChanges();
+        } finally {
+            unlockAll();
         }
+    }
 
-        // handle agriculture revenue in month 10
-        if (currentMonth == 10) {
-            for (Tile tile : tiles) {
-                if (tile.getLandArea() instanceof Agriculture && tile.getLandArea().age > 3) {
-                    addToFunds(65);
-                    tile.setCurrentRevenue(65);
+    /*
+     * Description: advances the simulation by whole years (see advance)
+     * Parameters: years - the number of years to advance
+     */
+    public void skipYears(int years) {
+        advance(Math.multiplyExact(years, MONTHS_PER_YEAR));
+    }
+
+    /*
+     * Description: applies whole years in closed form. Only valid once the simulation has stepped a full year with no
+     * placements, so every year adds the same costs and revenues.
+     * Parameters: years - the number of years to apply
+     */
+    void skipSteadyYears(int years) {
+        if (years == 0)
+            return;
+        long start = Metrics.start();
+
+        // every tile is old enough for all of its land type's rules, so each pays its type's annual cost and earns
+        // its annual revenue (unused tiles aren't indexed, and have neither)
+        for (byte type = LandType.UNUSED + 1; type < LandType.COUNT; type++) {
+            long cost = LandType.annualCost(type) * years;
+            long revenue = LandType.annualRevenue(type) * years;
+            if (cost == 0 && revenue == 0)
+                continue;
+            for (int s = 0; s < TileStore.STRIPES; s++) {
+                int[] members = store.index.members(s, type);
+                for (int k = 0; k < store.index.count(s, type); k++) {
+                    store.totalCost[members[k]] += cost;
+                    store.totalRevenue[members[k]] += revenue;
+                    store.changed(members[k]);
                 }
             }
         }
 
-        // handle recreation revenue in month 12
-        if (currentMonth == 12) {
-            for (Tile tile : tiles) {
-                if (tile.getLandArea() instanceof Recreation) {
-                    addToFunds(5);
-                    tile.setCurrentRevenue(5);
-                }
+        // the ledger gets every skipped month, each year the same as the one that was just stepped
+        long[][] year = new long[MONTHS_PER_YEAR][Ledger.COLUMNS];
+        long net = 0;
+        for (int m = 0; m < MONTHS_PER_YEAR; m++) {
+            int month = (currentMonth + 1 + m) % MONTHS_PER_YEAR;
+            for (LandType.Rule rule : LandType.rules(month)) {
+                long amount = (long) rule.amount * store.index.count(rule.type);
+                year[m][Ledger.column(rule.type, rule.revenue ? Ledger.REVENUE : Ledger.COST)] += amount;
+                net += rule.revenue ? amount : -amount;
+            }
+        }
+        ledger.endMonths(year, (long) years * MONTHS_PER_YEAR);
+        reportFunds(years * net, SimEventListener.FUNDS_SKIPPED_YEARS);
+
+        // flooded tiles are reset by every flood, so their age doesn't grow across the jump
+        int count = floodModel.floodedTiles(this, floodTiles);
+        for (int k = 0; k < count; k++) {
+            store.ageStart[floodTiles[k]] += years * MONTHS_PER_YEAR;
+            store.changed(floodTiles[k]);
+        }
+
+        // tiles flooded right now were flooded this year, which moves with the clock
+        for (int s = 0; s < TileStore.STRIPES; s++) {
+            int[] flooded = store.index.members(s, LandType.FLOODED);
+            for (int k = 0; k < store.index.count(s, LandType.FLOODED); k++) {
+                store.lastChangedYear[flooded[k]] += years;
+                store.changed(flooded[k]);
             }
         }
+
+        // move the clock (ages follow the store's month count)
+        currentYear += years;
+        store.advanceTick(years * MONTHS_PER_YEAR);
+        for (SimEventListener listener : eventListeners)
+            listener.yearsSkipped(years);
+        Metrics.lap(Metrics.SKIP, start, (long) years * MONTHS_PER_YEAR);
     }
 
     /*
-     * Description: removes the outline currently "highlighted" (outlined) tile
+     * Description: removes the outline from the currently "highlighted" (outlined) tile, only that one tile is touched
      */
     public void removeHighlight() {
-        // remove the outline from every tile
-        for(Tile t: tiles) {
-            t.setHighlighted(false);
+        lockAll();
+        try {
+            if (selectedIndex >= 0) {
+                beginChanges();
+                int oldIndex = selectedIndex;
+                selectedIndex = -1;
+                setHighlighted(oldIndex, false);
+                endChanges();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: selects a tile, moving the outline from the previously selected tile to this one
+     * Parameters: index - the index of the tile to select
+     */
+    public void selectTile(int index) {
+        lockAll();
+        try {
+            if (index == selectedIndex)
+                return;
+            beginChanges();
+            removeHighlight();
+            selectedIndex = index;
+            setHighlighted(index, true);
+            endChanges();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: shows or hides a tile's outline, marking it for the batch listener when batching, otherwise going
+     * through the tile view (and its observers)
+     * Parameters: index - the tile index
+     *             b - whether the tile is highlighted
+     */
+    private void setHighlighted(int index, boolean b) {
+        if (changes != null)
+            changes.mark(index, TileChangeListener.SELECTED);
+        else
+            getTile(index).setHighlighted(b);
+    }
+
+    /*
+     * Description: getter for the index of the selected tile
+     * Returns: selectedIndex, or -1 if no tile is selected
+     */
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    /*
+     * Description: buys (or clears) a tile the way a player would: charges the purchase price, counts newly filled
+     * tiles, and replaces the tile. Used by the controller and by headless runs.
+     * Parameters: landType - the land type to place ("-A-", "-R-", "-U-" or an added type, see LandType)
+     *             index - the index of the tile to place it on
+     */
+    public void placeLand(String landType, int index) {
+        placeTile(LandType.fromAbbreviation(landType), index, true);
+    }
+
+    /*
+     * Description: buys (or clears) many tiles as one operation, with the same result as calling placeLand for each
+     * index in order. The funds and filled count are adjusted once and the views get one batch of changes, so painting
+     * or filling thousands of tiles costs one refresh.
+     * Parameters: landType - the land type to place ("-A-", "-R-", "-U-" or an added type, see LandType)
+     *             indexes - the indexes of the tiles to place it on
+     *             count - the number of indexes to use
+     */
+    public void placeLand(String landType, int[] indexes, int count) {
+        lockAll();
+        try {
+            long start = Metrics.start();
+            byte code = LandType.fromAbbreviation(landType);
+            int price = LandType.price(code);
+            int filledBefore = store.stats.getFilled();
+            beginChanges();
+
+            // place every tile
+            for (int k = 0; k < count; k++) {
+                int index = indexes[k];
+                setLand(code, index);
+                for (SimEventListener listener : eventListeners)
+                    listener.landPlaced(index, code, true);
+            }
+
+            // one funds and filled adjustment for the whole batch
+            reportFilled(filledBefore);
+            if (price != 0 && count > 0)
+                changeFunds(code, -(long) price * count, SimEventListener.FUNDS_PURCHASE);
+            endChanges();
+            Metrics.lap(Metrics.PLACE, start, count);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /*
+     * Description: buys (or clears) every tile in a rectangle of map cells as one operation (see placeLand), the
+     * river cells inside it are skipped
+     * Parameters: landType - the land type to place ("-A-", "-R-", "-U-" or an added type, see LandType)
+     *             col1 - the map column of one corner
+     *             row1 - the map row of one corner
+     *             col2 - the map column of the opposite corner (included)
+     *             row2 - the map row of the opposite corner (included)
+     */
+    public void fillRect(String landType, int col1, int row1, int col2, int row2) {
+        lockAll();
+        try {
+            // clip the rectangle to the map
+            int firstCol = Math.max(0, Math.min(col1, col2));
+            int lastCol = Math.min(riverMap.getMapCols() - 1, Math.max(col1, col2));
+            int firstRow = Math.max(0, Math.min(row1, row2));
+            int lastRow = Math.min(riverMap.getRows() - 1, Math.max(row1, row2));
+            if (firstCol > lastCol || firstRow > lastRow)
+                return;
+
+            // collect the tiles row by row
+            int[] indexes = new int[Math.multiplyExact(lastCol - firstCol + 1, lastRow - firstRow + 1)];
+            int count = 0;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int index = riverMap.getTileIndexAt(col, row);
+                    if (index >= 0)
+                        indexes[count++] = index;
+                }
+            }
+            placeLand(landType, indexes, count);
+        } finally {
+            unlockAll();
         }
     }
 
@@ -205,28 +1102,93 @@ public class RiverSim {
      *             index - the index of the tile to replace
      */
     public void replaceTile(String landType, int index) {
-        // locate tile to replace and set it's new land type
-        Tile tileToReplace = tiles.get(index);
-        tileToReplace.setLandType(landType);
-
-        // set cost based on land type
-        if (Objects.equals(landType, "-A-")) {
-            tileToReplace.setCurrentCost(300);
-        } else if (Objects.equals(landType, "-R-")) {
-            tileToReplace.setCurrentCost(10);
-        } else {
-            tileToReplace.setCurrentCost(0);
+        placeTile(LandType.fromAbbreviation(landType), index, false);
+    }
+
+    /*
+     * Description: places land on a single tile holding only the tile's stripe lock (the shared part of placeLand and
+     * replaceTile). The batch listener's change set is shared by every stripe, so while one is attached the change is
+     * marked and delivered with the set locked.
+     * Parameters: code - the new land type code
+     *             index - the index of the tile
+     *             purchased - true if the purchase price is charged
+     */
+    private void placeTile(byte code, int index, boolean purchased) {
+        long start = Metrics.start();
+
+        // the stripes follow the map size, so check the store wasn't replaced while waiting for the lock
+        TileStore current = store;
+        ReentrantLock lock = stripeLocks[current.stripe(index)];
+        lock.lock();
+        while (store != current) {
+            current = store;
+            lock.unlock();
+            lock = stripeLocks[current.stripe(index)];
+            lock.lock();
         }
+        try {
+            TileChanges changes = this.changes;
+            if (changes == null) {
+                setTile(code, index, purchased);
+            } else {
+                synchronized (changes) {
+                    beginChanges();
+                    setTile(code, index, purchased);
+                    endChanges();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        Metrics.lap(Metrics.PLACE, start, 1);
+    }
+
+    /*
+     * Description: sets a tile's land, and reports the filled count, the purchase and the placement to the event
+     * listeners. The filled change is worked out from this tile alone, since other stripes may be changing too.
+     * Parameters: code - the new land type code
+     *             index - the index of the tile
+     *             purchased - true if the purchase price is charged
+     */
+    private void setTile(byte code, int index, boolean purchased) {
+        int filledDelta = (LandType.isFilled(code) ? 1 : 0) - (LandType.isFilled(store.landType[index]) ? 1 : 0);
+        setLand(code, index);
+        if (filledDelta != 0)
+            changeFilled(filledDelta, false);
+
+        // agriculture and recreation (and any other land type with a price) cost money
+        if (purchased && LandType.price(code) != 0)
+            changeFunds(code, -LandType.price(code), SimEventListener.FUNDS_PURCHASE);
+        for (SimEventListener listener : eventListeners)
+            listener.landPlaced(index, code, purchased);
+    }
+
+    /*
+     * Description: sets a tile's land type, its starting cost and its last changed date (the shared part of placeLand
+     * and replaceTile)
+     * Parameters: code - the new land type code
+     *             index - the index of the tile
+     */
+    private void setLand(byte code, int index) {
+        // set the tile's new land type
+        setLandType(index, code);
+
+        // the land type's purchase price is the tile's cost this month
+        setCurrentCost(index, LandType.price(code));
 
         // set last changed month and year to now
-        tileToReplace.getLandArea().lastChangedMonth = currentMonth;
-        tileToReplace.getLandArea().lastChangedYear = currentYear;
+        store.setLastChanged(index, currentMonth, currentYear);
     }
 
     /*
      * Description: resets filled tiles to 0 (for use upon resize)
      */
     public void resetFilled() {
-        filled = 0;
+        lockAll();
+        try {
+            changeFilled(-getFilled(), true);
+        } finally {
+            unlockAll();
+        }
     }
 }
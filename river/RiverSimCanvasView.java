@@ -0,0 +1,354 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, RiverSimCanvasView class. An alternative to RiverSimView for very large grids: the
+ * whole map is drawn on one Canvas instead of a node per tile. Only the cells inside the viewport are drawn, a batch
+ * of changes only redraws the changed cells, and clicks are mapped back to tile indexes by coordinates.
+ *
+ * Controls: scroll to pan (shift + scroll pans sideways), ctrl + scroll to zoom around the mouse. Drag to paint the
+ * chosen land type over tiles, shift + drag to fill a rectangle; the stroke is previewed on an overlay and placed as
+ * one operation when the mouse is released.
+ */
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.Stop;
+import javafx.scene.text.TextAlignment;
+
+public class RiverSimCanvasView extends Region implements TileChangeListener {
+    private static final double MIN_CELL_SIZE = 2;
+    private static final double MAX_CELL_SIZE = 120;
+    private static final double TEXT_CELL_SIZE = 48;
+    private static final double ZOOM_STEP = 1.15;
+
+    // tile fills, indexed by land type code (the built-in colors are the same as river.css)
+    private static final Paint[] LAND_FILLS = new Paint[LandType.COUNT];
+    private static final Color RIVER = Color.BLUE;
+    private static final Color OUTLINE = Color.web("#413b34");
+    private static final Color STROKE_PREVIEW = Color.rgb(255, 255, 255, 0.45);
+
+    static {
+        for (byte code = 0; code < LandType.COUNT; code++) {
+            String[] colors = LandType.colors(code);
+            LAND_FILLS[code] = gradient(colors[0], colors[1]);
+        }
+    }
+
+    private RiverSim _riverSim;
+    private Controller _controller;
+    private final Canvas canvas = new Canvas();
+    private final Canvas overlay = new Canvas();
+    private int strokeCol = -1;
+    private int strokeRow = -1;
+    private double cellSize = 40;
+    private double offsetX = 0;
+    private double offsetY = 0;
+
+    /*
+     * Description: constructor for RiverSimCanvasView, sets the riverSim and controller and hooks up scrolling, zoom
+     * and clicks. The map itself is created by resize.
+     * Parameters: controller - the controller for this view
+     *             riverSim - the riverSim for this view
+     */
+    RiverSimCanvasView(Controller controller, RiverSim riverSim) {
+        _riverSim = riverSim;
+        _controller = controller;
+
+        // the canvas always matches the viewport, so it must not drive this region's preferred size
+        canvas.setManaged(false);
+        overlay.setManaged(false);
+        overlay.setMouseTransparent(true);
+        this.getChildren().addAll(canvas, overlay);
+
+        // pan or zoom on scroll, hit-test clicks and drags into the controller
+        this.setOnScroll(this::handleScroll);
+        this.setOnMouseClicked(this::handleClick);
+        this.setOnMousePressed(this::handlePress);
+        this.setOnMouseDragged(this::handleDrag);
+        this.setOnMouseReleased(this::handleRelease);
+    }
+
+    /*
+     * Description: creates a fresh map of the given size and draws it
+     * Parameters: col - the new number of columns (including the river)
+     *             row - the new number of rows
+     */
+    public void resize(int col, int row) {
+        resize(col, row, false);
+    }
+
+    /*
+     * Description: resizes the map and draws it
+     * Parameters: col - the new number of columns (including the river)
+     *             row - the new number of rows
+     *             keepLand - true to keep the land where the old and new maps overlap, false to start a fresh map
+     */
+    public void resize(int col, int row, boolean keepLand) {
+        if (keepLand)
+            _riverSim.resizeKeepingLand(col, row);
+        else
+            _riverSim.createTiles(col, row);
+        rebuild();
+    }
+
+    /*
+     * Description: shows the riverSim's current map from the top-left corner (after a resize or a loaded snapshot)
+     */
+    public void rebuild() {
+        offsetX = 0;
+        offsetY = 0;
+        redraw();
+    }
+
+    /*
+     * Description: keeps the canvas the size of the viewport and redraws it when the region is resized
+     */
+    @Override
+    protected void layoutChildren() {
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            overlay.setWidth(getWidth());
+            overlay.setHeight(getHeight());
+            clampOffsets();
+            redraw();
+        }
+    }
+
+    /*
+     * Description: redraws only the changed cells that are inside the viewport
+     * Parameters: changes - the changed tile indexes and which of their values changed
+     */
+    @Override
+    public void tilesChanged(TileChanges changes) {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        for (int k = 0; k < changes.size(); k++) {
+            drawTile(gc, changes.index(k));
+        }
+    }
+
+    /*
+     * Description: redraws every cell inside the viewport (holding the riverSim's locks, it may be auto-playing)
+     */
+    public void redraw() {
+        _riverSim.lockAll();
+        try {
+            drawVisibleCells();
+        } finally {
+            _riverSim.unlockAll();
+        }
+    }
+
+    /*
+     * Description: draws every cell inside the viewport
+     */
+    private void drawVisibleCells() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(RIVER);
+        gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        // find the range of visible cells
+        int firstCol = Math.max(0, (int) (offsetX / cellSize));
+        int firstRow = Math.max(0, (int) (offsetY / cellSize));
+        int lastCol = Math.min(_riverSim.getMapCols() - 1, (int) ((offsetX + canvas.getWidth()) / cellSize));
+        int lastRow = Math.min(_riverSim.getRows() - 1, (int) ((offsetY + canvas.getHeight()) / cellSize));
+
+        // draw the land cells, the river shows through as the background
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int index = _riverSim.getTileIndexAt(col, row);
+                if (index >= 0)
+                    drawCell(gc, index, col, row);
+            }
+        }
+    }
+
+    /*
+     * Description: draws a tile if it is inside the viewport
+     * Parameters: gc - the canvas graphics context
+     *             index - the tile index
+     */
+    private void drawTile(GraphicsContext gc, int index) {
+        RiverMap riverMap = _riverSim.getRiverMap();
+        int row = riverMap.getRow(index);
+        int col = riverMap.getCol(index);
+        double x = col * cellSize - offsetX;
+        double y = row * cellSize - offsetY;
+        if (x + cellSize < 0 || y + cellSize < 0 || x > canvas.getWidth() || y > canvas.getHeight())
+            return;
+        drawCell(gc, index, col, row);
+    }
+
+    /*
+     * Description: draws one tile cell: its land color, its labels when zoomed in far enough, and the outline if it
+     * is the selected tile
+     * Parameters: gc - the canvas graphics context
+     *             index - the tile index
+     *             col - the map column of the tile
+     *             row - the map row of the tile
+     */
+    private void drawCell(GraphicsContext gc, int index, int col, int row) {
+        TileStore store = _riverSim.getStore();
+        double x = col * cellSize - offsetX;
+        double y = row * cellSize - offsetY;
+
+        // fill with the land color
+        gc.setFill(LAND_FILLS[store.landType[index]]);
+        gc.fillRect(x, y, cellSize, cellSize);
+
+        // draw the same three labels as a tile view when there is room
+        if (cellSize >= TEXT_CELL_SIZE) {
+            double lineHeight = cellSize / 4;
+            gc.setFill(Color.BLACK);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+            gc.fillText(LandType.abbreviation(store.landType[index]), x + cellSize / 2, y + lineHeight);
+            gc.fillText("-$" + store.currentCost[index] + "k", x + cellSize / 2, y + 2 * lineHeight);
+            gc.fillText("+$" + store.currentRevenue[index] + "k", x + cellSize / 2, y + 3 * lineHeight);
+        }
+
+        // outline the selected tile
+        if (index == _riverSim.getSelectedIndex()) {
+            gc.setStroke(OUTLINE);
+            gc.setLineWidth(2);
+            gc.strokeRect(x + 1, y + 1, cellSize - 2, cellSize - 2);
+        }
+    }
+
+    /*
+     * Description: pans the viewport on scroll, or zooms around the mouse when ctrl is held
+     * Parameters: event - the scroll event
+     */
+    private void handleScroll(ScrollEvent event) {
+        if (event.isControlDown()) {
+            // zoom, keeping the world point under the mouse in place
+            double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+            double newCellSize = Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, cellSize * factor));
+            double worldX = (offsetX + event.getX()) / cellSize;
+            double worldY = (offsetY + event.getY()) / cellSize;
+            cellSize = newCellSize;
+            offsetX = worldX * cellSize - event.getX();
+            offsetY = worldY * cellSize - event.getY();
+        } else {
+            offsetX -= event.getDeltaX();
+            offsetY -= event.getDeltaY();
+        }
+        clampOffsets();
+        redraw();
+        event.consume();
+    }
+
+    /*
+     * Description: maps a click back to a tile index and routes it into the controller
+     * Parameters: event - the mouse event
+     */
+    private void handleClick(MouseEvent event) {
+        // a drag is a stroke, not a click
+        if (!event.isStillSincePress())
+            return;
+        int index = tileAt(event);
+        if (index >= 0)
+            _controller.tileClicked(index);
+    }
+
+    /*
+     * Description: starts a paint stroke on the pressed tile (a rectangle if shift is held)
+     * Parameters: event - the mouse event
+     */
+    private void handlePress(MouseEvent event) {
+        int index = tileAt(event);
+        if (index < 0)
+            return;
+        strokeCol = (int) Math.floor((offsetX + event.getX()) / cellSize);
+        strokeRow = (int) Math.floor((offsetY + event.getY()) / cellSize);
+        _controller.strokeStarted(index, event.isShiftDown());
+        if (_controller.getStrokeFirst() >= 0)
+            previewStroke(strokeCol, strokeRow);
+    }
+
+    /*
+     * Description: moves the paint stroke onto the tile under the mouse and previews it
+     * Parameters: event - the mouse event
+     */
+    private void handleDrag(MouseEvent event) {
+        if (_controller.getStrokeFirst() < 0)
+            return;
+        int col = (int) Math.floor((offsetX + event.getX()) / cellSize);
+        int row = (int) Math.floor((offsetY + event.getY()) / cellSize);
+        int index = _riverSim.getTileIndexAt(col, row);
+        if (index >= 0) {
+            _controller.strokeEntered(index);
+            previewStroke(col, row);
+        }
+    }
+
+    /*
+     * Description: finishes the paint stroke and clears its preview, the placed tiles are redrawn as one batch
+     * Parameters: event - the mouse event
+     */
+    private void handleRelease(MouseEvent event) {
+        _controller.strokeFinished();
+        overlay.getGraphicsContext2D().clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+    }
+
+    /*
+     * Description: previews the paint stroke on the overlay: shades a painted cell, or the whole rectangle from the
+     * first cell
+     * Parameters: col - the map column the stroke moved to
+     *             row - the map row the stroke moved to
+     */
+    private void previewStroke(int col, int row) {
+        GraphicsContext gc = overlay.getGraphicsContext2D();
+        gc.setFill(STROKE_PREVIEW);
+        if (_controller.isStrokeRectangle()) {
+            gc.clearRect(0, 0, overlay.getWidth(), overlay.getHeight());
+            int left = Math.min(col, strokeCol);
+            int top = Math.min(row, strokeRow);
+            gc.fillRect(left * cellSize - offsetX, top * cellSize - offsetY,
+                    (Math.abs(col - strokeCol) + 1) * cellSize, (Math.abs(row - strokeRow) + 1) * cellSize);
+        } else {
+            gc.fillRect(col * cellSize - offsetX, row * cellSize - offsetY, cellSize, cellSize);
+        }
+    }
+
+    /*
+     * Description: maps the mouse position back to a tile index
+     * Parameters: event - the mouse event
+     * Returns: the tile index, or -1 for the river or outside the map
+     */
+    private int tileAt(MouseEvent event) {
+        int col = (int) Math.floor((offsetX + event.getX()) / cellSize);
+        int row = (int) Math.floor((offsetY + event.getY()) / cellSize);
+        return _riverSim.getTileIndexAt(col, row);
+    }
+
+    /*
+     * Description: keeps the viewport inside the map
+     */
+    private void clampOffsets() {
+        double maxX = Math.max(0, _riverSim.getMapCols() * cellSize - canvas.getWidth());
+        double maxY = Math.max(0, _riverSim.getRows() * cellSize - canvas.getHeight());
+        offsetX = Math.max(0, Math.min(maxX, offsetX));
+        offsetY = Math.max(0, Math.min(maxY, offsetY));
+    }
+
+    /*
+     * Description: builds a vertical two color gradient like the ones in river.css
+     * Parameters: top - the top color
+     *             bottom - the bottom color
+     * Returns: the gradient paint
+     */
+    private static Paint gradient(String top, String bottom) {
+        return new LinearGradient(0, 0, 0, 1, true, CycleMethod.NO_CYCLE,
+                new Stop(0, Color.web(top)), new Stop(1, Color.web(bottom)));
+    }
+}
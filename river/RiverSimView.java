@@ -5,13 +5,16 @@ package johnson_noah.river;
  * Description: JavaFx project, RiverSimView class
  */
 
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.RowConstraints;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
-public class RiverSimView extends GridPane {
+public class RiverSimView extends GridPane implements TileChangeListener {
 
     private RiverSim _riverSim;
     private Controller _controller;
@@ -19,6 +22,9 @@ public class RiverSimView extends GridPane {
     private int cols;
     private ArrayList<TileView> tileViews = new ArrayList<>();
 
+    // the map the tile views were laid out for, so a rebuild can tell which views are still in place
+    private RiverMap shownMap;
+
     /*
      * Description: Constructor for riverSimView, resizes to default rows and columns and sets the riverSim and controller
      * Parameters: controller - the controller for this riverSimView
@@ -32,76 +38,170 @@ public class RiverSimView extends GridPane {
         // set the injected riverSim and controller
         _riverSim = riverSim;
         _controller = controller;
+        _riverSim.setTileChangeListener(this);
+
+        // a paint stroke finishes wherever the mouse is released
+        this.addEventFilter(MouseEvent.MOUSE_RELEASED, _controller.handleMouseReleased());
 
-        // call resize for the defaults and set the background to blue for the river
+        // call resize for the defaults and use the stylesheet's blue background for the river
         this.resize(defaultCols, defaultRows);
-        this.setStyle("-fx-background-color: blue;");
+        this.getStyleClass().add("river-sim-view");
     }
 
     /*
-     * Description: resizes the riverSimView to the specified rows and columns
+     * Description: resizes the riverSimView to the specified rows and columns, starting a fresh map
      * Parameters: col - the new number of columns
      *             row - the new number of rows
      */
     public void resize(int col, int row) {
-        // clear constraints and children
-        this.getRowConstraints().clear();
-        this.getColumnConstraints().clear();
-        this.getChildren().clear();
-        _riverSim.resetFilled();
+        resize(col, row, false);
+    }
 
-        // set rows and columns to passed in values
-        cols = col;
-        rows = row;
+    /*
+     * Description: resizes the riverSimView to the specified rows and columns
+     * Parameters: col - the new number of columns
+     *             row - the new number of rows
+     *             keepLand - true to keep the land where the old and new maps overlap, false to start a fresh map
+     */
+    public void resize(int col, int row, boolean keepLand) {
+        if (keepLand)
+            _riverSim.resizeKeepingLand(col, row);
+        else
+            _riverSim.createTiles(col, row);
+        this.rebuild();
+    }
 
-        // set the new column constraints
+    /*
+     * Description: rebuilds the grid to match the riverSim's current map (after a resize, a loaded snapshot or a map
+     * with other rivers). Tile views are reused: a view whose cell is still land keeps its place, views of cells that
+     * are gone are moved to the new cells, and only the difference is created or removed.
+     */
+    public void rebuild() {
+        // take the rows and columns from the riverSim
+        cols = _riverSim.getMapCols();
+        rows = _riverSim.getRows();
+        RiverMap riverMap = _riverSim.getRiverMap();
+
+        // reuse the column constraints, columns that are all river are narrower
+        trimConstraints(this.getColumnConstraints(), cols);
         for (int i = 0; i < cols; i++) {
-            ColumnConstraints newColumn = new ColumnConstraints();
-            if (i > 0 && cols / i == 2) {
-                newColumn.setPercentWidth(50);
-            } else {
-                newColumn.setPercentWidth(100);
-            }
-            this.getColumnConstraints().add(newColumn);
+            if (i == this.getColumnConstraints().size())
+                this.getColumnConstraints().add(new ColumnConstraints());
+            this.getColumnConstraints().get(i).setPercentWidth(riverMap.isRiverColumn(i) ? 50 : 100);
         }
 
-        // set the new row constraints
-        for (int i = 0; i < rows; i++) {
+        // reuse the row constraints
+        trimConstraints(this.getRowConstraints(), rows);
+        while (this.getRowConstraints().size() < rows) {
             RowConstraints newRow = new RowConstraints();
             newRow.setPercentHeight(100);
             this.getRowConstraints().add(newRow);
         }
 
-        // add the tiles
+        // lay out the tiles
         this.addTiles();
     }
 
     /*
-     * Description: adds the tiles into the riverSimView
+     * Description: removes every tile view, used when the layout switches to another map renderer
      */
-    public void addTiles() {
-        int index = 0;
+    public void clearTiles() {
+        this.getRowConstraints().clear();
+        this.getColumnConstraints().clear();
+        this.getChildren().clear();
         tileViews = new ArrayList<>();
-        _riverSim.clearTiles();
-
-        // insert the tiles into the proper location
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                // skip river tiles
-                if(j > 0 && cols / j == 2)
-                    continue;
-                TileView tileView = new TileView(index);
-                Tile tile = new Tile(tileView);
-                _riverSim.addTile(tile);
-
-                // bind to controller method
-                tileView.setOnMouseClicked(_controller.handleTileClick());
-                tileViews.add(tileView);
-                GridPane.setRowIndex(tileView, i);
-                GridPane.setColumnIndex(tileView, j);
-                this.getChildren().add(tileView);
-                index++;
+        shownMap = null;
+    }
+
+    /*
+     * Description: gives every tile of the riverSim a tile view showing the tile's current state, reusing the views
+     * already in the grid. Every later change (including the highlight) reaches the tileViews batched through
+     * tilesChanged, so no per-tile observers are attached. River cells get no view, so the river shows through as
+     * the background.
+     */
+    public void addTiles() {
+        final int allValues = LAND | COST | REVENUE | SELECTED;
+        RiverMap riverMap = _riverSim.getRiverMap();
+        int count = riverMap.getTileCount();
+        ArrayList<TileView> oldViews = tileViews;
+        boolean[] kept = new boolean[oldViews.size()];
+        TileView[] views = new TileView[count];
+
+        // keep the views whose cell is still a tile
+        if (shownMap != null) {
+            for (int index = 0; index < count; index++) {
+                int old = shownMap.getTileIndexAt(riverMap.getCol(index), riverMap.getRow(index));
+                if (old >= 0 && old < oldViews.size()) {
+                    views[index] = oldViews.get(old);
+                    kept[old] = true;
+                }
+            }
+        }
+
+        // move the other old views to the new cells, and create views only when they run out
+        int spare = 0;
+        ArrayList<TileView> created = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            TileView tileView = views[index];
+            if (tileView == null) {
+                while (spare < kept.length && kept[spare])
+                    spare++;
+                if (spare < kept.length) {
+                    tileView = oldViews.get(spare);
+                    kept[spare] = true;
+                } else {
+                    tileView = new TileView(index);
+
+                    // bind to controller methods (click to place or select, drag to paint)
+                    tileView.setOnMouseClicked(_controller.handleTileClick());
+                    tileView.setOnDragDetected(_controller.handleTileDragDetected());
+                    tileView.setOnMouseDragEntered(_controller.handleTileDragEntered());
+                    created.add(tileView);
+                }
+                GridPane.setRowIndex(tileView, riverMap.getRow(index));
+                GridPane.setColumnIndex(tileView, riverMap.getCol(index));
+                views[index] = tileView;
             }
+            tileView.setIndex(index);
+            tileView.update(allValues, _riverSim);
+        }
+
+        // remove the views nobody needs, add the new ones in one go
+        HashSet<TileView> unused = new HashSet<>();
+        for (int old = spare; old < kept.length; old++) {
+            if (!kept[old])
+                unused.add(oldViews.get(old));
+        }
+        if (!unused.isEmpty())
+            this.getChildren().removeAll(unused);
+        this.getChildren().addAll(created);
+
+        tileViews = new ArrayList<>(count);
+        for (TileView tileView : views) {
+            tileViews.add(tileView);
+        }
+        shownMap = riverMap;
+    }
+
+    /*
+     * Description: removes the constraints past a new size
+     * Parameters: constraints - the row or column constraints
+     *             size - the number of constraints to keep
+     */
+    private static void trimConstraints(List<?> constraints, int size) {
+        if (constraints.size() > size)
+            constraints.subList(size, constraints.size()).clear();
+    }
+
+    /*
+     * Description: applies the tiles changed during a tick or placement in a single pass
+     * Parameters: changes - the changed tile indexes and which of their values changed
+     */
+    @Override
+    public void tilesChanged(TileChanges changes) {
+        for (int k = 0; k < changes.size(); k++) {
+            int index = changes.index(k);
+            tileViews.get(index).update(changes.flags(index), _riverSim);
         }
     }
 }
@@ -0,0 +1,262 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, RiverSimViewModel class. Exposes the RiverSim state shown around the map (the date,
+ * funds, filled count, land statistics and the selected tile's details) as JavaFX observable properties, so the info
+ * bar and sidebar are built once and bound to them. refresh() copies the current values in; a property only fires
+ * when its value actually changed, so only the text that changed is updated, and nothing is rebuilt.
+ *
+ * The properties belong to the JavaFX application thread, refresh() must be called on it.
+ */
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+public class RiverSimViewModel {
+    private final RiverSim riverSim;
+
+    // info bar
+    private final ReadOnlyIntegerWrapper month = new ReadOnlyIntegerWrapper(this, "month");
+    private final ReadOnlyIntegerWrapper year = new ReadOnlyIntegerWrapper(this, "year");
+    private final ReadOnlyLongWrapper funds = new ReadOnlyLongWrapper(this, "funds");
+    private final ReadOnlyIntegerWrapper filled = new ReadOnlyIntegerWrapper(this, "filled");
+    private final ReadOnlyIntegerWrapper agriculture = new ReadOnlyIntegerWrapper(this, "agriculture");
+    private final ReadOnlyIntegerWrapper matureAgriculture = new ReadOnlyIntegerWrapper(this, "matureAgriculture");
+    private final ReadOnlyIntegerWrapper recreation = new ReadOnlyIntegerWrapper(this, "recreation");
+    private final ReadOnlyIntegerWrapper flooded = new ReadOnlyIntegerWrapper(this, "flooded");
+    private final ReadOnlyStringWrapper addedLand = new ReadOnlyStringWrapper(this, "addedLand", "");
+    private final ReadOnlyLongWrapper projectedCost = new ReadOnlyLongWrapper(this, "projectedCost");
+    private final ReadOnlyLongWrapper projectedRevenue = new ReadOnlyLongWrapper(this, "projectedRevenue");
+
+    // selected tile
+    private final ReadOnlyBooleanWrapper tileSelected = new ReadOnlyBooleanWrapper(this, "tileSelected");
+    private final ReadOnlyBooleanWrapper detailsShown = new ReadOnlyBooleanWrapper(this, "detailsShown");
+    private final ReadOnlyStringWrapper selectedLand = new ReadOnlyStringWrapper(this, "selectedLand", "");
+    private final ReadOnlyIntegerWrapper lastChangedYear = new ReadOnlyIntegerWrapper(this, "lastChangedYear");
+    private final ReadOnlyIntegerWrapper lastChangedMonth = new ReadOnlyIntegerWrapper(this, "lastChangedMonth");
+    private final ReadOnlyIntegerWrapper ageYears = new ReadOnlyIntegerWrapper(this, "ageYears");
+    private final ReadOnlyIntegerWrapper ageMonths = new ReadOnlyIntegerWrapper(this, "ageMonths");
+    private final ReadOnlyLongWrapper totalCost = new ReadOnlyLongWrapper(this, "totalCost");
+    private final ReadOnlyLongWrapper totalRevenue = new ReadOnlyLongWrapper(this, "totalRevenue");
+
+    /*
+     * Description: constructor for RiverSimViewModel, takes the current values from the riverSim
+     * Parameters: riverSim - the simulation to show
+     */
+    RiverSimViewModel(RiverSim riverSim) {
+        this.riverSim = riverSim;
+        refresh();
+    }
+
+    /*
+     * Description: copies the riverSim's current values into the properties, only the ones that changed fire. Reads
+     * only counters and the land statistics, so it is cheap enough to call after every click or frame.
+     */
+    public void refresh() {
+        month.set(riverSim.getCurrentMonth());
+        year.set(riverSim.getCurrentYear());
+        funds.set(riverSim.getFunds());
+        filled.set(riverSim.getFilled());
+
+        LandStats stats = riverSim.getStats();
+        agriculture.set(stats.count(LandType.AGRICULTURE));
+        matureAgriculture.set(stats.getMatureAgriculture());
+        recreation.set(stats.count(LandType.RECREATION));
+        flooded.set(stats.count(LandType.FLOODED));
+        if (LandType.COUNT > LandType.FLOODED + 1) {
+            StringBuilder counts = new StringBuilder();
+            for (byte type = LandType.FLOODED + 1; type < LandType.COUNT; type++) {
+                counts.append(' ').append(LandType.name(type)).append(": ").append(stats.count(type));
+            }
+            addedLand.set(counts.toString());
+        }
+        projectedCost.set(stats.getProjectedAnnualCost());
+        projectedRevenue.set(stats.getProjectedAnnualRevenue());
+
+        // the selected tile, flooded tiles only show their land type
+        int index = riverSim.getSelectedIndex();
+        tileSelected.set(index >= 0);
+        if (index < 0) {
+            detailsShown.set(false);
+            return;
+        }
+        TileStore store = riverSim.getStore();
+        byte code = store.landType[index];
+        int age = store.age(index);
+        selectedLand.set(LandType.name(code));
+        detailsShown.set(code != LandType.FLOODED);
+        lastChangedYear.set(store.lastChangedYear[index]);
+        lastChangedMonth.set(store.lastChangedMonth[index]);
+        ageYears.set(age / RiverSim.MONTHS_PER_YEAR);
+        ageMonths.set(age % RiverSim.MONTHS_PER_YEAR);
+        totalCost.set(store.totalCost[index]);
+        totalRevenue.set(store.totalRevenue[index]);
+    }
+
+    /*
+     * Description: the current month
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty monthProperty() {
+        return month.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the current year
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty yearProperty() {
+        return year.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the funds balance
+     * Returns: a read-only property
+     */
+    public ReadOnlyLongProperty fundsProperty() {
+        return funds.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the number of filled tiles
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty filledProperty() {
+        return filled.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the number of agriculture tiles
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty agricultureProperty() {
+        return agriculture.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the number of agriculture tiles old enough to harvest
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty matureAgricultureProperty() {
+        return matureAgriculture.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the number of recreation tiles
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty recreationProperty() {
+        return recreation.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the number of flooded tiles
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty floodedProperty() {
+        return flooded.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the counts of the land types added from a file (see LandType), such as " Forest: 12"
+     * Returns: a read-only property, empty if no land types were added
+     */
+    public ReadOnlyStringProperty addedLandProperty() {
+        return addedLand.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the cost of a full year at the current land
+     * Returns: a read-only property
+     */
+    public ReadOnlyLongProperty projectedCostProperty() {
+        return projectedCost.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the revenue of a full year at the current land
+     * Returns: a read-only property
+     */
+    public ReadOnlyLongProperty projectedRevenueProperty() {
+        return projectedRevenue.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: whether a tile is selected (the sidebar is empty otherwise)
+     * Returns: a read-only property
+     */
+    public ReadOnlyBooleanProperty tileSelectedProperty() {
+        return tileSelected.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: whether the selected tile's details (dates, age and totals) are shown, flooded tiles have none
+     * Returns: a read-only property
+     */
+    public ReadOnlyBooleanProperty detailsShownProperty() {
+        return detailsShown.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the selected tile's land type name
+     * Returns: a read-only property
+     */
+    public ReadOnlyStringProperty selectedLandProperty() {
+        return selectedLand.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the year the selected tile last changed
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty lastChangedYearProperty() {
+        return lastChangedYear.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the month the selected tile last changed
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty lastChangedMonthProperty() {
+        return lastChangedMonth.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the whole years of the selected tile's age
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty ageYearsProperty() {
+        return ageYears.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the months past the whole years of the selected tile's age
+     * Returns: a read-only property
+     */
+    public ReadOnlyIntegerProperty ageMonthsProperty() {
+        return ageMonths.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the selected tile's total cost
+     * Returns: a read-only property
+     */
+    public ReadOnlyLongProperty totalCostProperty() {
+        return totalCost.getReadOnlyProperty();
+    }
+
+    /*
+     * Description: the selected tile's total revenue
+     * Returns: a read-only property
+     */
+    public ReadOnlyLongProperty totalRevenueProperty() {
+        return totalRevenue.getReadOnlyProperty();
+    }
+}
@@ -0,0 +1,96 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, SimEventListener interface. Receives every state change of a RiverSim at the model
+ * level: the inputs (map creation, placements, outside changes to funds or filled, months and skipped years) and what
+ * the simulation derived from them (phase funds, floods). Every method has an empty default, so a listener only
+ * implements the events it cares about.
+ */
+
+public interface SimEventListener {
+    // reasons passed to fundsChanged
+    int FUNDS_EXTERNAL = 0;
+    int FUNDS_PURCHASE = 1;
+    int FUNDS_AGRICULTURE_COST = 2;
+    int FUNDS_HARVEST = 3;
+    int FUNDS_RECREATION = 4;
+    int FUNDS_SKIPPED_YEARS = 5;
+    int FUNDS_LAND_COST = 6;
+    int FUNDS_LAND_REVENUE = 7;
+    int FUNDS_REASONS = 8;
+
+    /*
+     * Description: a fresh map was created (createTiles)
+     * Parameters: riverMap - the new map layout
+     */
+    default void mapCreated(RiverMap riverMap) {
+    }
+
+    /*
+     * Description: the map was resized keeping the land where the old and new maps overlap (resizeKeepingLand)
+     * Parameters: riverMap - the new map layout
+     */
+    default void mapResized(RiverMap riverMap) {
+    }
+
+    /*
+     * Description: the whole state was replaced (a snapshot was loaded)
+     */
+    default void stateRestored() {
+    }
+
+    /*
+     * Description: a tile's land type was set by a placement
+     * Parameters: index - the tile index
+     *             landType - the new land type code
+     *             purchased - true for placeLand (funds and filled were charged), false for a plain replaceTile
+     */
+    default void landPlaced(int index, byte landType, boolean purchased) {
+    }
+
+    /*
+     * Description: the funds changed
+     * Parameters: amount - the amount added (negative for costs)
+     *             reason - one of the FUNDS_ reasons, FUNDS_EXTERNAL is a direct addToFunds call
+     */
+    default void fundsChanged(long amount, int reason) {
+    }
+
+    /*
+     * Description: the filled tile count changed
+     * Parameters: delta - the change in filled tiles
+     *             external - true for a direct addToFilled/resetFilled call, false if a placement or flood caused it
+     */
+    default void filledChanged(int delta, boolean external) {
+    }
+
+    /*
+     * Description: a river bank tile flooded
+     * Parameters: index - the tile index
+     */
+    default void tileFlooded(int index) {
+    }
+
+    /*
+     * Description: a flooded tile dried out and became unused
+     * Parameters: index - the tile index
+     */
+    default void tileUnflooded(int index) {
+    }
+
+    /*
+     * Description: a month finished
+     * Parameters: month - the new current month
+     *             year - the new current year
+     */
+    default void monthAdvanced(int month, int year) {
+    }
+
+    /*
+     * Description: whole steady-state years were applied at once by advance
+     * Parameters: years - the number of years skipped
+     */
+    default void yearsSkipped(int years) {
+    }
+}
@@ -0,0 +1,444 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, SnapshotIO class. Saves and loads a whole RiverSim as a compact, versioned binary
+ * snapshot. Written through a FileChannel with a large direct buffer and read back through a memory-mapped buffer, so
+ * a world with millions of tiles saves and loads in well under a second.
+ *
+ * Format (version 4, big-endian):
+ *   int magic "RSIM", int version
+ *   int mapCols, int rows, int month, int year, long funds, int filled
+ *   byte 1 for one straight river down the middle column, or 0 followed by the river bitmap (long words, one bit
+ *   per cell, see RiverMap)
+ *   the land type table: a varint count, then each code's abbreviation as a varint length and UTF-8 bytes
+ *   land types, 2 bits per tile with four land types or fewer (four tiles per byte), otherwise 4 bits (two tiles per
+ *   byte), lowest bits first
+ *   then one column per tile field, each value a zigzag varint:
+ *   age, current cost, current revenue, last changed month, last changed year, total cost, total revenue
+ *   then the ledger, all zigzag varints: first month, opening balance, chunk count, and for each chunk its stored
+ *   months, its length, a bit mask of its non-zero columns and those columns' amounts, then the open month's amount
+ *   in every column (a cost and a revenue column per land type in the table, then the two EXTERNAL columns)
+ * The land types are stored by abbreviation, so a snapshot loads whatever codes the added land types (see LandType)
+ * have now, as long as every land type its tiles or ledger use is registered. Versions 1 to 3 have no table and only
+ * the four built-in land types. Version 1 snapshots have no river byte and always have a straight river. Versions 1
+ * and 2 have an int funds and no ledger, the ledger of a loaded one starts at the snapshot's month.
+ */
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SnapshotIO {
+    private static final int MAGIC = 0x5253494D;
+    private static final int VERSION = 4;
+
+    // the land types of a snapshot without a land type table
+    private static final String[] BUILT_IN_TYPES = {LandType.abbreviation(LandType.UNUSED),
+            LandType.abbreviation(LandType.AGRICULTURE), LandType.abbreviation(LandType.RECREATION),
+            LandType.abbreviation(LandType.FLOODED)};
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private SnapshotIO() {
+    }
+
+    /*
+     * Description: saves a riverSim to a snapshot file, replacing the file if it exists
+     * Parameters: riverSim - the simulation to save
+     *             path - the file to write
+     */
+    public static void save(RiverSim riverSim, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(riverSim, channel);
+        }
+    }
+
+    /*
+     * Description: writes a snapshot of a riverSim to a channel (a snapshot file, or a keyframe inside a journal)
+     * Parameters: riverSim - the simulation to save
+     *             channel - the channel to write to, left open
+     */
+    static void write(RiverSim riverSim, WritableByteChannel channel) throws IOException {
+        // hold every stripe so placements on other threads can't change the state halfway through
+        riverSim.lockAll();
+        try {
+            TileStore store = riverSim.getStore();
+            RiverMap riverMap = riverSim.getRiverMap();
+            int size = store.size();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+            // write the header
+            buffer.putInt(MAGIC).putInt(VERSION);
+            buffer.putInt(riverMap.getMapCols()).putInt(riverMap.getRows());
+            buffer.putInt(riverSim.getCurrentMonth()).putInt(riverSim.getCurrentYear());
+            buffer.putLong(riverSim.getFunds()).putInt(riverSim.getFilled());
+
+            // write the rivers, unless it is the straight river
+            buffer.put((byte) (riverMap.isStraight() ? 1 : 0));
+            if (!riverMap.isStraight()) {
+                for (long word : riverMap.getRiverBits()) {
+                    buffer = ensureRoom(channel, buffer, 8);
+                    buffer.putLong(word);
+                }
+            }
+
+            // write the land type table, then the land types, four or two to a byte
+            buffer = putVarint(channel, buffer, LandType.COUNT);
+            for (byte code = 0; code < LandType.COUNT; code++) {
+                byte[] abbreviation = LandType.abbreviation(code).getBytes(StandardCharsets.UTF_8);
+                buffer = putVarint(channel, buffer, abbreviation.length);
+                buffer = ensureRoom(channel, buffer, abbreviation.length);
+                buffer.put(abbreviation);
+            }
+            int bits = typeBits(LandType.COUNT);
+            for (int i = 0; i < size; i += 8 / bits) {
+                int packed = 0;
+                for (int j = 0; j < 8 / bits && i + j < size; j++) {
+                    packed |= store.landType[i + j] << (bits * j);
+                }
+                buffer = ensureRoom(channel, buffer, 1);
+                buffer.put((byte) packed);
+            }
+
+            // write each field column, ages are saved relative to the store's month count
+            for (int i = 0; i < size; i++) {
+                buffer = putVarint(channel, buffer, store.age(i));
+            }
+            int[][] columns = {store.currentCost, store.currentRevenue, store.lastChangedMonth, store.lastChangedYear};
+            for (int[] column : columns) {
+                for (int i = 0; i < size; i++) {
+                    buffer = putVarint(channel, buffer, column[i]);
+                }
+            }
+            for (long[] column : new long[][]{store.totalCost, store.totalRevenue}) {
+                for (int i = 0; i < size; i++) {
+                    buffer = putVarint(channel, buffer, column[i]);
+                }
+            }
+            buffer = writeLedger(channel, buffer, riverSim.getLedger());
+
+            // write what is left in the buffer
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            riverSim.unlockAll();
+        }
+    }
+
+    /*
+     * Description: loads a snapshot file into a riverSim, replacing its whole state
+     * Parameters: path - the file to read
+     *             riverSim - the simulation to load into
+     */
+    public static void load(Path path, RiverSim riverSim) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large to map: " + path);
+            }
+            read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), riverSim);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + path, e);
+        }
+    }
+
+    /*
+     * Description: reads a snapshot from a buffer into a riverSim, replacing its whole state
+     * Parameters: buffer - the buffer holding the snapshot, read from its position
+     *             riverSim - the simulation to load into
+     */
+    static void read(ByteBuffer buffer, RiverSim riverSim) throws IOException {
+        try {
+            // check the header
+            if (buffer.remaining() < 32 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a river sim snapshot");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int mapCols = buffer.getInt();
+            int rows = buffer.getInt();
+            int month = buffer.getInt();
+            int year = buffer.getInt();
+            long funds = version < 3 ? buffer.getInt() : buffer.getLong();
+            int filled = buffer.getInt();
+            if (mapCols < 1 || rows < 0) {
+                throw new IOException("Bad map size in snapshot: " + mapCols + "x" + rows);
+            }
+
+            // read the rivers
+            RiverMap riverMap;
+            if (version == 1 || buffer.get() == 1) {
+                riverMap = RiverMap.straight(mapCols, rows);
+            } else {
+                long[] river = new long[(int) ((Math.multiplyExact(mapCols, rows) + 63L) >> 6)];
+                for (int w = 0; w < river.length; w++) {
+                    river[w] = buffer.getLong();
+                }
+                riverMap = RiverMap.fromBits(mapCols, rows, river);
+            }
+
+            // read the land types, turning the snapshot's codes into the registered ones
+            String[] types = version < 4 ? BUILT_IN_TYPES : readLandTypes(buffer);
+            byte[] codes = registeredCodes(types);
+            int bits = typeBits(codes.length);
+            TileStore store = new TileStore(riverMap.getTileCount());
+            int size = store.size();
+            for (int i = 0; i < size; i += 8 / bits) {
+                int packed = buffer.get();
+                for (int j = 0; j < 8 / bits && i + j < size; j++) {
+                    int type = (packed >> (bits * j)) & ((1 << bits) - 1);
+                    if (type >= codes.length) {
+                        throw new IOException("Bad land type in snapshot");
+                    } else if (codes[type] < 0) {
+                        throw new IOException("Snapshot has land type " + types[type] + ", which isn't registered");
+                    }
+                    store.landType[i + j] = codes[type];
+                }
+            }
+
+            // read each field column (ages become month counts, with the store's count starting at 0)
+            for (int i = 0; i < size; i++) {
+                store.ageStart[i] = -getVarint(buffer);
+            }
+            int[][] columns = {store.currentCost, store.currentRevenue, store.lastChangedMonth, store.lastChangedYear};
+            for (int[] column : columns) {
+                for (int i = 0; i < size; i++) {
+                    column[i] = getVarint(buffer);
+                }
+            }
+            for (long[] column : new long[][]{store.totalCost, store.totalRevenue}) {
+                for (int i = 0; i < size; i++) {
+                    column[i] = getVarlong(buffer);
+                }
+            }
+
+            // read the ledger, which has to end at the snapshot's month with the snapshot's funds
+            Ledger ledger = version < 3 ? new Ledger(Ledger.month(year, month), funds) : readLedger(buffer, codes);
+            if (ledger.getCurrentMonth() != Ledger.month(year, month) || ledger.getBalance() != funds) {
+                throw new IOException("Snapshot ledger doesn't match its funds");
+            }
+
+            store.rebuildIndex();
+            riverSim.restore(riverMap, month, year, ledger, filled, store);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Snapshot is truncated", e);
+        }
+    }
+
+    /*
+     * Description: writes a ledger's chunks and open month
+     * Parameters: channel - the channel being written
+     *             buffer - the write buffer
+     *             ledger - the ledger to write
+     * Returns: the buffer, ready for more puts
+     */
+    private static ByteBuffer writeLedger(WritableByteChannel channel, ByteBuffer buffer, Ledger ledger)
+            throws IOException {
+        buffer = putVarint(channel, buffer, ledger.getFirstMonth());
+        buffer = putVarint(channel, buffer, ledger.getOpeningBalance());
+        buffer = putVarint(channel, buffer, ledger.getChunkCount());
+        for (int k = 0; k < ledger.getChunkCount(); k++) {
+            long mask = 0;
+            for (int c = 0; c < Ledger.COLUMNS; c++) {
+                if (ledger.hasColumn(k, c))
+                    mask |= 1L << c;
+            }
+            buffer = putVarint(channel, buffer, ledger.chunkPeriod(k));
+            buffer = putVarint(channel, buffer, ledger.chunkLength(k));
+            buffer = putVarint(channel, buffer, mask);
+            for (int c = 0; c < Ledger.COLUMNS; c++) {
+                for (int m = 0; (mask & 1L << c) != 0 && m < ledger.chunkPeriod(k); m++) {
+                    buffer = putVarint(channel, buffer, ledger.monthAmount(k, c, m));
+                }
+            }
+        }
+        for (int c = 0; c < Ledger.COLUMNS; c++) {
+            buffer = putVarint(channel, buffer, ledger.openAmount(c));
+        }
+        return buffer;
+    }
+
+    /*
+     * Description: reads the land type table of a snapshot
+     * Parameters: buffer - the read buffer
+     * Returns: the abbreviation of each of the snapshot's land type codes
+     */
+    private static String[] readLandTypes(ByteBuffer buffer) throws IOException {
+        int count = getVarint(buffer);
+        if (count < BUILT_IN_TYPES.length || count > LandType.MAX_COUNT) {
+            throw new IOException("Bad land type table in snapshot");
+        }
+        String[] types = new String[count];
+        for (int t = 0; t < count; t++) {
+            int length = getVarint(buffer);
+            if (length < 1 || length > buffer.remaining()) {
+                throw new IOException("Bad land type table in snapshot");
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            types[t] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return types;
+    }
+
+    /*
+     * Description: finds the registered code of each of a snapshot's land types
+     * Parameters: types - the abbreviation of each of the snapshot's land type codes
+     * Returns: the registered codes, -1 for a land type that isn't registered (an error only if it is used)
+     */
+    private static byte[] registeredCodes(String[] types) throws IOException {
+        byte[] codes = new byte[types.length];
+        boolean[] seen = new boolean[LandType.COUNT];
+        for (int t = 0; t < types.length; t++) {
+            codes[t] = LandType.isRegistered(types[t]) ? LandType.fromAbbreviation(types[t]) : -1;
+            if (codes[t] >= 0 && seen[codes[t]]) {
+                throw new IOException("Bad land type table in snapshot");
+            } else if (codes[t] >= 0) {
+                seen[codes[t]] = true;
+            }
+        }
+        return codes;
+    }
+
+    /*
+     * Description: gets the number of bits a snapshot stores each tile's land type in
+     * Parameters: count - the number of land types in the snapshot's table
+     * Returns: 2 or 4
+     */
+    private static int typeBits(int count) {
+        return count <= 4 ? 2 : 4;
+    }
+
+    /*
+     * Description: reads a ledger written by writeLedger, moving each land type's columns to its registered code
+     * Parameters: buffer - the read buffer
+     *             codes - the registered code of each of the snapshot's land type codes, -1 if it isn't registered
+     * Returns: the ledger
+     */
+    private static Ledger readLedger(ByteBuffer buffer, byte[] codes) throws IOException {
+        // the snapshot's columns, the two for each of its land types then the two EXTERNAL ones (-1 for a land type
+        // that isn't registered, which has to have no amounts)
+        int[] columns = new int[(codes.length + 1) * 2];
+        for (int c = 0; c < columns.length; c++) {
+            byte type = c / 2 < codes.length ? codes[c / 2] : Ledger.EXTERNAL;
+            columns[c] = type >= 0 ? Ledger.column(type, c % 2) : -1;
+        }
+
+        Ledger ledger = new Ledger(getVarlong(buffer), getVarlong(buffer));
+        int chunks = getVarint(buffer);
+        for (int k = 0; k < chunks; k++) {
+            int period = getVarint(buffer);
+            long length = getVarlong(buffer);
+            long mask = getVarlong(buffer);
+            if (period < 1 || length < period || (length > period && period != RiverSim.MONTHS_PER_YEAR)
+                    || (mask >>> columns.length) != 0 || (mask != 0 && period > buffer.remaining())) {
+                throw new IOException("Bad ledger chunk in snapshot");
+            }
+            long[][] amounts = new long[Ledger.COLUMNS][];
+            for (int c = 0; c < columns.length; c++) {
+                if ((mask & 1L << c) == 0)
+                    continue;
+                if (columns[c] < 0) {
+                    throw new IOException("Snapshot ledger has amounts for a land type that isn't registered");
+                }
+                long[] column = new long[period];
+                for (int m = 0; m < period; m++) {
+                    column[m] = getVarlong(buffer);
+                }
+                amounts[columns[c]] = column;
+            }
+            ledger.addChunk(period, length, amounts);
+        }
+        long[] open = new long[Ledger.COLUMNS];
+        for (int c = 0; c < columns.length; c++) {
+            long amount = getVarlong(buffer);
+            if (columns[c] >= 0) {
+                open[columns[c]] = amount;
+            } else if (amount != 0) {
+                throw new IOException("Snapshot ledger has amounts for a land type that isn't registered");
+            }
+        }
+        ledger.setOpen(open);
+        return ledger;
+    }
+
+    /*
+     * Description: writes the buffer to the channel if it doesn't have room for more bytes
+     * Parameters: channel - the channel being written
+     *             buffer - the write buffer
+     *             bytes - the number of bytes about to be put
+     * Returns: the buffer, ready for more puts
+     */
+    private static ByteBuffer ensureRoom(WritableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /*
+     * Description: writes a value as a zigzag varint (small positive and negative values take one byte). An int is
+     * written the same way whether it is passed as an int or a long, so getVarint and getVarlong both read it.
+     * Parameters: channel - the channel being written
+     *             buffer - the write buffer
+     *             value - the value to write
+     * Returns: the buffer, ready for more puts
+     */
+    private static ByteBuffer putVarint(WritableByteChannel channel, ByteBuffer buffer, long value) throws IOException {
+        buffer = ensureRoom(channel, buffer, 10);
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+        return buffer;
+    }
+
+    /*
+     * Description: reads a zigzag varint written by putVarint
+     * Parameters: buffer - the read buffer
+     * Returns: the value
+     */
+    static int getVarint(ByteBuffer buffer) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Bad varint");
+    }
+
+    /*
+     * Description: reads a zigzag varint written by putVarint as a long
+     * Parameters: buffer - the read buffer
+     * Returns: the value
+     */
+    static long getVarlong(ByteBuffer buffer) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Bad varint");
+    }
+}
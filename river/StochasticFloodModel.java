@@ -0,0 +1,80 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, StochasticFloodModel class. A seeded random flood whose severity changes from year to
+ * year: a year floods with some probability, a flooding year reaches between 1 and maxExtent tiles out from the
+ * rivers, and each row floods with some probability. Each year's random numbers come from the seed and the year alone,
+ * so a year floods the same way no matter what ran before it.
+ */
+
+import java.util.SplittableRandom;
+
+public class StochasticFloodModel implements FloodModel {
+    private final long seed;
+    private final double yearProbability;
+    private final double rowProbability;
+    private final int maxExtent;
+
+    /*
+     * Description: constructor for StochasticFloodModel
+     * Parameters: seed - the seed for every year's floods
+     *             yearProbability - the chance that a year floods at all
+     *             rowProbability - the chance that a row floods in a flooding year
+     *             maxExtent - the most tiles out from a river a flood can reach (1 to RiverMap.MAX_FLOOD_DISTANCE)
+     */
+    public StochasticFloodModel(long seed, double yearProbability, double rowProbability, int maxExtent) {
+        if (yearProbability < 0 || yearProbability > 1 || rowProbability < 0 || rowProbability > 1 || maxExtent < 1
+                || maxExtent > RiverMap.MAX_FLOOD_DISTANCE) {
+            throw new IllegalArgumentException("Bad flood model: " + yearProbability + ", " + rowProbability + ", "
+                    + maxExtent);
+        }
+        this.seed = seed;
+        this.yearProbability = yearProbability;
+        this.rowProbability = rowProbability;
+        this.maxExtent = maxExtent;
+    }
+
+    @Override
+    public int floodedTiles(RiverSim riverSim, int[] tiles) {
+        SplittableRandom random = new SplittableRandom(mix(seed, riverSim.getCurrentYear()));
+        if (random.nextDouble() >= yearProbability)
+            return 0;
+
+        // pick this year's extent, then flood the tiles that close to a river in the chosen rows
+        int extent = 1 + random.nextInt(maxExtent);
+        RiverMap riverMap = riverSim.getRiverMap();
+        int count = 0;
+        int row = -1;
+        boolean rowFloods = false;
+        for (int index : riverMap.getNearRiverTiles()) {
+            // the near tiles are in row order, so each row is decided once
+            if (riverMap.getRow(index) != row) {
+                row = riverMap.getRow(index);
+                rowFloods = random.nextDouble() < rowProbability;
+            }
+            if (rowFloods && riverMap.getRiverDistance(index) <= extent)
+                tiles[count++] = index;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return false;
+    }
+
+    /*
+     * Description: mixes two values into a well spread 64 bit seed (the SplitMix64 finalizer), so neighbouring years
+     * or run numbers get unrelated random streams
+     * Parameters: a - the first value, usually a master seed
+     *             b - the second value, such as a year or a run index
+     * Returns: the mixed seed
+     */
+    static long mix(long a, long b) {
+        long z = a + 0x9E3779B97F4A7C15L * (b + 1);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,453 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, TelemetryExporter class. Streams the trajectory of a run to a CSV or JSON Lines file,
+ * one row per month: the date, funds and filled count, then depending on the granularity the count, cost and revenue
+ * of each land type that month, and every tile's land, current cost and current revenue. Rows are formatted into a
+ * small buffer on the simulation's thread, right after each month is stepped, and handed to a writer thread in
+ * blocks (like the EventJournal), so memory stays bounded by the queued blocks however long the run is, and the
+ * simulation only waits if the disk falls that far behind.
+ *
+ * Years skipped by advance get their rows too: advance always steps a year of the repeating cycle just before
+ * skipping (one that starts after the first flood, see RiverSim.advance), so the land counts of each skipped month are
+ * those of the same month in the last year stepped (kept in a ring of one year of rows), and the funds, costs and
+ * revenues come from the ledger. Tile rows are only written for stepped months.
+ *
+ * CSV columns: month, year, funds, filled, then for TYPES and TILES each land type's count, cost and revenue in the
+ * month (<key>, <key>_cost, <key>_revenue, see LandType), then for TILES tile, land, cost and revenue. With TILES each
+ * month's row is followed by one row per tile, which only fills month, year and the tile columns.
+ * JSON Lines: one object per month, such as {"month":5,"year":0,"funds":-250,"filled":1,"types":{"agriculture":
+ * {"count":1,"cost":50,"revenue":0},...},"tiles":{"land":["-A-",...],"cost":[50,...],"revenue":[0,...]}}
+ * A month's costs and revenues are its phases' (placements made after the month was stepped show up in the funds of
+ * the next row).
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class TelemetryExporter implements SimEventListener, Closeable {
+    // formats
+    public static final int CSV = 0;
+    public static final int JSON_LINES = 1;
+
+    // granularities
+    public static final int GLOBAL = 0;
+    public static final int TYPES = 1;
+    public static final int TILES = 2;
+
+    private static final int YEAR = RiverSim.MONTHS_PER_YEAR;
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int QUEUED_BLOCKS = 64;
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    // how long a full queue is waited on before checking the writer is still running
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    // the longest single put: a number, or an escaped abbreviation with its punctuation
+    private static final int MAX_PUT = 64;
+
+    // each ring row holds the month, year, filled count and the count of each land type
+    private static final int RING_COUNTS = 3;
+
+    private final RiverSim riverSim;
+    private final FileChannel channel;
+    private final int format;
+    private final int granularity;
+    private final byte[][] keys = new byte[LandType.COUNT][];
+    private final byte[][] lands = new byte[LandType.COUNT][];
+    private final byte[] digits = new byte[20];
+    private final BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private final int[][] ring = new int[YEAR][RING_COUNTS + LandType.COUNT];
+    private long stepped = 0;
+    private boolean closed = false;
+
+    /*
+     * Description: starts exporting a riverSim's months to a new file (replacing the file if it exists)
+     * Parameters: riverSim - the simulation to export
+     *             path - the file to write
+     *             format - CSV or JSON_LINES
+     *             granularity - GLOBAL, TYPES or TILES
+     */
+    public TelemetryExporter(RiverSim riverSim, Path path, int format, int granularity) throws IOException {
+        if (format != CSV && format != JSON_LINES) {
+            throw new IllegalArgumentException("Bad telemetry format: " + format);
+        }
+        if (granularity < GLOBAL || granularity > TILES) {
+            throw new IllegalArgumentException("Bad telemetry granularity: " + granularity);
+        }
+        this.riverSim = riverSim;
+        this.format = format;
+        this.granularity = granularity;
+
+        // the land type keys and abbreviations, escaped for the format
+        for (byte type = 0; type < LandType.COUNT; type++) {
+            keys[type] = LandType.key(type).getBytes(StandardCharsets.UTF_8);
+            String land = LandType.abbreviation(type);
+            if (format == JSON_LINES)
+                land = "\"" + land.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+            else if (land.contains("\""))
+                land = "\"" + land.replace("\"", "\"\"") + "\"";
+            lands[type] = land.getBytes(StandardCharsets.UTF_8);
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new Thread(this::writeLoop, "river-telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        if (format == CSV)
+            writeCsvHeader();
+        riverSim.addSimEventListener(this);
+    }
+
+    /*
+     * Description: picks the format from a file name, JSON Lines for .jsonl or .json and CSV for anything else
+     * Parameters: path - the file to write
+     * Returns: CSV or JSON_LINES
+     */
+    public static int formatFor(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? JSON_LINES : CSV;
+    }
+
+    /*
+     * Description: reads a granularity from its name
+     * Parameters: name - "global", "types" or "tiles"
+     * Returns: GLOBAL, TYPES or TILES
+     */
+    public static int granularity(String name) {
+        switch (name.toLowerCase()) {
+            case "global":
+                return GLOBAL;
+            case "types":
+                return TYPES;
+            case "tiles":
+                return TILES;
+            default:
+                throw new IllegalArgumentException("Bad telemetry granularity: " + name);
+        }
+    }
+
+    @Override
+    public synchronized void monthAdvanced(int month, int year) {
+        // remember the month's counts for years skipped later
+        int[] row = ring[(int) (stepped++ % YEAR)];
+        row[0] = month;
+        row[1] = year;
+        row[2] = riverSim.getFilled();
+        LandStats stats = riverSim.getStats();
+        for (byte type = 0; type < LandType.COUNT; type++) {
+            row[RING_COUNTS + type] = stats.count(type);
+        }
+        writeRow(row, 0, riverSim.getFunds(), granularity == TILES);
+    }
+
+    @Override
+    public synchronized void yearsSkipped(int years) {
+        // without a whole year stepped since the export started, only the state after the skip is known
+        Ledger ledger = riverSim.getLedger();
+        if (stepped < YEAR) {
+            monthAdvanced(riverSim.getCurrentMonth(), riverSim.getCurrentYear());
+            return;
+        }
+
+        // each skipped month repeats the same month of the last year stepped, oldest first
+        for (int y = 1; y <= years; y++) {
+            for (int k = 0; k < YEAR; k++) {
+                int[] row = ring[(int) ((stepped + k) % YEAR)];
+                long month = Ledger.month(row[1] + y, row[0]);
+                writeRow(row, y, ledger.getOpeningBalance() + ledger.getNet(ledger.getFirstMonth(), month + 1),
+                        false);
+            }
+        }
+        for (int[] row : ring) {
+            row[1] += years;
+        }
+    }
+
+    /*
+     * Description: hands the buffered rows to the writer thread without waiting for them to reach the disk
+     */
+    public synchronized void flush() throws IOException {
+        checkFailure();
+        submitBlock();
+    }
+
+    /*
+     * Description: stops exporting, writes everything still buffered and closes the file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        riverSim.removeSimEventListener(this);
+        submitBlock();
+        enqueue(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        checkFailure();
+    }
+
+    /*
+     * Description: writes the CSV header row
+     */
+    private void writeCsvHeader() {
+        put("month,year,funds,filled");
+        if (granularity >= TYPES) {
+            for (byte type = 0; type < LandType.COUNT; type++) {
+                put(',');
+                put(keys[type]);
+                put(',');
+                put(keys[type]);
+                put("_cost,");
+                put(keys[type]);
+                put("_revenue");
+            }
+        }
+        if (granularity == TILES)
+            put(",tile,land,cost,revenue");
+        put('\n');
+    }
+
+    /*
+     * Description: writes a month's row (and its tile rows)
+     * Parameters: row - the ring row with the month, year, filled count and land type counts
+     *             years - the years to add to the row's year
+     *             funds - the funds at the end of the month
+     *             tiles - true to write the tiles' land, cost and revenue
+     */
+    private void writeRow(int[] row, int years, long funds, boolean tiles) {
+        int month = row[0];
+        int year = row[1] + years;
+        Ledger ledger = riverSim.getLedger();
+        long ledgerMonth = Ledger.month(year, month);
+        boolean json = format == JSON_LINES;
+
+        put(json ? "{\"month\":" : "");
+        putLong(month);
+        put(json ? ",\"year\":" : ",");
+        putLong(year);
+        put(json ? ",\"funds\":" : ",");
+        putLong(funds);
+        put(json ? ",\"filled\":" : ",");
+        putLong(row[2]);
+
+        // each land type's count, and its cost and revenue in the month
+        if (granularity >= TYPES) {
+            put(json ? ",\"types\":{" : "");
+            for (byte type = 0; type < LandType.COUNT; type++) {
+                if (json) {
+                    put(type == 0 ? "\"" : ",\"");
+                    put(keys[type]);
+                    put("\":{\"count\":");
+                } else {
+                    put(',');
+                }
+                putLong(row[RING_COUNTS + type]);
+                put(json ? ",\"cost\":" : ",");
+                putLong(ledger.getCost(type, ledgerMonth, ledgerMonth + 1));
+                put(json ? ",\"revenue\":" : ",");
+                putLong(ledger.getRevenue(type, ledgerMonth, ledgerMonth + 1));
+                put(json ? "}" : "");
+            }
+            put(json ? "}" : "");
+        }
+
+        if (granularity == TILES && !json)
+            put(",,,,");
+        if (tiles && json)
+            writeJsonTiles();
+        put(json ? "}\n" : "\n");
+        if (tiles && !json)
+            writeCsvTiles(month, year);
+    }
+
+    /*
+     * Description: writes a CSV row for every tile, leaving the month's columns empty
+     * Parameters: month - the month
+     *             year - the year
+     */
+    private void writeCsvTiles(int month, int year) {
+        TileStore store = riverSim.getStore();
+        for (int i = 0; i < store.size(); i++) {
+            putLong(month);
+            put(',');
+            putLong(year);
+            put(",,");
+            for (int type = 0; type < LandType.COUNT; type++) {
+                put(",,,");
+            }
+            put(',');
+            putLong(i);
+            put(',');
+            put(lands[store.landType[i]]);
+            put(',');
+            putLong(store.currentCost[i]);
+            put(',');
+            putLong(store.currentRevenue[i]);
+            put('\n');
+        }
+    }
+
+    /*
+     * Description: writes the tiles' land, cost and revenue as JSON arrays
+     */
+    private void writeJsonTiles() {
+        TileStore store = riverSim.getStore();
+        put(",\"tiles\":{\"land\":[");
+        for (int i = 0; i < store.size(); i++) {
+            put(i == 0 ? "" : ",");
+            put(lands[store.landType[i]]);
+        }
+        put("],\"cost\":[");
+        for (int i = 0; i < store.size(); i++) {
+            put(i == 0 ? "" : ",");
+            putLong(store.currentCost[i]);
+        }
+        put("],\"revenue\":[");
+        for (int i = 0; i < store.size(); i++) {
+            put(i == 0 ? "" : ",");
+            putLong(store.currentRevenue[i]);
+        }
+        put("]}");
+    }
+
+    /*
+     * Description: writes a character to the block (ASCII only)
+     * Parameters: c - the character
+     */
+    private void put(char c) {
+        ensureRoom();
+        block.put((byte) c);
+    }
+
+    /*
+     * Description: writes a string to the block (ASCII only)
+     * Parameters: text - the text, at most MAX_PUT characters
+     */
+    private void put(String text) {
+        ensureRoom();
+        for (int k = 0; k < text.length(); k++) {
+            block.put((byte) text.charAt(k));
+        }
+    }
+
+    /*
+     * Description: writes bytes to the block
+     * Parameters: bytes - the bytes, at most MAX_PUT of them
+     */
+    private void put(byte[] bytes) {
+        ensureRoom();
+        block.put(bytes);
+    }
+
+    /*
+     * Description: writes a number to the block in decimal, without making a string
+     * Parameters: value - the number
+     */
+    private void putLong(long value) {
+        ensureRoom();
+        if (value == Long.MIN_VALUE) {
+            put(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            block.put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            block.put(digits[--count]);
+        }
+    }
+
+    /*
+     * Description: hands the block to the writer first if the next put might not fit
+     */
+    private void ensureRoom() {
+        if (block.remaining() < MAX_PUT)
+            submitBlock();
+    }
+
+    /*
+     * Description: hands the current block to the writer thread and starts a new one
+     */
+    private void submitBlock() {
+        if (block.position() == 0)
+            return;
+        block.flip();
+        enqueue(block);
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+    }
+
+    /*
+     * Description: queues an item for the writer thread, waiting only if the queue is full. Items are dropped once the
+     * writer has stopped (it stops at CLOSE or at the first failed write), so a full queue can't wait forever.
+     * Parameters: item - a block of rows, or CLOSE
+     */
+    private void enqueue(ByteBuffer item) {
+        try {
+            while (failure == null && writer.isAlive()) {
+                if (queue.offer(item, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Description: rethrows a failure from the writer thread
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Telemetry write failed", failure);
+        }
+    }
+
+    /*
+     * Description: the writer thread, writes the queued blocks in order until CLOSE or until a write fails (close
+     * rethrows the failure)
+     */
+    private void writeLoop() {
+        try {
+            while (true) {
+                ByteBuffer item = queue.take();
+                if (item == CLOSE)
+                    return;
+                try {
+                    while (item.hasRemaining()) {
+                        channel.write(item);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,64 +2,67 @@ package johnson_noah.river;
 
 /*
  * Author: Noah Johnson
- * Description: JavaFx project, Tile class
+ * Description: JavaFx project, Tile class. A view over one slot of the TileStore that fires property changes to its
+ * observers when the slot is changed through it.
  */
 
 import java.beans.PropertyChangeSupport;
 import java.beans.PropertyChangeListener;
-import java.util.Objects;
 
 public class Tile {
 
-    private LandArea landArea;
-    private final PropertyChangeSupport support;
-    private int totalCost = 0;
-    private int totalRevenue = 0;
+    private final TileStore store;
+    private final int index;
+    private final LandArea landArea;
+    private PropertyChangeSupport support;
     private boolean highlighted;
 
     /*
-     * Description: constructor for the Tile class, adds property change listeners for the observer pattern, as well as
-     * sets the default values for land type, current cost, current revenue, etc
-     * Parameters: tileView - the corresponding tileView that is observing this Tile
+     * Description: constructor for the Tile class. The tile's values live in the store (every slot starts unused), and
+     * no observers are attached, so a headless simulation never pays for property change events.
+     * Parameters: store - the tile store holding this tile's values
+     *             index - the index of this tile in the store
      */
-    Tile(TileView tileView) {
-
-        // initialize observer pattern
-        support = new PropertyChangeSupport(this);
-        addPropertyChangeListener(tileView);
-
-        // set default tile values
-        setLandType("-U-");
-        setCurrentCost(0);
-        setCurrentRevenue(0);
-        landArea.lastChangedMonth = 0;
-        landArea.lastChangedYear = 0;
-        landArea.age = 0;
-        landArea.abbreviation = "-U-";
+    Tile(TileStore store, int index) {
+        this.store = store;
+        this.index = index;
+        this.landArea = new LandArea(store, index);
     }
 
     /*
-     * Description: adds the property change listener for the observer pattern
+     * Description: adds the property change listener for the observer pattern, creating the change support the
+     * first time a listener is attached
      * Parameters: pcl - the property change listener to add
      */
     public void addPropertyChangeListener(PropertyChangeListener pcl) {
+        if (support == null) {
+            support = new PropertyChangeSupport(this);
+        }
         support.addPropertyChangeListener(pcl); // GRADING: SUBJECT
     }
 
     /*
-     * Description: getter for the private variable totalRevenue
+     * Description: getter for the index of this tile
+     * Returns: index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /*
+     * Description: getter for the total revenue of this tile
      * Returns: totalRevenue
      */
-    public int getTotalRevenue() {
-        return totalRevenue;
+    public long getTotalRevenue() {
+        return store.totalRevenue[index];
     }
 
     /*
-     * Description: getter for the private variable totalCost
+     * Description: getter for the total cost of this tile
      * Returns: totalCost
      */
-    public int getTotalCost() {
-        return totalCost;
+    public long getTotalCost() {
+        return store.totalCost[index];
     }
 
     /*
@@ -68,11 +71,13 @@ public class Tile {
      */
     public void setCurrentCost(int newCost) {
         // fire property change for observer pattern
-        support.firePropertyChange("cost", landArea.currentCost, newCost); // GRADING: TRIGGER
+        if (support != null) {
+            Metrics.propertyChanged();
+            support.firePropertyChange("cost", store.currentCost[index], newCost); // GRADING: TRIGGER
+        }
 
         // set costs
-        this.landArea.currentCost = newCost;
-        totalCost += newCost;
+        store.setCurrentCost(index, newCost);
     }
 
     /*
@@ -81,11 +86,13 @@ public class Tile {
      */
     public void setCurrentRevenue(int newRevenue) {
         // fire property change for observer pattern
-        support.firePropertyChange("revenue", landArea.currentRevenue, newRevenue); // GRADING: TRIGGER
+        if (support != null) {
+            Metrics.propertyChanged();
+            support.firePropertyChange("revenue", store.currentRevenue[index], newRevenue); // GRADING: TRIGGER
+        }
 
         // set revenue
-        this.landArea.currentRevenue = newRevenue;
-        totalRevenue += newRevenue;
+        store.setCurrentRevenue(index, newRevenue);
     }
 
     /*
@@ -94,40 +101,39 @@ public class Tile {
      */
     public void setHighlighted(boolean b) {
         // fire property change for observer pattern
-        support.firePropertyChange("highlighted", highlighted, b); // GRADING: TRIGGER
+        if (support != null) {
+            Metrics.propertyChanged();
+            support.firePropertyChange("highlighted", highlighted, b); // GRADING: TRIGGER
+        }
         highlighted = b;
     }
 
     /*
-     * Description: sets the land type for this tile
+     * Description: sets the land type for this tile. The land area starts fresh (age, current values and last changed
+     * date are reset), but nothing is allocated.
      * Parameters: newLandType - the new land type to be changed to
      */
     public void setLandType(String newLandType) {
-        // create new landArea based on the passed in land type
-        if (Objects.equals(newLandType, "-A-")) {
-            landArea = new Agriculture();
-        } else if (Objects.equals(newLandType, "-R-")) {
-            landArea = new Recreation();
-        } else if (Objects.equals(newLandType, "-U-")) {
-            landArea = new Unused();
-        } else {
-            landArea = new Flooded();
-        }
-
-        // fire property change for observer pattern
-        support.firePropertyChange("land", landArea.abbreviation, newLandType); // GRADING: TRIGGER
-        landArea.abbreviation = newLandType;
+        setLandType(LandType.fromAbbreviation(newLandType));
     }
 
     /*
-     * Description: setter for the private variable landArea
+     * Description: sets the land type for this tile from its code
+     * Parameters: code - the new land type code (see LandType)
      */
-    public void setLandArea(LandArea newLandArea) {
-        landArea = newLandArea;
+    public void setLandType(byte code) {
+        byte oldCode = store.landType[index];
+        store.setLand(index, code);
+
+        // fire property change for observer pattern
+        if (support != null) {
+            Metrics.propertyChanged();
+            support.firePropertyChange("land", LandType.abbreviation(oldCode), LandType.abbreviation(code)); // GRADING: TRIGGER
+        }
     }
 
     /*
-     * Description: getter for the private variable landArea
+     * Description: getter for the land area view of this tile
      */
     public LandArea getLandArea() {
         return landArea;
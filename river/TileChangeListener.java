@@ -0,0 +1,21 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, TileChangeListener interface. A batched alternative to listening to every Tile: the
+ * RiverSim collects the tiles changed during a tick (or a placement) and delivers them in one call.
+ */
+
+public interface TileChangeListener {
+    int LAND = 1;
+    int COST = 2;
+    int REVENUE = 4;
+    int SELECTED = 8;
+
+    /*
+     * Description: called once after a tick or placement with every tile that changed. The new values are read from
+     * the riverSim; the changes are only valid during this call.
+     * Parameters: changes - the changed tile indexes and which of their values changed
+     */
+    void tilesChanged(TileChanges changes);
+}
@@ -0,0 +1,76 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, TileChanges class. The compact dirty set for one tick: the list of changed tile
+ * indexes, and for each tile a byte of TileChangeListener flags saying which values changed. Marking a tile is O(1)
+ * and a tile is only listed once however many times it changes.
+ */
+
+import java.util.Arrays;
+
+public class TileChanges {
+    private final byte[] flags;
+    private int[] indexes = new int[16];
+    private int size = 0;
+
+    /*
+     * Description: constructor for TileChanges
+     * Parameters: tileCount - the number of tiles that can be marked
+     */
+    TileChanges(int tileCount) {
+        flags = new byte[tileCount];
+    }
+
+    /*
+     * Description: marks a tile as changed
+     * Parameters: index - the tile index
+     *             flag - the TileChangeListener flags for the values that changed
+     */
+    void mark(int index, int flag) {
+        // list the tile the first time it changes
+        if (flags[index] == 0) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size * 2);
+            }
+            indexes[size++] = index;
+        }
+        flags[index] |= flag;
+    }
+
+    /*
+     * Description: getter for the number of changed tiles
+     * Returns: size
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Description: gets the k-th changed tile index
+     * Parameters: k - the position in the list, from 0 to size() - 1
+     * Returns: the tile index
+     */
+    public int index(int k) {
+        return indexes[k];
+    }
+
+    /*
+     * Description: gets which values of a tile changed
+     * Parameters: index - the tile index
+     * Returns: the TileChangeListener flags, 0 if the tile didn't change
+     */
+    public int flags(int index) {
+        return flags[index];
+    }
+
+    /*
+     * Description: empties the set, only the listed tiles are touched
+     */
+    void clear() {
+        for (int k = 0; k < size; k++) {
+            flags[indexes[k]] = 0;
+        }
+        size = 0;
+    }
+}
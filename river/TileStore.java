@@ -0,0 +1,444 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, TileStore class. Structure-of-arrays storage for every tile in the simulation: one
+ * primitive array per field, indexed by tile id. Tile and LandArea are views over this store, so changing a land type
+ * does not allocate. The store also keeps the per-land-type index and the list of tiles with a current cost or
+ * revenue, so a month only has to visit developed tiles, and the aggregate statistics (LandStats) the views read.
+ *
+ * The tiles are split into up to STRIPES stripes of consecutive tiles, and everything the store keeps across tiles
+ * (the index lists, the charged lists and the young agriculture counts) is kept per stripe. Going through the stripes
+ * in order still walks the arrays front to back. Changing a tile only writes its own fields and its stripe's lists,
+ * so tiles in different stripes can be changed on different threads at the same time, as long as each stripe is only
+ * changed by one thread at a time (RiverSim holds a lock per stripe). Moving the month count touches every stripe.
+ *
+ * For undo and branches (see WorldHistory), the tiles are also split into chunks of up to 2^CHUNK_SHIFT tiles, never
+ * more than a stripe. Every change marks its tile's chunk, and capture copies only the chunks marked since the last
+ * capture or restore into immutable Chunk objects, sharing the others with the version before. Restoring a version
+ * copies back only the chunks that differ from what the store holds, so both cost O(changed chunks).
+ */
+
+import java.util.Arrays;
+
+public class TileStore {
+    // the most stripes the tiles are split into
+    static final int STRIPES = 64;
+
+    // the log2 of the most tiles in a chunk
+    static final int CHUNK_SHIFT = 10;
+
+    final byte[] landType;
+    final int[] ageStart;
+    final int[] currentCost;
+    final int[] currentRevenue;
+    final int[] lastChangedMonth;
+    final int[] lastChangedYear;
+    final long[] totalCost;
+    final long[] totalRevenue;
+    final LandTypeIndex index;
+    final LandStats stats;
+    final int stripeShift;
+    final int chunkShift;
+    int tick = 0;
+    private final boolean[] listedCharged;
+    private final int[][] charged = new int[STRIPES][];
+    private final int[] chargedCount = new int[STRIPES];
+
+    // the chunks changed since the last capture or restore, and the chunks the others still match (null for none)
+    private final boolean[] changedChunks;
+    private Chunk[] base;
+
+    /*
+     * Description: constructor for TileStore, every tile starts as unused with zeroed values
+     * Parameters: size - the number of tiles to store
+     */
+    TileStore(int size) {
+        landType = new byte[size];
+        ageStart = new int[size];
+        currentCost = new int[size];
+        currentRevenue = new int[size];
+        lastChangedMonth = new int[size];
+        lastChangedYear = new int[size];
+        totalCost = new long[size];
+        totalRevenue = new long[size];
+        stripeShift = stripeShift(size);
+        chunkShift = Math.min(CHUNK_SHIFT, stripeShift);
+        index = new LandTypeIndex(size, LandType.COUNT, STRIPES, stripeShift);
+        stats = new LandStats(this);
+        listedCharged = new boolean[size];
+        for (int s = 0; s < STRIPES; s++) {
+            charged[s] = new int[16];
+        }
+        changedChunks = new boolean[(size + (1 << chunkShift) - 1) >>> chunkShift];
+    }
+
+    /*
+     * Description: constructor for a store holding a captured version of the tiles
+     * Parameters: chunks - the captured chunks (see capture)
+     *             size - the number of tiles
+     *             tick - the month count of the version
+     */
+    TileStore(Chunk[] chunks, int size, int tick) {
+        this(size);
+        this.tick = tick;
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c].copyTo(this, c << chunkShift);
+        }
+        rebuildIndex();
+        base = chunks;
+    }
+
+    /*
+     * Description: copy constructor, the copy shares no arrays with the original (used to take a consistent picture
+     * of the state that another thread can read while this store keeps changing)
+     * Parameters: other - the store to copy
+     */
+    TileStore(TileStore other) {
+        landType = other.landType.clone();
+        ageStart = other.ageStart.clone();
+        currentCost = other.currentCost.clone();
+        currentRevenue = other.currentRevenue.clone();
+        lastChangedMonth = other.lastChangedMonth.clone();
+        lastChangedYear = other.lastChangedYear.clone();
+        totalCost = other.totalCost.clone();
+        totalRevenue = other.totalRevenue.clone();
+        index = new LandTypeIndex(other.index);
+        stripeShift = other.stripeShift;
+        chunkShift = other.chunkShift;
+        tick = other.tick;
+        stats = new LandStats(other.stats, this);
+        listedCharged = other.listedCharged.clone();
+        for (int s = 0; s < STRIPES; s++) {
+            charged[s] = Arrays.copyOf(other.charged[s], Math.max(16, other.chargedCount[s]));
+            chargedCount[s] = other.chargedCount[s];
+        }
+        changedChunks = other.changedChunks.clone();
+        base = other.base;
+    }
+
+    /*
+     * Description: works out how many tiles go in each stripe, the smallest power of two that fits the tiles in STRIPES
+     * stripes
+     * Parameters: size - the number of tiles
+     * Returns: the log2 of the number of tiles in a stripe
+     */
+    static int stripeShift(int size) {
+        int shift = 0;
+        while ((Math.max(size - 1, 0) >>> shift) >= STRIPES) {
+            shift++;
+        }
+        return shift;
+    }
+
+    /*
+     * Description: gets the stripe a tile belongs to
+     * Parameters: index - the tile index
+     * Returns: the stripe, from 0 to STRIPES - 1
+     */
+    int stripe(int index) {
+        return index >>> stripeShift;
+    }
+
+    /*
+     * Description: getter for the number of tiles in the store
+     * Returns: the number of tiles
+     */
+    public int size() {
+        return landType.length;
+    }
+
+    /*
+     * Description: gets the age of a tile. Ages are stored as the month count when the land was set, so aging every
+     * tile each month is just incrementing tick.
+     * Parameters: index - the tile index
+     * Returns: the number of months since the tile's land type was set
+     */
+    int age(int index) {
+        return tick - ageStart[index];
+    }
+
+    /*
+     * Description: advances the month count, which ages every tile
+     * Parameters: months - the number of months that passed
+     */
+    void advanceTick(int months) {
+        tick += months;
+        stats.monthsPassed(months);
+    }
+
+    /*
+     * Description: sets the land type of a tile. A new land area starts fresh, so its age, current cost and revenue
+     * and last changed date are reset (the running totals are kept).
+     * Parameters: index - the tile index
+     *             code - the new land type code
+     */
+    void setLand(int index, byte code) {
+        changedChunks[index >>> chunkShift] = true;
+        stats.landChanging(index, code);
+        this.index.move(index, landType[index], code);
+        landType[index] = code;
+        ageStart[index] = tick;
+        currentCost[index] = 0;
+        currentRevenue[index] = 0;
+        lastChangedMonth[index] = 0;
+        lastChangedYear[index] = 0;
+    }
+
+    /*
+     * Description: sets the current cost of a tile and adds it to the tile's total cost
+     * Parameters: index - the tile index
+     *             cost - the new current cost
+     */
+    void setCurrentCost(int index, int cost) {
+        if (cost != 0)
+            addCharged(index);
+        changedChunks[index >>> chunkShift] = true;
+        currentCost[index] = cost;
+        totalCost[index] += cost;
+    }
+
+    /*
+     * Description: sets the current revenue of a tile and adds it to the tile's total revenue
+     * Parameters: index - the tile index
+     *             revenue - the new current revenue
+     */
+    void setCurrentRevenue(int index, int revenue) {
+        if (revenue != 0)
+            addCharged(index);
+        changedChunks[index >>> chunkShift] = true;
+        currentRevenue[index] = revenue;
+        totalRevenue[index] += revenue;
+    }
+
+    /*
+     * Description: sets the last changed date of a tile
+     * Parameters: index - the tile index
+     *             month - the month it changed
+     *             year - the year it changed
+     */
+    void setLastChanged(int index, int month, int year) {
+        changedChunks[index >>> chunkShift] = true;
+        lastChangedMonth[index] = month;
+        lastChangedYear[index] = year;
+    }
+
+    /*
+     * Description: marks a tile whose fields were written directly (rather than through the setters above), so the
+     * next capture copies its chunk
+     * Parameters: index - the tile index
+     */
+    void changed(int index) {
+        changedChunks[index >>> chunkShift] = true;
+    }
+
+    /*
+     * Description: tells whether any tile changed since the last capture or restore
+     * Returns: true if a chunk would have to be copied by capture
+     */
+    boolean hasChanges() {
+        if (base == null)
+            return true;
+        for (boolean changed : changedChunks) {
+            if (changed)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Description: captures the tiles as immutable chunks. Only the chunks changed since the last capture or restore
+     * are copied, the others are the chunks captured or restored then.
+     * Returns: the chunks, in tile order (never changed afterwards)
+     */
+    Chunk[] capture() {
+        Chunk[] chunks = new Chunk[changedChunks.length];
+        for (int c = 0; c < chunks.length; c++) {
+            if (base == null || changedChunks[c]) {
+                int from = c << chunkShift;
+                chunks[c] = new Chunk(this, from, Math.min(1 << chunkShift, size() - from));
+                changedChunks[c] = false;
+            } else {
+                chunks[c] = base[c];
+            }
+        }
+        base = chunks;
+        return chunks;
+    }
+
+    /*
+     * Description: restores captured chunks of a store of the same size. Only the chunks that differ from the ones
+     * the store holds are copied back; the index, the charged lists and the statistics are repaired for those chunks
+     * (for every stripe if the month count moves, since the statistics depend on it).
+     * Parameters: chunks - the chunks to restore (see capture)
+     *             tick - the month count of the version
+     *             changes - the set to mark the changed tiles in, or null
+     */
+    void restore(Chunk[] chunks, int tick, TileChanges changes) {
+        boolean[] stripes = new boolean[STRIPES];
+        for (int c = 0; c < chunks.length; c++) {
+            if (base != null && !changedChunks[c] && base[c] == chunks[c])
+                continue;
+            int from = c << chunkShift;
+            Chunk chunk = chunks[c];
+            for (int k = 0; k < chunk.landType.length; k++) {
+                int i = from + k;
+                int flag = 0;
+                if (landType[i] != chunk.landType[k]) {
+                    index.move(i, landType[i], chunk.landType[k]);
+                    flag |= TileChangeListener.LAND;
+                }
+                if (currentCost[i] != chunk.currentCost[k])
+                    flag |= TileChangeListener.COST;
+                if (currentRevenue[i] != chunk.currentRevenue[k])
+                    flag |= TileChangeListener.REVENUE;
+                if (changes != null && flag != 0)
+                    changes.mark(i, flag);
+            }
+            chunk.copyTo(this, from);
+            for (int i = from; i < from + chunk.landType.length; i++) {
+                if (currentCost[i] != 0 || currentRevenue[i] != 0)
+                    addCharged(i);
+            }
+            changedChunks[c] = false;
+            stripes[stripe(from)] = true;
+        }
+        base = chunks;
+
+        // the young agriculture counts depend on the month count, so they all move with it
+        if (tick != this.tick) {
+            this.tick = tick;
+            stats.rebuild();
+        } else {
+            for (int s = 0; s < STRIPES; s++) {
+                if (stripes[s])
+                    stats.rebuild(s);
+            }
+        }
+    }
+
+    /*
+     * Description: rebuilds the land type index, the charged list and the statistics after the arrays were filled
+     * directly (for example when a snapshot is loaded)
+     */
+    void rebuildIndex() {
+        for (int i = 0; i < size(); i++) {
+            index.move(i, LandType.UNUSED, landType[i]);
+            if (currentCost[i] != 0 || currentRevenue[i] != 0)
+                addCharged(i);
+        }
+        stats.rebuild();
+    }
+
+    /*
+     * Description: remembers a tile that was given a current cost or revenue, so it can be reset next month. A tile
+     * is listed once however often it is charged, so placements between months can't grow the list past the map.
+     * Parameters: index - the tile index
+     */
+    private void addCharged(int index) {
+        if (listedCharged[index])
+            return;
+        listedCharged[index] = true;
+        int stripe = stripe(index);
+        if (chargedCount[stripe] == charged[stripe].length) {
+            charged[stripe] = Arrays.copyOf(charged[stripe], charged[stripe].length * 2);
+        }
+        charged[stripe][chargedCount[stripe]++] = index;
+    }
+
+    /*
+     * Description: getter for the tiles of a stripe given a current cost or revenue since the last clearCharged.
+     * Only the first chargedCount(stripe) entries are valid.
+     * Parameters: stripe - the stripe
+     * Returns: the backing array of tile indexes
+     */
+    int[] charged(int stripe) {
+        return charged[stripe];
+    }
+
+    /*
+     * Description: getter for the number of valid entries in charged(stripe)
+     * Parameters: stripe - the stripe
+     * Returns: the number of charged tiles in the stripe
+     */
+    int chargedCount(int stripe) {
+        return chargedCount[stripe];
+    }
+
+    /*
+     * Description: empties the lists of charged tiles
+     */
+    void clearCharged() {
+        for (int s = 0; s < STRIPES; s++) {
+            for (int k = 0; k < chargedCount[s]; k++) {
+                listedCharged[charged[s][k]] = false;
+            }
+            chargedCount[s] = 0;
+        }
+    }
+
+    /*
+     * Description: an immutable copy of the fields of a run of consecutive tiles. Versions of a store share every
+     * chunk that didn't change between them.
+     */
+    static final class Chunk {
+        final byte[] landType;
+        final int[] ageStart;
+        final int[] currentCost;
+        final int[] currentRevenue;
+        final int[] lastChangedMonth;
+        final int[] lastChangedYear;
+        final long[] totalCost;
+        final long[] totalRevenue;
+
+        /*
+         * Description: constructor for Chunk, copies the tiles from a store
+         * Parameters: store - the store
+         *             from - the first tile index
+         *             length - the number of tiles
+         */
+        Chunk(TileStore store, int from, int length) {
+            landType = Arrays.copyOfRange(store.landType, from, from + length);
+            ageStart = Arrays.copyOfRange(store.ageStart, from, from + length);
+            currentCost = Arrays.copyOfRange(store.currentCost, from, from + length);
+            currentRevenue = Arrays.copyOfRange(store.currentRevenue, from, from + length);
+            lastChangedMonth = Arrays.copyOfRange(store.lastChangedMonth, from, from + length);
+            lastChangedYear = Arrays.copyOfRange(store.lastChangedYear, from, from + length);
+            totalCost = Arrays.copyOfRange(store.totalCost, from, from + length);
+            totalRevenue = Arrays.copyOfRange(store.totalRevenue, from, from + length);
+        }
+
+        /*
+         * Description: copies the tiles back into a store's arrays (the store's index and lists are left to the
+         * caller)
+         * Parameters: store - the store
+         *             from - the first tile index
+         */
+        void copyTo(TileStore store, int from) {
+            int length = landType.length;
+            System.arraycopy(landType, 0, store.landType, from, length);
+            System.arraycopy(ageStart, 0, store.ageStart, from, length);
+            System.arraycopy(currentCost, 0, store.currentCost, from, length);
+            System.arraycopy(currentRevenue, 0, store.currentRevenue, from, length);
+            System.arraycopy(lastChangedMonth, 0, store.lastChangedMonth, from, length);
+            System.arraycopy(lastChangedYear, 0, store.lastChangedYear, from, length);
+            System.arraycopy(totalCost, 0, store.totalCost, from, length);
+            System.arraycopy(totalRevenue, 0, store.totalRevenue, from, length);
+        }
+
+        /*
+         * Description: tells whether a tile of this chunk holds the same values as a tile of another chunk
+         * Parameters: k - the tile's place in this chunk
+         *             other - the other chunk
+         *             j - the tile's place in the other chunk
+         * Returns: true if every field matches
+         */
+        boolean sameTile(int k, Chunk other, int j) {
+            return landType[k] == other.landType[j] && ageStart[k] == other.ageStart[j]
+                    && currentCost[k] == other.currentCost[j] && currentRevenue[k] == other.currentRevenue[j]
+                    && lastChangedMonth[k] == other.lastChangedMonth[j]
+                    && lastChangedYear[k] == other.lastChangedYear[j] && totalCost[k] == other.totalCost[j]
+                    && totalRevenue[k] == other.totalRevenue[j];
+        }
+    }
+}
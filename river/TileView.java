@@ -5,6 +5,7 @@ package johnson_noah.river;
  * Description: JavaFx project, TileView class
  */
 
+import javafx.css.PseudoClass;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 import javafx.scene.layout.VBox;
@@ -14,21 +15,40 @@ import java.util.Objects;
 
 public class TileView extends VBox implements PropertyChangeListener {
 
+    // stylesheet pseudo-classes, indexed by land type code (unused is the default style), and the background of the
+    // land types river.css has no colors for
+    private static final PseudoClass[] LAND_CLASSES = new PseudoClass[LandType.COUNT];
+    private static final String[] LAND_STYLES = new String[LandType.COUNT];
+    private static final PseudoClass SELECTED = PseudoClass.getPseudoClass("selected");
+
     private int index;
     private Label landLabel = new Label("-U-");
     private Label costLabel = new Label("-$0k");
     private Label revenueLabel = new Label("+$0k");
+    private byte shownLand = LandType.UNUSED;
+    private int shownCost = 0;
+    private int shownRevenue = 0;
+
+    static {
+        for (byte code = LandType.UNUSED + 1; code < LandType.COUNT; code++) {
+            LAND_CLASSES[code] = PseudoClass.getPseudoClass(LandType.key(code));
+            if (!LandType.isBuiltIn(code)) {
+                String[] colors = LandType.colors(code);
+                LAND_STYLES[code] = "-fx-background-color: linear-gradient(" + colors[0] + ", " + colors[1] + ");";
+            }
+        }
+    }
 
     /*
      * Description: constructor for TileView class, sets defaults for alignment, styles, etc as well as the index
      * Parameters: index - the index of this TileView
      */
     TileView(int index) {
-        // set alignment, style, index, and children
+        // set alignment, style class, index, and children
         this.setAlignment(Pos.CENTER);
         this.getChildren().addAll(landLabel, costLabel, revenueLabel);
         this.setIndex(index);
-        this.setStyle("-fx-background-color: linear-gradient(#ffe7ae, #fddd87)");
+        this.getStyleClass().add("tile-view");
     }
 
     /*
@@ -56,45 +76,84 @@ public class TileView extends VBox implements PropertyChangeListener {
 
         // handle land type property change
         if (Objects.equals(event.getPropertyName(), "land")) {
-
-            // update label text to reflect land type
-            landLabel.setText((String) event.getNewValue());
-
-            // update background color to reflect land type
-            if(Objects.equals(landLabel.getText(), "-F-"))
-                this.setStyle("-fx-background-color: linear-gradient(#98c5ff, #6288e8)");
-            else if(Objects.equals(landLabel.getText(), "-R-"))
-                this.setStyle("-fx-background-color: linear-gradient(#ff98cc, #e175a9)");
-            else if(Objects.equals(landLabel.getText(), "-A-"))
-                this.setStyle("-fx-background-color: linear-gradient(#8fff8f, #49e749)");
-            else if(Objects.equals(landLabel.getText(), "-U-"))
-                this.setStyle("-fx-background-color: linear-gradient(#ffe7ae, #fddd87)");
+            showLand(LandType.fromAbbreviation((String) event.getNewValue()));
         }
 
         // handle cost property change
         if (Objects.equals(event.getPropertyName(), "cost")) {
-            costLabel.setText("-$" + event.getNewValue() + "k");
+            showCost((int) event.getNewValue());
         }
 
         // handle revenue property change
         if (Objects.equals(event.getPropertyName(), "revenue")) {
-            revenueLabel.setText("+$" + event.getNewValue() + "k");
+            showRevenue((int) event.getNewValue());
         }
 
-        // handle highlight property change
+        // handle highlight property change, the outline is a stylesheet pseudo-class
         if(Objects.equals(event.getPropertyName(), "highlighted")) {
-            boolean b = (boolean) event.getNewValue();
+            this.pseudoClassStateChanged(SELECTED, (boolean) event.getNewValue());
+        }
+    }
 
-            // apply outline
-            if(b) {
-                this.setStyle(this.getStyle() + "; -fx-border-color: #413b34; -fx-border-width: 2; -fx-border-style: solid");
-            }
+    /*
+     * Description: applies a batched change to this tile, only the flagged values that actually differ from what is
+     * shown are updated
+     * Parameters: flags - the TileChangeListener flags for the values that changed
+     *             riverSim - the riverSim to read the new values from
+     */
+    public void update(int flags, RiverSim riverSim) {
+        TileStore store = riverSim.getStore();
+        if ((flags & TileChangeListener.SELECTED) != 0)
+            this.pseudoClassStateChanged(SELECTED, riverSim.getSelectedIndex() == index);
+        if ((flags & TileChangeListener.LAND) != 0)
+            showLand(store.landType[index]);
+        if ((flags & TileChangeListener.COST) != 0)
+            showCost(store.currentCost[index]);
+        if ((flags & TileChangeListener.REVENUE) != 0)
+            showRevenue(store.currentRevenue[index]);
+    }
 
-            // remove outline
-            else {
-                this.setStyle(this.getStyle() + "; -fx-border-width: 0");
-            }
-        }
+    /*
+     * Description: shows a land type, updating the label and background color unless it is already shown
+     * Parameters: code - the land type code
+     */
+    private void showLand(byte code) {
+        if (code == shownLand)
+            return;
+
+        // update label text to reflect land type
+        landLabel.setText(LandType.abbreviation(code));
+
+        // switch the stylesheet pseudo-class to reflect land type (background color)
+        if (LAND_CLASSES[shownLand] != null)
+            this.pseudoClassStateChanged(LAND_CLASSES[shownLand], false);
+        if (LAND_CLASSES[code] != null)
+            this.pseudoClassStateChanged(LAND_CLASSES[code], true);
+        if (LAND_STYLES[shownLand] != null || LAND_STYLES[code] != null)
+            this.setStyle(LAND_STYLES[code] != null ? LAND_STYLES[code] : "");
+        shownLand = code;
+    }
+
+    /*
+     * Description: shows a current cost, skipping the label update if it is already shown
+     * Parameters: cost - the current cost
+     */
+    private void showCost(int cost) {
+        if (cost == shownCost)
+            return;
+        shownCost = cost;
+        costLabel.setText("-$" + cost + "k");
+    }
+
+    /*
+     * Description: shows a current revenue, skipping the label update if it is already shown
+     * Parameters: revenue - the current revenue
+     */
+    private void showRevenue(int revenue) {
+        if (revenue == shownRevenue)
+            return;
+        shownRevenue = revenue;
+        revenueLabel.setText("+$" + revenue + "k");
     }
 
     /*
@@ -1,9 +0,0 @@
-package johnson_noah.river;
-
-/*
- * Author: Noah Johnson
- * Description: JavaFx project, Unused class
- */
-
-public class Unused extends LandArea {
-}
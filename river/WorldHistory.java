@@ -0,0 +1,373 @@
+package johnson_noah.river;
+
+/*
+ * Author: Noah Johnson
+ * Description: JavaFx project, WorldHistory class. Undo, redo and what-if branches for a RiverSim. Each commit
+ * captures the simulation as an immutable Version: the tiles as chunks (see TileStore), sharing every chunk that
+ * didn't change with the version before, and the ledger sharing its stored months (see Ledger.share). A commit, an
+ * undo or a redo, and switching between branches only copy the chunks that changed, so they cost O(changed chunks)
+ * rather than a copy of every tile, and forking a branch from the current version costs O(1).
+ *
+ * Versions are linked to the version before them, and each branch keeps its current version and the versions it can
+ * redo. Branches share the versions they were forked from. Versions never change, so one can be turned into an
+ * independent RiverSim (materialize) on any thread, for example to play each branch forward at the same time
+ * (project).
+ *
+ * The history's methods are synchronized, and take every lock of the riverSim while they capture or restore it.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class WorldHistory {
+    // the most versions kept before a branch's current one, older ones are dropped for every branch sharing them
+    public static final int MAX_UNDO = 100;
+
+    private final RiverSim riverSim;
+    private final List<Branch> branches = new ArrayList<>();
+    private Branch current;
+
+    /*
+     * Description: constructor for WorldHistory, starts the "Main" branch at the riverSim's current state
+     * Parameters: riverSim - the simulation to keep the history of
+     */
+    public WorldHistory(RiverSim riverSim) {
+        this.riverSim = riverSim;
+        current = new Branch("Main", riverSim.capture("Start"));
+        branches.add(current);
+    }
+
+    /*
+     * Description: records the riverSim's state as the current branch's next version, if it changed since the current
+     * version. Versions that could be redone are dropped.
+     * Parameters: label - what changed, shown when offering to undo it
+     * Returns: true if a version was recorded
+     */
+    public synchronized boolean commit(String label) {
+        riverSim.lockAll();
+        try {
+            if (!riverSim.changedSince(current.head))
+                return false;
+            Version version = riverSim.capture(label);
+            version.parent = current.head;
+            current.head = version;
+            current.redo.clear();
+        } finally {
+            riverSim.unlockAll();
+        }
+
+        // drop the versions past the undo limit
+        Version oldest = current.head;
+        for (int k = 0; k < MAX_UNDO && oldest.parent != null; k++) {
+            oldest = oldest.parent;
+        }
+        oldest.parent = null;
+        return true;
+    }
+
+    /*
+     * Description: goes back to the current branch's version before the current one. Changes not committed yet are
+     * committed first, so they can be redone.
+     * Returns: true if the riverSim went back
+     */
+    public synchronized boolean undo() {
+        commit("Changes");
+        if (current.head.parent == null)
+            return false;
+        current.redo.push(current.head);
+        current.head = current.head.parent;
+        riverSim.restore(current.head);
+        return true;
+    }
+
+    /*
+     * Description: goes forward to the version the last undo went back from. Changes not committed yet are committed
+     * first, which leaves nothing to redo.
+     * Returns: true if the riverSim went forward
+     */
+    public synchronized boolean redo() {
+        commit("Changes");
+        if (current.redo.isEmpty())
+            return false;
+        current.head = current.redo.pop();
+        riverSim.restore(current.head);
+        return true;
+    }
+
+    /*
+     * Description: tells whether undo has a version to go back to (not counting changes that aren't committed)
+     * Returns: true if there is one
+     */
+    public synchronized boolean canUndo() {
+        return current.head.parent != null;
+    }
+
+    /*
+     * Description: tells whether redo has a version to go forward to
+     * Returns: true if there is one
+     */
+    public synchronized boolean canRedo() {
+        return !current.redo.isEmpty();
+    }
+
+    /*
+     * Description: getter for what undo would take back
+     * Returns: the current version's label, or null if there is nothing to undo
+     */
+    public synchronized String getUndoLabel() {
+        return canUndo() ? current.head.getLabel() : null;
+    }
+
+    /*
+     * Description: getter for what redo would bring back
+     * Returns: the label of the version redo goes to, or null if there is nothing to redo
+     */
+    public synchronized String getRedoLabel() {
+        return canRedo() ? current.redo.peek().getLabel() : null;
+    }
+
+    /*
+     * Description: forks a new branch from the current version and switches to it. The riverSim doesn't change, and
+     * the new branch shares every version before it with the branch it came from.
+     * Parameters: name - the branch's name
+     * Returns: the new branch's number
+     */
+    public synchronized int fork(String name) {
+        commit("Changes");
+        current = new Branch(name, current.head);
+        branches.add(current);
+        return branches.size() - 1;
+    }
+
+    /*
+     * Description: switches to another branch, restoring the riverSim to that branch's current version. Changes not
+     * committed yet are committed to the branch being left.
+     * Parameters: branch - the branch's number
+     */
+    public synchronized void checkout(int branch) {
+        commit("Changes");
+        current = branches.get(branch);
+        riverSim.restore(current.head);
+    }
+
+    /*
+     * Description: getter for the number of branches
+     * Returns: the number of branches
+     */
+    public synchronized int getBranchCount() {
+        return branches.size();
+    }
+
+    /*
+     * Description: getter for a branch's name
+     * Parameters: branch - the branch's number
+     * Returns: the name
+     */
+    public synchronized String getBranchName(int branch) {
+        return branches.get(branch).name;
+    }
+
+    /*
+     * Description: getter for the branch the riverSim is on
+     * Returns: the branch's number
+     */
+    public synchronized int getCurrentBranch() {
+        return branches.indexOf(current);
+    }
+
+    /*
+     * Description: getter for a branch's current version (the riverSim's own branch may have changes after it that
+     * aren't committed yet)
+     * Parameters: branch - the branch's number
+     * Returns: the version
+     */
+    public synchronized Version getHead(int branch) {
+        return branches.get(branch).head;
+    }
+
+    /*
+     * Description: plays every branch forward from its current version at the same time, each as an independent
+     * RiverSim on its own thread of a pool. The riverSim itself doesn't change.
+     * Parameters: months - the number of months to play
+     *             pool - the pool to play them in
+     * Returns: the funds each branch ends with, indexed by branch
+     */
+    public long[] project(int months, ForkJoinPool pool) {
+        commit("Changes");
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+        for (int b = 0; b < getBranchCount(); b++) {
+            Version head = getHead(b);
+            tasks.add(pool.submit(() -> {
+                RiverSim branch = materialize(head);
+                branch.advance(months);
+                return branch.getFunds();
+            }));
+        }
+        long[] funds = new long[tasks.size()];
+        for (int b = 0; b < funds.length; b++) {
+            funds[b] = tasks.get(b).join();
+        }
+        return funds;
+    }
+
+    /*
+     * Description: makes an independent simulation from a version (no tiles, views or listeners), which can be read or
+     * stepped on any thread. Copying the tiles costs O(tiles), sharing them with the version isn't possible since
+     * the simulation changes them in place.
+     * Parameters: version - the version
+     * Returns: the simulation
+     */
+    public static RiverSim materialize(Version version) {
+        RiverSim riverSim = new RiverSim();
+        riverSim.restore(version);
+        return riverSim;
+    }
+
+    /*
+     * Description: finds the tiles that differ between two versions of the same map. Chunks the versions share are
+     * skipped, so versions close in history compare in O(changed chunks).
+     * Parameters: a - a version
+     *             b - another version
+     * Returns: the indexes of the tiles with any value that differs, in order, or null if the versions are of
+     *          different maps
+     */
+    public static int[] differingTiles(Version a, Version b) {
+        if (a.riverMap != b.riverMap || a.tileCount != b.tileCount)
+            return null;
+        int[] tiles = new int[16];
+        int count = 0;
+        int from = 0;
+        for (int c = 0; c < a.chunks.length; c++) {
+            TileStore.Chunk chunkA = a.chunks[c];
+            TileStore.Chunk chunkB = b.chunks[c];
+            int length = chunkA.landType.length;
+            if (chunkA != chunkB) {
+                for (int k = 0; k < length; k++) {
+                    if (chunkA.sameTile(k, chunkB, k))
+                        continue;
+                    if (count == tiles.length)
+                        tiles = Arrays.copyOf(tiles, count * 2);
+                    tiles[count++] = from + k;
+                }
+            }
+            from += length;
+        }
+        return Arrays.copyOf(tiles, count);
+    }
+
+    /*
+     * Description: a line of versions: its current version, and the versions undone from it that can be redone
+     */
+    private static class Branch {
+        private final String name;
+        private final ArrayDeque<Version> redo = new ArrayDeque<>();
+        private Version head;
+
+        Branch(String name, Version head) {
+            this.name = name;
+            this.head = head;
+        }
+    }
+
+    /*
+     * Description: an immutable capture of a RiverSim's state (see RiverSim.capture), with a summary of it that can be
+     * read without restoring it
+     */
+    public static final class Version {
+        final String label;
+        final RiverMap riverMap;
+        final FloodModel floodModel;
+        final int month;
+        final int year;
+        final int tick;
+        final Ledger ledger;
+        final long externalFilled;
+        final int tileCount;
+        final TileStore.Chunk[] chunks;
+        private final int[] counts;
+
+        // the version before this one, null for the oldest kept (only changed by the history, holding its lock)
+        Version parent;
+
+        Version(String label, RiverMap riverMap, FloodModel floodModel, int month, int year, int tick, Ledger ledger,
+                long externalFilled, int tileCount, TileStore.Chunk[] chunks, int[] counts) {
+            this.label = label;
+            this.riverMap = riverMap;
+            this.floodModel = floodModel;
+            this.month = month;
+            this.year = year;
+            this.tick = tick;
+            this.ledger = ledger;
+            this.externalFilled = externalFilled;
+            this.tileCount = tileCount;
+            this.chunks = chunks;
+            this.counts = counts;
+        }
+
+        /*
+         * Description: getter for what changed to make this version
+         * Returns: label
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /*
+         * Description: getter for the version's month
+         * Returns: month
+         */
+        public int getMonth() {
+            return month;
+        }
+
+        /*
+         * Description: getter for the version's year
+         * Returns: year
+         */
+        public int getYear() {
+            return year;
+        }
+
+        /*
+         * Description: getter for the version's funds
+         * Returns: the funds balance
+         */
+        public long getFunds() {
+            return ledger.getBalance();
+        }
+
+        /*
+         * Description: getter for the number of tiles of a land type
+         * Parameters: type - the land type code
+         * Returns: the number of tiles of that type
+         */
+        public int getCount(byte type) {
+            return counts[type];
+        }
+
+        /*
+         * Description: getter for the number of filled tiles, counting direct changes to it
+         * Returns: the number of filled tiles
+         */
+        public int getFilled() {
+            long filled = externalFilled;
+            for (byte type = LandType.UNUSED + 1; type < LandType.COUNT; type++) {
+                if (LandType.isFilled(type))
+                    filled += counts[type];
+            }
+            return (int) filled;
+        }
+
+        /*
+         * Description: getter for the number of tiles
+         * Returns: tileCount
+         */
+        public int getTileCount() {
+            return tileCount;
+        }
+    }
+}